@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ClassBytesCache {
+	
+	public static final long DefaultMaxBytes = 32L*1024*1024;
+	
+	// what get() returns for a class we already know can't be loaded
+	public static final byte[] NotFound = new byte[0];
+	
+	// roughly what an entry costs besides the class bytes: the key string, the map entry, and the entry itself
+	private static final int EntryOverheadBytes = 96;
+	
+	private static class Entry {
+		
+		public byte[] data;
+		public SoftBytes softData;
+		public int size;
+		
+		public byte[] getData() {
+			if (softData != null) {
+				return softData.get();
+			}
+			return data;
+		}
+	}
+	
+	private static class SoftBytes extends SoftReference<byte[]> {
+		
+		public String className;
+		
+		public SoftBytes(String className, byte[] data, ReferenceQueue<byte[]> queue) {
+			super(data, queue);
+			this.className = className;
+		}
+	}
+	
+	private long m_maxBytes;
+	private boolean m_useSoftReferences;
+	private LinkedHashMap<String,Entry> m_entries;
+	private ReferenceQueue<byte[]> m_collectedQueue;
+	private long m_numBytes;
+	private long m_numHits;
+	private long m_numMisses;
+	private long m_numEvictions;
+	private long m_numCollected;
+	
+	public ClassBytesCache() {
+		this(
+			Long.getLong("enigma.classCache.maxBytes", DefaultMaxBytes),
+			Boolean.getBoolean("enigma.classCache.soft")
+		);
+	}
+	
+	public ClassBytesCache(long maxBytes, boolean useSoftReferences) {
+		m_maxBytes = maxBytes;
+		m_useSoftReferences = useSoftReferences;
+		
+		// access order, so the eldest entry is always the least recently used one
+		m_entries = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+		m_collectedQueue = new ReferenceQueue<byte[]>();
+		m_numBytes = 0;
+		m_numHits = 0;
+		m_numMisses = 0;
+		m_numEvictions = 0;
+		m_numCollected = 0;
+	}
+	
+	public long getMaxBytes() {
+		return m_maxBytes;
+	}
+	
+	public boolean usesSoftReferences() {
+		return m_useSoftReferences;
+	}
+	
+	public synchronized byte[] get(String className) {
+		removeCollected();
+		Entry entry = m_entries.get(className);
+		if (entry != null) {
+			byte[] data = entry.getData();
+			if (data != null) {
+				m_numHits++;
+				return data;
+			}
+			
+			// the GC got to it before the queue told us
+			remove(className, entry);
+			m_numCollected++;
+		}
+		m_numMisses++;
+		return null;
+	}
+	
+	public synchronized void put(String className, byte[] data) {
+		removeCollected();
+		Entry oldEntry = m_entries.remove(className);
+		if (oldEntry != null) {
+			m_numBytes -= oldEntry.size;
+		}
+		
+		// a null means the class can't be loaded, remember that too so we don't go looking for it again
+		Entry entry = new Entry();
+		if (data == null) {
+			entry.data = NotFound;
+		} else if (m_useSoftReferences) {
+			entry.softData = new SoftBytes(className, data, m_collectedQueue);
+		} else {
+			entry.data = data;
+		}
+		entry.size = EntryOverheadBytes + className.length()*2 + (data != null ? data.length : 0);
+		if (entry.size > m_maxBytes) {
+			// this won't fit even in an empty cache
+			m_numEvictions++;
+			return;
+		}
+		m_entries.put(className, entry);
+		m_numBytes += entry.size;
+		
+		// evict the least recently used entries until we're back under budget
+		Iterator<Map.Entry<String,Entry>> iter = m_entries.entrySet().iterator();
+		while (m_numBytes > m_maxBytes && iter.hasNext()) {
+			Entry eldestEntry = iter.next().getValue();
+			iter.remove();
+			m_numBytes -= eldestEntry.size;
+			m_numEvictions++;
+		}
+	}
+	
+	public synchronized void clear() {
+		m_entries.clear();
+		m_numBytes = 0;
+		while (m_collectedQueue.poll() != null) {
+			// nothing left to remove
+		}
+	}
+	
+	public synchronized int getNumEntries() {
+		removeCollected();
+		return m_entries.size();
+	}
+	
+	public synchronized long getNumBytes() {
+		removeCollected();
+		return m_numBytes;
+	}
+	
+	public synchronized long getNumHits() {
+		return m_numHits;
+	}
+	
+	public synchronized long getNumMisses() {
+		return m_numMisses;
+	}
+	
+	public synchronized long getNumEvictions() {
+		return m_numEvictions;
+	}
+	
+	public synchronized long getNumCollected() {
+		return m_numCollected;
+	}
+	
+	public synchronized double getHitRate() {
+		long numLookups = m_numHits + m_numMisses;
+		if (numLookups == 0) {
+			return 0;
+		}
+		return (double)m_numHits/numLookups;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		removeCollected();
+		return String.format("%d classes, %.1f of %.1f MiB%s, %.0f%% hits (%d hits, %d misses), %d evicted, %d collected",
+			m_entries.size(),
+			m_numBytes/1024.0/1024.0,
+			m_maxBytes/1024.0/1024.0,
+			m_useSoftReferences ? " (soft)" : "",
+			getHitRate()*100,
+			m_numHits,
+			m_numMisses,
+			m_numEvictions,
+			m_numCollected
+		);
+	}
+	
+	private void removeCollected() {
+		Reference<? extends byte[]> ref;
+		while ((ref = m_collectedQueue.poll()) != null) {
+			String className = ((SoftBytes)ref).className;
+			Entry entry = m_entries.get(className);
+			
+			// the class might have been put again since then, so only remove the entry that was collected
+			if (entry != null && entry.softData == ref) {
+				remove(className, entry);
+				m_numCollected++;
+			}
+		}
+	}
+	
+	private void remove(String className, Entry entry) {
+		m_entries.remove(className);
+		m_numBytes -= entry.size;
+	}
+}
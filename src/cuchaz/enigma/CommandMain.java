@@ -11,12 +11,20 @@
 package cuchaz.enigma;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.jar.JarFile;
 
 import cuchaz.enigma.Deobfuscator.ProgressListener;
+import cuchaz.enigma.analysis.JarIndexCache;
 import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsBinaryReader;
+import cuchaz.enigma.mapping.MappingsBinaryWriter;
 import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsWriter;
 
 public class CommandMain {
 	
@@ -44,7 +52,8 @@ public class CommandMain {
 			boolean shouldReport = isLastUpdate || now - m_lastReportTime > ReportTime;
 			
 			if (shouldReport) {
-				int percent = numDone*100/m_totalWork;
+				// there might be nothing to do at all, if nothing changed
+				int percent = m_totalWork > 0 ? numDone*100/m_totalWork : 100;
 				System.out.println(String.format("\tProgress: %3d%%", percent));
 				m_lastReportTime = now;
 			}
@@ -70,6 +79,8 @@ public class CommandMain {
 				protectify(args);
 			} else if (command.equalsIgnoreCase("publify")) {
 				publify(args);
+			} else if (command.equalsIgnoreCase("convertmappings")) {
+				convertMappings(args);
 			} else {
 				throw new IllegalArgumentException("Command not recognized: " + command);
 			}
@@ -85,8 +96,14 @@ public class CommandMain {
 		System.out.println("\tjava -cp enigma.jar cuchaz.enigma.CommandMain <command>");
 		System.out.println("\twhere <command> is one of:");
 		System.out.println("\t\tdeobfuscate <in jar> <out jar> [<mappings file>]");
-		System.out.println("\t\tdecompile <in jar> <out folder> [<mappings file>]");
+		System.out.println("\t\tdecompile <in jar> <out folder> [<mappings file>] [<num threads>]");
+		System.out.println("\t\t\t(uses every processor unless told otherwise,");
+		System.out.println("\t\t\tand only writes the classes that changed since the last time)");
 		System.out.println("\t\tprotectify <in jar> <out jar>");
+		System.out.println("\t\tconvertmappings <in mappings file> <out mappings file>");
+		System.out.println("\t\t\t(text mappings become binary mappings, and vice versa)");
+		System.out.println("Jar indices are cached in " + JarIndexCache.getDefaultDir());
+		System.out.println("\t(use -Denigma.cache.dir=<folder> to change it, or -Denigma.cache.dir= to turn it off)");
 	}
 	
 	private static void decompile(String[] args)
@@ -94,8 +111,9 @@ public class CommandMain {
 		File fileJarIn = getReadableFile(getArg(args, 1, "in jar", true));
 		File fileJarOut = getWritableFolder(getArg(args, 2, "out folder", true));
 		File fileMappings = getReadableFile(getArg(args, 3, "mappings file", false));
+		int numThreads = getNumThreads(getArg(args, 4, "num threads", false));
 		Deobfuscator deobfuscator = getDeobfuscator(fileMappings, new JarFile(fileJarIn));
-		deobfuscator.writeSources(fileJarOut, new ConsoleProgressListener());
+		deobfuscator.writeSources(fileJarOut, new ConsoleProgressListener(), numThreads);
 	}
 
 	private static void deobfuscate(String[] args)
@@ -123,18 +141,45 @@ public class CommandMain {
 		deobfuscator.publifyJar(fileJarOut, new ConsoleProgressListener());
 	}
 	
+	private static void convertMappings(String[] args)
+	throws Exception {
+		File fileMappingsIn = getReadableFile(getArg(args, 1, "in mappings file", true));
+		File fileMappingsOut = getWritableFile(getArg(args, 2, "out mappings file", true));
+		Mappings mappings = readMappings(fileMappingsIn);
+		if (MappingsBinaryReader.isBinary(fileMappingsIn)) {
+			System.out.println("Writing text mappings...");
+			try (Writer out = new FileWriter(fileMappingsOut)) {
+				new MappingsWriter().write(out, mappings);
+			}
+		} else {
+			System.out.println("Writing binary mappings...");
+			try (OutputStream out = new FileOutputStream(fileMappingsOut)) {
+				new MappingsBinaryWriter().write(out, mappings);
+			}
+		}
+	}
+	
 	private static Deobfuscator getDeobfuscator(File fileMappings, JarFile jar)
 	throws Exception {
 		System.out.println("Reading jar...");
-		Deobfuscator deobfuscator = new Deobfuscator(jar);
+		Deobfuscator deobfuscator = new Deobfuscator(jar, JarIndexCache.getDefault());
 		if (fileMappings != null) {
 			System.out.println("Reading mappings...");
-			Mappings mappings = new MappingsReader().read(new FileReader(fileMappings));
-			deobfuscator.setMappings(mappings);
+			deobfuscator.setMappings(readMappings(fileMappings));
 		}
 		return deobfuscator;
 	}
 	
+	private static Mappings readMappings(File fileMappings)
+	throws Exception {
+		if (MappingsBinaryReader.isBinary(fileMappings)) {
+			return new MappingsBinaryReader().read(fileMappings);
+		}
+		try (FileReader in = new FileReader(fileMappings)) {
+			return new MappingsReader().read(in);
+		}
+	}
+	
 	private static String getArg(String[] args, int i, String name, boolean required) {
 		if (i >= args.length) {
 			if (required) {
@@ -146,6 +191,21 @@ public class CommandMain {
 		return args[i];
 	}
 
+	private static int getNumThreads(String arg) {
+		if (arg == null) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		try {
+			int numThreads = Integer.parseInt(arg);
+			if (numThreads < 1) {
+				throw new IllegalArgumentException("Number of threads must be at least 1: " + arg);
+			}
+			return numThreads;
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Not a number of threads: " + arg);
+		}
+	}
+
 	private static File getWritableFile(String path) {
 		if (path == null) {
 			return null;
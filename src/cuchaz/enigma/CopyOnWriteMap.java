@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// a map that never changes, but makes changed copies of itself cheaply
+// the entries are split into shards by hash, and a copy shares all the shards that didn't change
+public class CopyOnWriteMap<K,V> extends AbstractMap<K,V> {
+	
+	private static final int EntriesPerShard = 32;
+	
+	private Map<K,V>[] m_shards;
+	private int m_size;
+	
+	public CopyOnWriteMap() {
+		this(Collections.<K,V>emptyMap());
+	}
+	
+	public CopyOnWriteMap(Map<? extends K,? extends V> entries) {
+		m_shards = newShards(entries.size());
+		for (Map.Entry<? extends K,? extends V> mapEntry : entries.entrySet()) {
+			if (mapEntry.getValue() == null) {
+				throw new IllegalArgumentException("Values can't be null: " + mapEntry.getKey());
+			}
+			m_shards[getShardIndex(m_shards, mapEntry.getKey())].put(mapEntry.getKey(), mapEntry.getValue());
+		}
+		m_size = entries.size();
+	}
+	
+	private CopyOnWriteMap(Map<K,V>[] shards, int size) {
+		m_shards = shards;
+		m_size = size;
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static <K,V> Map<K,V>[] newShards(int size) {
+		int numShards = 1;
+		while (numShards*EntriesPerShard < size) {
+			numShards *= 2;
+		}
+		Map<K,V>[] shards = new Map[numShards];
+		for (int i=0; i<numShards; i++) {
+			shards[i] = Maps.newHashMap();
+		}
+		return shards;
+	}
+	
+	private static int getShardIndex(Map<?,?>[] shards, Object key) {
+		int hash = key.hashCode();
+		return (hash ^ (hash >>> 16)) & (shards.length - 1);
+	}
+	
+	@Override
+	public V get(Object key) {
+		return m_shards[getShardIndex(m_shards, key)].get(key);
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return m_shards[getShardIndex(m_shards, key)].containsKey(key);
+	}
+	
+	@Override
+	public int size() {
+		return m_size;
+	}
+	
+	@Override
+	public Set<Map.Entry<K,V>> entrySet() {
+		return new AbstractSet<Map.Entry<K,V>>() {
+			
+			@Override
+			public Iterator<Map.Entry<K,V>> iterator() {
+				List<Iterator<Map.Entry<K,V>>> iterators = Lists.newArrayListWithCapacity(m_shards.length);
+				for (Map<K,V> shard : m_shards) {
+					iterators.add(Collections.unmodifiableMap(shard).entrySet().iterator());
+				}
+				return Iterators.concat(iterators.iterator());
+			}
+			
+			@Override
+			public int size() {
+				return m_size;
+			}
+		};
+	}
+	
+	public CopyOnWriteMap<K,V> with(K key, V value) {
+		return withChanges(Collections.singletonMap(key, value));
+	}
+	
+	public CopyOnWriteMap<K,V> withChanges(Map<? extends K,? extends V> changes) {
+		
+		// null values mean remove the key
+		if (changes.isEmpty()) {
+			return this;
+		}
+		Map<K,V>[] shards = m_shards.clone();
+		boolean[] isCopied = new boolean[shards.length];
+		int size = m_size;
+		for (Map.Entry<? extends K,? extends V> mapEntry : changes.entrySet()) {
+			int i = getShardIndex(shards, mapEntry.getKey());
+			if (!isCopied[i]) {
+				shards[i] = Maps.newHashMap(shards[i]);
+				isCopied[i] = true;
+			}
+			if (mapEntry.getValue() == null) {
+				if (shards[i].remove(mapEntry.getKey()) != null) {
+					size--;
+				}
+			} else if (shards[i].put(mapEntry.getKey(), mapEntry.getValue()) == null) {
+				size++;
+			}
+		}
+		CopyOnWriteMap<K,V> out = new CopyOnWriteMap<K,V>(shards, size);
+		
+		// if the shards get too big, copies stop being cheap, so spread the entries out again
+		if (size > shards.length*EntriesPerShard*2) {
+			out = new CopyOnWriteMap<K,V>(out);
+		}
+		return out;
+	}
+}
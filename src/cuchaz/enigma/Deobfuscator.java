@@ -15,9 +15,15 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -25,8 +31,13 @@ import java.util.jar.JarOutputStream;
 import javassist.CtClass;
 import javassist.bytecode.Descriptor;
 
-import com.google.common.collect.Maps;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.strobel.assembler.metadata.MetadataSystem;
 import com.strobel.assembler.metadata.TypeDefinition;
 import com.strobel.assembler.metadata.TypeReference;
@@ -39,14 +50,19 @@ import com.strobel.decompiler.languages.java.ast.CompilationUnit;
 import com.strobel.decompiler.languages.java.ast.InsertParenthesesVisitor;
 
 import cuchaz.enigma.analysis.EntryReference;
-import cuchaz.enigma.analysis.JarClassIterator;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarIndexCache;
+import cuchaz.enigma.analysis.SourceCache;
 import cuchaz.enigma.analysis.SourceIndex;
 import cuchaz.enigma.analysis.SourceIndexVisitor;
+import cuchaz.enigma.analysis.SourceManifest;
 import cuchaz.enigma.analysis.Token;
+import cuchaz.enigma.analysis.TranslationIndex;
 import cuchaz.enigma.bytecode.ClassProtectifier;
 import cuchaz.enigma.bytecode.ClassPublifier;
 import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.ArgumentMapping;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ClassMapping;
@@ -54,13 +70,17 @@ import cuchaz.enigma.mapping.ConstructorEntry;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.FieldMapping;
+import cuchaz.enigma.mapping.IllegalNameException;
 import cuchaz.enigma.mapping.Mappings;
 import cuchaz.enigma.mapping.MappingsChecker;
+import cuchaz.enigma.mapping.MappingsJournal;
 import cuchaz.enigma.mapping.MappingsRenamer;
+import cuchaz.enigma.mapping.MappingsSnapshot;
 import cuchaz.enigma.mapping.MethodEntry;
 import cuchaz.enigma.mapping.MethodMapping;
 import cuchaz.enigma.mapping.TranslationDirection;
 import cuchaz.enigma.mapping.Translator;
+import cuchaz.enigma.mapping.TranslatorCache;
 
 public class Deobfuscator {
 	
@@ -70,39 +90,65 @@ public class Deobfuscator {
 	}
 	
 	private JarFile m_jar;
+	private JarClassStore m_classStore;
 	private DecompilerSettings m_settings;
 	private JarIndex m_jarIndex;
 	private Mappings m_mappings;
 	private MappingsRenamer m_renamer;
-	private Map<TranslationDirection,Translator> m_translatorCache;
+	private TranslatorCache m_translatorCache;
+	private MappingsJournal m_journal;
+	private SourceDecompiler m_decompiler;
+	private SourceCache m_sourceCache;
+	private JarIndexCache m_indexCache;
+	private String m_jarHash;
 	
 	public Deobfuscator(JarFile jar) throws IOException {
+		// only the GUI and the command line cache indices, see JarIndexCache.getDefault()
+		this(jar, null);
+	}
+	
+	public Deobfuscator(JarFile jar, JarIndexCache indexCache) throws IOException {
 		m_jar = jar;
+		m_classStore = new JarClassStore(jar);
 		
-		// build the jar index
-		m_jarIndex = new JarIndex();
-		m_jarIndex.indexJar(m_jar, true);
+		// build the jar index, or load it if we've seen this jar before
+		// and keep decompiled sources next to it
+		m_indexCache = indexCache;
+		if (indexCache != null) {
+			m_jarIndex = indexCache.getIndex(m_classStore, true);
+			m_sourceCache = new SourceCache(indexCache.getSourceDir(m_classStore));
+		} else {
+			m_jarIndex = new JarIndex();
+			m_jarIndex.indexJar(m_classStore, true);
+			m_sourceCache = new SourceCache(null);
+		}
 		
 		// config the decompiler
-		m_settings = DecompilerSettings.javaDefaults();
-		m_settings.setMergeVariables(true);
-		m_settings.setForceExplicitImports(true);
-		m_settings.setForceExplicitTypeArguments(true);
-		m_settings.setShowDebugLineNumbers(true);
-		// DEBUG
-		//m_settings.setShowSyntheticMembers(true);
-		
-		// init defaults
-		m_translatorCache = Maps.newTreeMap();
+		m_settings = newDecompilerSettings();
 		
 		// init mappings
 		setMappings(new Mappings());
 	}
 	
+	private static DecompilerSettings newDecompilerSettings() {
+		DecompilerSettings settings = DecompilerSettings.javaDefaults();
+		settings.setMergeVariables(true);
+		settings.setForceExplicitImports(true);
+		settings.setForceExplicitTypeArguments(true);
+		settings.setShowDebugLineNumbers(true);
+		// DEBUG
+		//settings.setShowSyntheticMembers(true);
+		return settings;
+	}
+	
 	public JarFile getJar() {
 		return m_jar;
 	}
 	
+	public JarClassStore getClassStore() {
+		return m_classStore;
+	}
+	
 	public String getJarName() {
 		return m_jar.getName();
 	}
@@ -128,48 +174,145 @@ public class Deobfuscator {
 		MappingsChecker checker = new MappingsChecker(m_jarIndex);
 		checker.dropBrokenMappings(val);
 		if (warnAboutDrops) {
-			for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedClassMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
-			}
-			for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedInnerClassMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find inner class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
-			}
-			for (java.util.Map.Entry<FieldEntry,FieldMapping> mapping : checker.getDroppedFieldMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find field entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
-			}
-			for (java.util.Map.Entry<BehaviorEntry,MethodMapping> mapping : checker.getDroppedMethodMappings().entrySet()) {
-				System.out.println("WARNING: Couldn't find behavior entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
-			}
+			warnAboutDrops(checker);
 		}
 		
 		// check for related method inconsistencies
+		// they don't stop the mappings from working, so just say so, like the gui does
 		if (checker.getRelatedMethodChecker().hasProblems()) {
-			throw new Error("Related methods are inconsistent! Need to fix the mappings manually.\n" + checker.getRelatedMethodChecker().getReport());
+			System.err.println("WARNING: Related methods are inconsistent! Need to fix the mappings manually.\n" + checker.getRelatedMethodChecker().getReport());
+		}
+		
+		useMappings(val);
+	}
+	
+	public void setUncheckedMappings(Mappings val) {
+		// for showing mappings right away, follow up with checkMappings() and dropBrokenMappings()
+		useMappings(val != null ? val : new Mappings());
+	}
+	
+	public MappingsChecker checkMappings(MappingsSnapshot snapshot) {
+		// snapshots never change, so this can run on any thread
+		MappingsChecker checker = new MappingsChecker(m_jarIndex);
+		checker.findBrokenMappings(snapshot.classes());
+		return checker;
+	}
+	
+	public void dropBrokenMappings(MappingsChecker checker, boolean warnAboutDrops) {
+		
+		// dropped outer classes just leave the mappings, but everything else changes a class mapping
+		for (ClassEntry obfClassEntry : checker.getDroppedInnerClassMappings().keySet()) {
+			m_translatorCache.beforeChange(obfClassEntry);
+		}
+		for (FieldEntry obfFieldEntry : checker.getDroppedFieldMappings().keySet()) {
+			m_translatorCache.beforeChange(obfFieldEntry.getClassEntry());
+		}
+		for (BehaviorEntry obfBehaviorEntry : checker.getDroppedMethodMappings().keySet()) {
+			m_translatorCache.beforeChange(obfBehaviorEntry.getClassEntry());
 		}
 		
+		checker.dropFoundMappings(m_mappings);
+		for (ClassEntry obfClassEntry : checker.getDroppedClassMappings().keySet()) {
+			m_translatorCache.update(obfClassEntry);
+		}
+		for (ClassEntry obfClassEntry : checker.getDroppedInnerClassMappings().keySet()) {
+			m_translatorCache.update(obfClassEntry);
+		}
+		for (FieldEntry obfFieldEntry : checker.getDroppedFieldMappings().keySet()) {
+			m_translatorCache.update(obfFieldEntry);
+		}
+		for (BehaviorEntry obfBehaviorEntry : checker.getDroppedMethodMappings().keySet()) {
+			m_translatorCache.update(obfBehaviorEntry);
+		}
+		if (warnAboutDrops) {
+			warnAboutDrops(checker);
+		}
+	}
+	
+	private void warnAboutDrops(MappingsChecker checker) {
+		for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedClassMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+		for (java.util.Map.Entry<ClassEntry,ClassMapping> mapping : checker.getDroppedInnerClassMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find inner class entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+		for (java.util.Map.Entry<FieldEntry,FieldMapping> mapping : checker.getDroppedFieldMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find field entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+		for (java.util.Map.Entry<BehaviorEntry,MethodMapping> mapping : checker.getDroppedMethodMappings().entrySet()) {
+			System.out.println("WARNING: Couldn't find behavior entry " + mapping.getKey() + " (" + mapping.getValue().getDeobfName() + ") in jar. Mapping was dropped.");
+		}
+	}
+	
+	private void useMappings(Mappings val) {
 		m_mappings = val;
-		m_renamer = new MappingsRenamer(m_jarIndex, val);
-		m_translatorCache.clear();
+		m_translatorCache = new TranslatorCache(val, m_jarIndex);
+		m_renamer = new MappingsRenamer(m_jarIndex, val, m_translatorCache);
+		m_decompiler = null;
+		
+		// the old journal was for the old mappings
+		m_journal = null;
 	}
 	
-	public Translator getTranslator(TranslationDirection direction) {
-		Translator translator = m_translatorCache.get(direction);
-		if (translator == null) {
-			translator = m_mappings.getTranslator(direction, m_jarIndex.getTranslationIndex());
-			m_translatorCache.put(direction, translator);
+	public MappingsJournal getJournal() {
+		return m_journal;
+	}
+	
+	public void setJournal(MappingsJournal val) {
+		m_journal = val;
+	}
+	
+	public int replayJournal(List<MappingsJournal.Record> records) {
+		
+		// don't write the records we're replaying back into the journal
+		MappingsJournal journal = m_journal;
+		m_journal = null;
+		int numReplayed = 0;
+		try {
+			for (MappingsJournal.Record record : records) {
+				try {
+					switch (record.op) {
+						case Rename:
+							rename(record.obfEntry, record.name);
+						break;
+						case Remove:
+							removeMapping(record.obfEntry);
+						break;
+						case Mark:
+							markAsDeobfuscated(record.obfEntry);
+						break;
+					}
+					numReplayed++;
+				} catch (IllegalNameException | IllegalArgumentException ex) {
+					System.err.println("WARNING: Unable to replay journal record " + record + ": " + ex.getMessage());
+				}
+			}
+		} finally {
+			m_journal = journal;
 		}
-		return translator;
+		return numReplayed;
+	}
+	
+	public Translator getTranslator(TranslationDirection direction) {
+		return m_translatorCache.getTranslator(direction);
 	}
 	
 	public void getSeparatedClasses(List<ClassEntry> obfClasses, List<ClassEntry> deobfClasses) {
+		
+		// skip inner classes
+		List<ClassEntry> obfClassEntries = Lists.newArrayList();
 		for (ClassEntry obfClassEntry : m_jarIndex.getObfClassEntries()) {
-			// skip inner classes
-			if (obfClassEntry.isInnerClass()) {
-				continue;
+			if (!obfClassEntry.isInnerClass()) {
+				obfClassEntries.add(obfClassEntry);
 			}
+		}
+		
+		List<ClassEntry> deobfClassEntries = deobfuscateEntries(obfClassEntries);
+		for (int i=0; i<obfClassEntries.size(); i++) {
+			ClassEntry obfClassEntry = obfClassEntries.get(i);
 			
 			// separate the classes
-			ClassEntry deobfClassEntry = deobfuscateEntry(obfClassEntry);
+			ClassEntry deobfClassEntry = deobfClassEntries.get(i);
 			if (!deobfClassEntry.equals(obfClassEntry)) {
 				// if the class has a mapping, clearly it's deobfuscated
 				deobfClasses.add(deobfClassEntry);
@@ -183,47 +326,149 @@ public class Deobfuscator {
 		}
 	}
 	
+	public MappingsSnapshot getSnapshot() {
+		// background work should use one of these, so renames can keep going in the meantime
+		return m_translatorCache.getSnapshot();
+	}
+	
 	public CompilationUnit getSourceTree(String className) {
+		return getSourceTree(className, getSnapshot());
+	}
+	
+	public CompilationUnit getSourceTree(String className, MappingsSnapshot snapshot) {
+		// the decompiler isn't thread-safe, so decompiles with the same one take turns
+		SourceDecompiler decompiler = getDecompiler(snapshot);
+		synchronized (decompiler) {
+			return decompiler.getSourceTree(className);
+		}
+	}
+	
+	private synchronized SourceDecompiler getDecompiler(MappingsSnapshot snapshot) {
+		
+		// loading and transforming the classes a class depends on is most of the work of decompiling it
+		// so keep that around until the mappings change
+		if (m_decompiler != null && m_decompiler.getSnapshot() == snapshot) {
+			return m_decompiler;
+		}
+		// but an out-of-date snapshot gets a decompiler that's thrown away afterwards
+		SourceDecompiler decompiler = new SourceDecompiler(snapshot, new ClassBytesCache());
+		if (snapshot == getSnapshot()) {
+			m_decompiler = decompiler;
+		}
+		return decompiler;
+	}
+	
+	public SourceCache getSourceCache() {
+		return m_sourceCache;
+	}
+	
+	public SourceIndex getSourceIndex(String className, Boolean ignoreBadTokens, final MappingsSnapshot snapshot) {
 		
-		// we don't know if this class name is obfuscated or deobfuscated
-		// we need to tell the decompiler the deobfuscated name so it doesn't get freaked out
-		// the decompiler only sees classes after deobfuscation, so we need to load it by the deobfuscated name if there is one
+		// a class only decompiles differently if the mappings for one of the classes it uses changed
+		// so we've often seen this one already
+		boolean ignore = ignoreBadTokens == null || ignoreBadTokens;
+		String obfClassName = snapshot.obfuscateEntry(new ClassEntry(className)).getName();
+		SourceIndex index = m_sourceCache.get(obfClassName, ignore, getFingerprinter(snapshot));
+		if (index != null) {
+			return index;
+		}
 		
-		// first, assume class name is deobf
-		String deobfClassName = className;
+		CompilationUnit sourceTree = getSourceTree(className, snapshot);
+		index = getSourceIndex(sourceTree, getSource(sourceTree), ignore, snapshot);
+		List<Entry> obfEntries = getDependencies(index, snapshot);
+		m_sourceCache.put(obfClassName, ignore, index, obfEntries, getFingerprint(obfEntries, snapshot));
+		return index;
+	}
+	
+	private SourceCache.Fingerprinter getFingerprinter(final MappingsSnapshot snapshot) {
+		return new SourceCache.Fingerprinter() {
+			@Override
+			public String getFingerprint(List<Entry> obfEntries) {
+				return Deobfuscator.this.getFingerprint(obfEntries, snapshot);
+			}
+		};
+	}
+	
+	private List<Entry> getDependencies(SourceIndex index, MappingsSnapshot snapshot) {
 		
-		// if it wasn't actually deobf, then we can find a mapping for it and get the deobf name
-		ClassMapping classMapping = m_mappings.getClassByObf(className);
-		if (classMapping != null && classMapping.getDeobfName() != null) {
-			deobfClassName = classMapping.getDeobfName();
+		// remember which of our classes the source uses
+		Set<Entry> deobfEntries = Sets.newLinkedHashSet(index.entries());
+		for (Token token : index.referenceTokens()) {
+			deobfEntries.add(index.getDeobfReference(token).entry);
+		}
+		Set<ClassEntry> obfClassEntries = Sets.newLinkedHashSet();
+		for (Entry obfEntry : snapshot.getTranslator(TranslationDirection.Obfuscating).translateEntries(deobfEntries)) {
+			addClassDependencies(obfClassEntries, obfEntry.getClassEntry());
+		}
+		return Lists.<Entry>newArrayList(obfClassEntries);
+	}
+	
+	private void addClassDependencies(Set<ClassEntry> obfClassEntries, ClassEntry obfClassEntry) {
+		if (obfClassEntry == null || !m_jarIndex.containsObfClass(obfClassEntry) || !obfClassEntries.add(obfClassEntry)) {
+			return;
 		}
 		
-		// set the type loader
-		TranslatingTypeLoader loader = new TranslatingTypeLoader(
-			m_jar,
-			m_jarIndex,
-			getTranslator(TranslationDirection.Obfuscating),
-			getTranslator(TranslationDirection.Deobfuscating)
-		); 
-		m_settings.setTypeLoader(loader);
-
-		// see if procyon can find the type
-		TypeReference type = new MetadataSystem(loader).lookupType(deobfClassName);
-		if (type == null) {
-			throw new Error(String.format("Unable to find type: %s (deobf: %s)\nTried class names: %s",
-				className, deobfClassName, loader.getClassNamesToTry(deobfClassName)
-			));
+		// outer class names are part of the class name
+		// and inherited methods can decide whether a call needs casts to pick the right overload
+		for (ClassEntry outerClassEntry : obfClassEntry.getClassChain()) {
+			addClassDependencies(obfClassEntries, outerClassEntry);
+		}
+		TranslationIndex translationIndex = m_jarIndex.getTranslationIndex();
+		addClassDependencies(obfClassEntries, translationIndex.getSuperclass(obfClassEntry));
+		for (ClassEntry interfaceEntry : translationIndex.getInterfaces(obfClassEntry)) {
+			addClassDependencies(obfClassEntries, interfaceEntry);
 		}
-		TypeDefinition resolvedType = type.resolve();
+	}
+	
+	private String getFingerprint(List<Entry> obfClassEntries, MappingsSnapshot snapshot) {
 		
-		// decompile it!
-		DecompilerContext context = new DecompilerContext();
-		context.setCurrentType(resolvedType);
-		context.setSettings(m_settings);
-		AstBuilder builder = new AstBuilder(context);
-		builder.addType(resolvedType);
-		builder.runTransformations(null);
-		return builder.getCompilationUnit();
+		// the decompiler picks names for locals and arguments from the types, methods, and arguments they're used with
+		// so a change to any name in a class can change the source of a class that uses it
+		Translator deobfuscatingTranslator = snapshot.getTranslator(TranslationDirection.Deobfuscating);
+		Hasher hasher = Hashing.sha1().newHasher();
+		for (Entry obfEntry : obfClassEntries) {
+			ClassEntry obfClassEntry = (ClassEntry)obfEntry;
+			putName(hasher, deobfuscatingTranslator.translateEntry(obfClassEntry).getName());
+			List<ClassMapping> mappingChain = snapshot.getClassMappingChain(obfClassEntry);
+			ClassMapping classMapping = mappingChain.get(mappingChain.size() - 1);
+			if (classMapping != null) {
+				hasher.putBytes(getMembersFingerprint(classMapping).asBytes());
+			}
+		}
+		return hasher.hash().toString();
+	}
+	
+	private HashCode getMembersFingerprint(ClassMapping classMapping) {
+		
+		// the member maps don't have any particular order, so don't depend on one
+		List<HashCode> hashes = Lists.newArrayList();
+		hashes.add(Hashing.sha1().hashInt(0));
+		for (FieldMapping fieldMapping : classMapping.fields()) {
+			Hasher hasher = Hashing.sha1().newHasher();
+			putName(hasher, fieldMapping.getObfName());
+			putName(hasher, fieldMapping.getObfType().toString());
+			putName(hasher, fieldMapping.getDeobfName());
+			hashes.add(hasher.hash());
+		}
+		for (MethodMapping methodMapping : classMapping.methods()) {
+			Hasher hasher = Hashing.sha1().newHasher();
+			putName(hasher, methodMapping.getObfName());
+			putName(hasher, methodMapping.getObfSignature().toString());
+			putName(hasher, methodMapping.getDeobfName());
+			for (ArgumentMapping argumentMapping : methodMapping.arguments()) {
+				hasher.putInt(argumentMapping.getIndex());
+				putName(hasher, argumentMapping.getName());
+			}
+			hashes.add(hasher.hash());
+		}
+		return Hashing.combineUnordered(hashes);
+	}
+	
+	private void putName(Hasher hasher, String name) {
+		if (name != null) {
+			hasher.putString(name, Charsets.UTF_8);
+		}
+		hasher.putChar('\n');
 	}
 	
 	public SourceIndex getSourceIndex(CompilationUnit sourceTree, String source) {
@@ -231,6 +476,10 @@ public class Deobfuscator {
 	}
 	
 	public SourceIndex getSourceIndex(CompilationUnit sourceTree, String source, Boolean ignoreBadTokens) {
+		return getSourceIndex(sourceTree, source, ignoreBadTokens, getSnapshot());
+	}
+	
+	public SourceIndex getSourceIndex(CompilationUnit sourceTree, String source, Boolean ignoreBadTokens, MappingsSnapshot snapshot) {
 		
 		// build the source index
 		SourceIndex index;
@@ -249,7 +498,7 @@ public class Deobfuscator {
 			EntryReference<Entry,Entry> deobfReference = index.getDeobfReference(token);
 			
 			// get the obfuscated entry
-			Entry obfEntry = obfuscateEntry(deobfReference.entry);
+			Entry obfEntry = snapshot.obfuscateEntry(deobfReference.entry);
 			
 			// try to resolve the class
 			ClassEntry resolvedObfClassEntry = m_jarIndex.getTranslationIndex().resolveEntryClass(obfEntry);
@@ -258,7 +507,7 @@ public class Deobfuscator {
 				obfEntry = obfEntry.cloneToNewClass(resolvedObfClassEntry);
 				
 				// save the new deobfuscated reference
-				deobfReference.entry = deobfuscateEntry(obfEntry);
+				deobfReference.entry = snapshot.deobfuscateEntry(obfEntry);
 				index.replaceDeobfReference(token, deobfReference);
 			}
 			
@@ -270,14 +519,22 @@ public class Deobfuscator {
 	}
 	
 	public String getSource(CompilationUnit sourceTree) {
+		return getSource(sourceTree, m_settings);
+	}
+	
+	private static String getSource(CompilationUnit sourceTree, DecompilerSettings settings) {
 		// render the AST into source
 		StringWriter buf = new StringWriter();
 		sourceTree.acceptVisitor(new InsertParenthesesVisitor(), null);
-		sourceTree.acceptVisitor(new JavaOutputVisitor(new PlainTextOutput(buf), m_settings), null);
+		sourceTree.acceptVisitor(new JavaOutputVisitor(new PlainTextOutput(buf), settings), null);
 		return buf.toString();
 	}
 	
 	public void writeSources(File dirOut, ProgressListener progress) throws IOException {
+		writeSources(dirOut, progress, 1);
+	}
+	
+	public void writeSources(final File dirOut, final ProgressListener progress, int numThreads) throws IOException {
 		// get the classes to decompile
 		Set<ClassEntry> classEntries = Sets.newHashSet();
 		for (ClassEntry obfClassEntry : m_jarIndex.getObfClassEntries()) {
@@ -289,46 +546,134 @@ public class Deobfuscator {
 			classEntries.add(obfClassEntry);
 		}
 		
+		// only decompile the classes that use a name that changed since the last time we wrote sources here
+		final MappingsSnapshot snapshot = getSnapshot();
+		SourceManifest oldManifest = SourceManifest.read(dirOut, getJarHash());
+		final SourceManifest manifest = new SourceManifest(dirOut, oldManifest.getJarHash());
+		SourceCache.Fingerprinter fingerprinter = getFingerprinter(snapshot);
+		Set<String> paths = Sets.newHashSet();
+		List<ClassEntry> changedClassEntries = Lists.newArrayList();
+		for (ClassEntry obfClassEntry : classEntries) {
+			String path = getSourcePath(snapshot.deobfuscateEntry(new ClassEntry(obfClassEntry)));
+			paths.add(path);
+			if (oldManifest.isUpToDate(obfClassEntry.getName(), path, fingerprinter)) {
+				manifest.putFrom(oldManifest, obfClassEntry.getName());
+			} else {
+				changedClassEntries.add(obfClassEntry);
+			}
+		}
+		
+		// sources of classes that were renamed or removed would just be left behind
+		for (String path : oldManifest.getPaths()) {
+			if (!paths.contains(path)) {
+				new File(dirOut, path).delete();
+			}
+		}
+		
 		if (progress != null) {
-			progress.init(classEntries.size(), "Decompiling classes...");
+			progress.init(changedClassEntries.size(), "Decompiling classes...");
 		}
 		
 		// DEOBFUSCATE ALL THE THINGS!! @_@
-		int i = 0;
-		for (ClassEntry obfClassEntry : classEntries) {
-			ClassEntry deobfClassEntry = deobfuscateEntry(new ClassEntry(obfClassEntry));
+		final Queue<ClassEntry> queue = Queues.newConcurrentLinkedQueue(changedClassEntries);
+		final AtomicInteger numStarted = new AtomicInteger(0);
+		if (numThreads <= 1) {
+			writeSources(dirOut, progress, new SourceDecompiler(snapshot, new ClassBytesCache()), queue, numStarted, manifest);
+		} else {
+			
+			// every worker takes classes off the queue until it's empty, so the big classes don't hold up a whole chunk
+			// but they share transformed classes, so each class is only transformed once
+			final ClassBytesCache cache = new ClassBytesCache();
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				List<Callable<Void>> tasks = Lists.newArrayList();
+				for (int i = 0; i < numThreads; i++) {
+					tasks.add(new Callable<Void>() {
+						@Override
+						public Void call() {
+							writeSources(dirOut, progress, new SourceDecompiler(snapshot, cache), queue, numStarted, manifest);
+							return null;
+						}
+					});
+				}
+				for (Future<Void> future : pool.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException ex) {
+				throw new Error(ex);
+			} catch (ExecutionException ex) {
+				throw new Error("Unable to write sources!", ex.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+		manifest.write();
+		if (progress != null) {
+			progress.onProgress(changedClassEntries.size(), "Done!");
+		}
+	}
+	
+	private String getSourcePath(ClassEntry deobfClassEntry) {
+		return deobfClassEntry.getName().replace('.', '/') + ".java";
+	}
+	
+	private synchronized String getJarHash() throws IOException {
+		// sources are only good for the exact jar they were decompiled from
+		// the index cache already hashed it, if we have one
+		if (m_indexCache != null) {
+			return m_indexCache.getHash(m_classStore);
+		}
+		if (m_jarHash == null) {
+			m_jarHash = JarIndexCache.hashJar(m_classStore);
+		}
+		return m_jarHash;
+	}
+	
+	private void writeSources(File dirOut, ProgressListener progress, SourceDecompiler decompiler, Queue<ClassEntry> classEntries, AtomicInteger numStarted, SourceManifest manifest) {
+		ClassEntry obfClassEntry;
+		while ((obfClassEntry = classEntries.poll()) != null) {
+			ClassEntry deobfClassEntry = decompiler.getSnapshot().deobfuscateEntry(new ClassEntry(obfClassEntry));
 			if (progress != null) {
-				progress.onProgress(i++, deobfClassEntry.toString());
+				synchronized (progress) {
+					progress.onProgress(numStarted.getAndIncrement(), deobfClassEntry.toString());
+				}
 			}
 			
 			try {
 				// get the source
-				String source = getSource(getSourceTree(obfClassEntry.getName()));
+				CompilationUnit sourceTree = decompiler.getSourceTree(obfClassEntry.getName());
+				String source = decompiler.getSource(sourceTree);
 				
 				// write the file
-				File file = new File(dirOut, deobfClassEntry.getName().replace('.', '/') + ".java");
+				String path = getSourcePath(deobfClassEntry);
+				File file = new File(dirOut, path);
 				file.getParentFile().mkdirs();
 				try (FileWriter out = new FileWriter(file)) {
 					out.write(source);
 				}
+				
+				// and remember which of our classes it uses, so next time we know if it needs writing again
+				SourceIndex index = getSourceIndex(sourceTree, source, null, decompiler.getSnapshot());
+				List<Entry> obfEntries = getDependencies(index, decompiler.getSnapshot());
+				manifest.put(obfClassEntry.getName(), path, obfEntries, getFingerprint(obfEntries, decompiler.getSnapshot()));
 			} catch (Throwable t) {
 				// don't crash the whole world here, just log the error and keep going
 				// TODO: set up logback via log4j
-				System.err.println("Unable to deobfuscate class " + deobfClassEntry.toString() + " (" + obfClassEntry.toString() + ")");
-				t.printStackTrace(System.err);
+				synchronized (System.err) {
+					System.err.println("Unable to deobfuscate class " + deobfClassEntry.toString() + " (" + obfClassEntry.toString() + ")");
+					t.printStackTrace(System.err);
+				}
 			}
 		}
-		if (progress != null) {
-			progress.onProgress(i, "Done!");
-		}
 	}
 	
 	public void writeJar(File out, ProgressListener progress) {
+		MappingsSnapshot snapshot = getSnapshot();
 		final TranslatingTypeLoader loader = new TranslatingTypeLoader(
-			m_jar,
+			m_classStore,
 			m_jarIndex,
-			getTranslator(TranslationDirection.Obfuscating),
-			getTranslator(TranslationDirection.Deobfuscating)
+			snapshot.getTranslator(TranslationDirection.Obfuscating),
+			snapshot.getTranslator(TranslationDirection.Deobfuscating)
 		);
 		transformJar(out, progress, c -> loader.transformClass(c));
 	}
@@ -347,11 +692,11 @@ public class Deobfuscator {
 	private void transformJar(File out, ProgressListener progress, ClassTransformer transformer) {
 		try (JarOutputStream outJar = new JarOutputStream(new FileOutputStream(out))) {
 			if (progress != null) {
-				progress.init(JarClassIterator.getClassEntries(m_jar).size(), "Transforming classes...");
+				progress.init(m_classStore.getClassJarEntries().size(), "Transforming classes...");
 			}
 			
 			int i = 0;
-			for (CtClass c : JarClassIterator.classes(m_jar)) {
+			for (CtClass c : m_classStore.classes()) {
 				if (progress != null) {
 					progress.onProgress(i++, c.getName());
 				}
@@ -389,6 +734,14 @@ public class Deobfuscator {
 		return getTranslator(TranslationDirection.Deobfuscating).translateEntry(obfEntry);
 	}
 	
+	public <T extends Entry> List<T> obfuscateEntries(Collection<T> deobfEntries) {
+		return getTranslator(TranslationDirection.Obfuscating).translateEntries(deobfEntries, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public <T extends Entry> List<T> deobfuscateEntries(Collection<T> obfEntries) {
+		return getTranslator(TranslationDirection.Deobfuscating).translateEntries(obfEntries, Runtime.getRuntime().availableProcessors());
+	}
+	
 	public <E extends Entry,C extends Entry> EntryReference<E,C> obfuscateReference(EntryReference<E,C> deobfReference) {
 		if (deobfReference == null) {
 			return null;
@@ -412,39 +765,7 @@ public class Deobfuscator {
 	}
 	
 	public boolean isObfuscatedIdentifier(Entry obfEntry) {
-		
-		if (obfEntry instanceof MethodEntry) {
-			
-			// HACKHACK: Object methods are not obfuscated identifiers
-			MethodEntry obfMethodEntry = (MethodEntry)obfEntry;
-			String name = obfMethodEntry.getName();
-			String sig = obfMethodEntry.getSignature().toString();
-			if (name.equals("clone") && sig.equals("()Ljava/lang/Object;")) {
-				return false;
-			} else if (name.equals("equals") && sig.equals("(Ljava/lang/Object;)Z")) {
-				return false;
-			} else if (name.equals("finalize") && sig.equals("()V")) {
-				return false;
-			} else if (name.equals("getClass") && sig.equals("()Ljava/lang/Class;")) {
-				return false;
-			} else if (name.equals("hashCode") && sig.equals("()I")) {
-				return false;
-			} else if (name.equals("notify") && sig.equals("()V")) {
-				return false;
-			} else if (name.equals("notifyAll") && sig.equals("()V")) {
-				return false;
-			} else if (name.equals("toString") && sig.equals("()Ljava/lang/String;")) {
-				return false;
-			} else if (name.equals("wait") && sig.equals("()V")) {
-				return false;
-			} else if (name.equals("wait") && sig.equals("(J)V")) {
-				return false;
-			} else if (name.equals("wait") && sig.equals("(JI)V")) {
-				return false;
-			}
-		}
-		
-		return m_jarIndex.containsObfEntry(obfEntry);
+		return getSnapshot().isObfuscatedIdentifier(obfEntry);
 	}
 	
 	public boolean isRenameable(EntryReference<Entry,Entry> obfReference) {
@@ -454,24 +775,7 @@ public class Deobfuscator {
 	// NOTE: these methods are a bit messy... oh well
 	
 	public boolean hasDeobfuscatedName(Entry obfEntry) {
-		Translator translator = getTranslator(TranslationDirection.Deobfuscating);
-		if (obfEntry instanceof ClassEntry) {
-			ClassEntry obfClass = (ClassEntry)obfEntry;
-			List<ClassMapping> mappingChain = m_mappings.getClassMappingChain(obfClass);
-			ClassMapping classMapping = mappingChain.get(mappingChain.size() - 1);
-			return classMapping != null && classMapping.getDeobfName() != null;
-		} else if (obfEntry instanceof FieldEntry) {
-			return translator.translate((FieldEntry)obfEntry) != null;
-		} else if (obfEntry instanceof MethodEntry) {
-			return translator.translate((MethodEntry)obfEntry) != null;
-		} else if (obfEntry instanceof ConstructorEntry) {
-			// constructors have no names
-			return false;
-		} else if (obfEntry instanceof ArgumentEntry) {
-			return translator.translate((ArgumentEntry)obfEntry) != null;
-		} else {
-			throw new Error("Unknown entry type: " + obfEntry.getClass().getName());
-		}
+		return getSnapshot().hasDeobfuscatedName(obfEntry);
 	}
 	
 	public void rename(Entry obfEntry, String newName) {
@@ -489,8 +793,9 @@ public class Deobfuscator {
 			throw new Error("Unknown entry type: " + obfEntry.getClass().getName());
 		}
 		
-		// clear caches
-		m_translatorCache.clear();
+		// update caches
+		m_translatorCache.update(obfEntry);
+		journal(MappingsJournal.Op.Rename, obfEntry, newName);
 	}
 	
 	public void removeMapping(Entry obfEntry) {
@@ -508,8 +813,9 @@ public class Deobfuscator {
 			throw new Error("Unknown entry type: " + obfEntry);
 		}
 		
-		// clear caches
-		m_translatorCache.clear();
+		// update caches
+		m_translatorCache.update(obfEntry);
+		journal(MappingsJournal.Op.Remove, obfEntry, null);
 	}
 	
 	public void markAsDeobfuscated(Entry obfEntry) {
@@ -527,7 +833,89 @@ public class Deobfuscator {
 			throw new Error("Unknown entry type: " + obfEntry);
 		}
 		
-		// clear caches
-		m_translatorCache.clear();
+		// update caches
+		m_translatorCache.update(obfEntry);
+		journal(MappingsJournal.Op.Mark, obfEntry, null);
+	}
+	
+	private void journal(MappingsJournal.Op op, Entry obfEntry, String name) {
+		if (m_journal == null) {
+			return;
+		}
+		try {
+			m_journal.append(op, obfEntry, name);
+		} catch (IOException ex) {
+			// the change itself still happened, it's just not crash-safe until the next save
+			System.err.println("WARNING: Unable to write to mappings journal " + m_journal.getFile() + ": " + ex.getMessage());
+		}
+	}
+	
+	private class SourceDecompiler {
+		
+		// everything the decompiler needs for one thread, none of it is safe to share
+		private MappingsSnapshot m_snapshot;
+		private TranslatingTypeLoader m_loader;
+		private DecompilerSettings m_settings;
+		private MetadataSystem m_metadataSystem;
+		
+		public SourceDecompiler(MappingsSnapshot snapshot, ClassBytesCache cache) {
+			m_snapshot = snapshot;
+			m_loader = new TranslatingTypeLoader(
+				m_classStore,
+				m_jarIndex,
+				snapshot.getTranslator(TranslationDirection.Obfuscating),
+				snapshot.getTranslator(TranslationDirection.Deobfuscating),
+				cache
+			);
+			m_settings = newDecompilerSettings();
+			m_settings.setTypeLoader(m_loader);
+			m_metadataSystem = new MetadataSystem(m_loader);
+		}
+		
+		public MappingsSnapshot getSnapshot() {
+			return m_snapshot;
+		}
+		
+		public ClassBytesCache getCache() {
+			return m_loader.getCache();
+		}
+		
+		public CompilationUnit getSourceTree(String className) {
+			
+			// we don't know if this class name is obfuscated or deobfuscated
+			// we need to tell the decompiler the deobfuscated name so it doesn't get freaked out
+			// the decompiler only sees classes after deobfuscation, so we need to load it by the deobfuscated name if there is one
+			
+			// first, assume class name is deobf
+			String deobfClassName = className;
+			
+			// if it wasn't actually deobf, then we can find a mapping for it and get the deobf name
+			ClassMapping classMapping = m_snapshot.getClassByObf(className);
+			if (classMapping != null && classMapping.getDeobfName() != null) {
+				deobfClassName = classMapping.getDeobfName();
+			}
+			
+			// see if procyon can find the type
+			TypeReference type = m_metadataSystem.lookupType(deobfClassName);
+			if (type == null) {
+				throw new Error(String.format("Unable to find type: %s (deobf: %s)\nTried class names: %s",
+					className, deobfClassName, m_loader.getClassNamesToTry(deobfClassName)
+				));
+			}
+			TypeDefinition resolvedType = type.resolve();
+			
+			// decompile it!
+			DecompilerContext context = new DecompilerContext();
+			context.setCurrentType(resolvedType);
+			context.setSettings(m_settings);
+			AstBuilder builder = new AstBuilder(context);
+			builder.addType(resolvedType);
+			builder.runTransformations(null);
+			return builder.getCompilationUnit();
+		}
+		
+		public String getSource(CompilationUnit sourceTree) {
+			return Deobfuscator.getSource(sourceTree, m_settings);
+		}
 	}
 }
@@ -22,7 +22,7 @@ import javassist.CtField;
 
 import com.google.common.collect.Maps;
 
-import cuchaz.enigma.analysis.JarClassIterator;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ClassMapping;
 import cuchaz.enigma.mapping.ClassNameReplacer;
@@ -43,7 +43,7 @@ public class MainFormatConverter {
 		
 		JarFile jar = new JarFile(System.getProperty("user.home") + "/.minecraft/versions/1.8/1.8.jar");
 		Map<String,Type> fieldTypes = Maps.newHashMap();
-		for (CtClass c : JarClassIterator.classes(jar)) {
+		for (CtClass c : new JarClassStore(jar).classes()) {
 			for (CtField field : c.getDeclaredFields()) {
 				FieldEntry fieldEntry = EntryFactory.getFieldEntry(field);
 				fieldTypes.put(getFieldKey(fieldEntry), moveClasssesOutOfDefaultPackage(fieldEntry.getType()));
@@ -56,9 +56,9 @@ public class MainFormatConverter {
 		MappingsReader mappingsReader = new MappingsReader() {
 			
 			@Override
-			protected FieldMapping readField(String[] parts) {
+			protected FieldMapping readField(Line line) {
 				// assume the void type for now
-				return new FieldMapping(parts[1], new Type("V"), parts[2]);
+				return new FieldMapping(line.getToken(1), getType("V"), line.getToken(2));
 			}
 		};
 		Mappings mappings = mappingsReader.read(new FileReader(fileMappings));
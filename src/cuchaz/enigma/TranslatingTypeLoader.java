@@ -10,28 +10,21 @@
  ******************************************************************************/
 package cuchaz.enigma;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
-import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
-import javassist.ByteArrayClassPath;
 import javassist.CannotCompileException;
-import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.NotFoundException;
 import javassist.bytecode.Descriptor;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.strobel.assembler.metadata.Buffer;
 import com.strobel.assembler.metadata.ClasspathTypeLoader;
 import com.strobel.assembler.metadata.ITypeLoader;
 
 import cuchaz.enigma.analysis.BridgeMarker;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.bytecode.ClassRenamer;
 import cuchaz.enigma.bytecode.ClassTranslator;
@@ -43,26 +36,35 @@ import cuchaz.enigma.mapping.Translator;
 
 public class TranslatingTypeLoader implements ITypeLoader {
 	
-	private JarFile m_jar;
+	private JarClassStore m_classStore;
 	private JarIndex m_jarIndex;
 	private Translator m_obfuscatingTranslator;
 	private Translator m_deobfuscatingTranslator;
-	private Map<String,byte[]> m_cache;
+	private ClassBytesCache m_cache;
 	private ClasspathTypeLoader m_defaultTypeLoader;
 	
-	public TranslatingTypeLoader(JarFile jar, JarIndex jarIndex) {
-		this(jar, jarIndex, new Translator(), new Translator());
+	public TranslatingTypeLoader(JarClassStore classStore, JarIndex jarIndex) {
+		this(classStore, jarIndex, new Translator(), new Translator());
 	}
 	
-	public TranslatingTypeLoader(JarFile jar, JarIndex jarIndex, Translator obfuscatingTranslator, Translator deobfuscatingTranslator) {
-		m_jar = jar;
+	public TranslatingTypeLoader(JarClassStore classStore, JarIndex jarIndex, Translator obfuscatingTranslator, Translator deobfuscatingTranslator) {
+		this(classStore, jarIndex, obfuscatingTranslator, deobfuscatingTranslator, new ClassBytesCache());
+	}
+	
+	public TranslatingTypeLoader(JarClassStore classStore, JarIndex jarIndex, Translator obfuscatingTranslator, Translator deobfuscatingTranslator, ClassBytesCache cache) {
+		// loaders with the same translators can share a cache
+		m_classStore = classStore;
 		m_jarIndex = jarIndex;
 		m_obfuscatingTranslator = obfuscatingTranslator;
 		m_deobfuscatingTranslator = deobfuscatingTranslator;
-		m_cache = Maps.newHashMap();
+		m_cache = cache;
 		m_defaultTypeLoader = new ClasspathTypeLoader();
 	}
 	
+	public ClassBytesCache getCache() {
+		return m_cache;
+	}
+	
 	public void clearCache() {
 		m_cache.clear();
 	}
@@ -71,15 +73,13 @@ public class TranslatingTypeLoader implements ITypeLoader {
 	public boolean tryLoadType(String className, Buffer out) {
 		
 		// check the cache
-		byte[] data;
-		if (m_cache.containsKey(className)) {
-			data = m_cache.get(className);
-		} else {
+		byte[] data = m_cache.get(className);
+		if (data == null) {
 			data = loadType(className);
 			m_cache.put(className, data);
 		}
 		
-		if (data == null) {
+		if (data == null || data == ClassBytesCache.NotFound) {
 			// chain to default type loader
 			return m_defaultTypeLoader.tryLoadType(className, out);
 		}
@@ -99,14 +99,7 @@ public class TranslatingTypeLoader implements ITypeLoader {
 		}
 		
 		// return a javassist handle for the class
-		String javaClassFileName = Descriptor.toJavaName(deobfClassName);
-		ClassPool classPool = new ClassPool();
-		classPool.insertClassPath(new ByteArrayClassPath(javaClassFileName, data));
-		try {
-			return classPool.get(javaClassFileName);
-		} catch (NotFoundException ex) {
-			throw new Error(ex);
-		}
+		return m_classStore.makeClass(data);
 	}
 	
 	private byte[] loadType(String className) {
@@ -142,26 +135,8 @@ public class TranslatingTypeLoader implements ITypeLoader {
 		}
 		
 		try {
-			// read the class file into a buffer
-			ByteArrayOutputStream data = new ByteArrayOutputStream();
-			byte[] buf = new byte[1024 * 1024]; // 1 KiB
-			InputStream in = m_jar.getInputStream(m_jar.getJarEntry(classInJarName + ".class"));
-			while (true) {
-				int bytesRead = in.read(buf);
-				if (bytesRead <= 0) {
-					break;
-				}
-				data.write(buf, 0, bytesRead);
-			}
-			data.close();
-			in.close();
-			buf = data.toByteArray();
-			
 			// load the javassist handle to the raw class
-			ClassPool classPool = new ClassPool();
-			String classInJarJavaName = Descriptor.toJavaName(classInJarName);
-			classPool.insertClassPath(new ByteArrayClassPath(classInJarJavaName, buf));
-			CtClass c = classPool.get(classInJarJavaName);
+			CtClass c = m_classStore.getClass(classInJarName);
 			
 			c = transformClass(c);
 			
@@ -182,8 +157,7 @@ public class TranslatingTypeLoader implements ITypeLoader {
 
 		// try to find the class in the jar
 		for (String className : getClassNamesToTry(obfClassEntry)) {
-			JarEntry jarEntry = m_jar.getJarEntry(className + ".class");
-			if (jarEntry != null) {
+			if (m_classStore.containsClass(className)) {
 				return className;
 			}
 		}
@@ -222,10 +196,7 @@ public class TranslatingTypeLoader implements ITypeLoader {
 		
 		// re-get the javassist handle since we changed class names
 		ClassEntry obfClassEntry = new ClassEntry(Descriptor.toJvmName(c.getName()));
-		String javaClassReconstructedName = Descriptor.toJavaName(obfClassEntry.getName());
-		ClassPool classPool = new ClassPool();
-		classPool.insertClassPath(new ByteArrayClassPath(javaClassReconstructedName, c.toBytecode()));
-		c = classPool.get(javaClassReconstructedName);
+		c = m_classStore.makeClass(c.toBytecode());
 		
 		// check that the file is correct after inner class reconstruction (ie cause Javassist to fail fast if something is wrong)
 		assertClassName(c, obfClassEntry);
@@ -11,14 +11,19 @@
 package cuchaz.enigma;
 
 import java.awt.Desktop;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.jar.JarFile;
 
@@ -30,6 +35,10 @@ import com.google.common.io.CharStreams;
 
 public class Util {
 	
+	public static interface FileContents {
+		void write(OutputStream out) throws IOException;
+	}
+	
 	public static int combineHashesOrdered(Object... objs) {
 		return combineHashesOrdered(Arrays.asList(objs));
 	}
@@ -67,6 +76,38 @@ public class Util {
 		}
 	}
 	
+	public static void writeAtomically(File file, FileContents contents)
+	throws IOException {
+		
+		// write to a temp file next to it first, so a crash never leaves half a file under the real name
+		File dir = file.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
+		File tempFile = File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+		try (FileOutputStream fout = new FileOutputStream(tempFile)) {
+			OutputStream out = new BufferedOutputStream(fout);
+			contents.write(out);
+			out.flush();
+			
+			// make sure the bytes are on the disk before the real name points at them
+			fout.getFD().sync();
+		} catch (Throwable t) {
+			// only half written, so there's nothing worth keeping
+			tempFile.delete();
+			throw t;
+		}
+		
+		// never delete the old file first, if the move fails the old file and the temp file are both still good
+		try {
+			try {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException ex) {
+			throw new IOException("Unable to replace " + file + ", the new contents are still in " + tempFile, ex);
+		}
+	}
+	
 	public static String readStreamToString(InputStream in) throws IOException {
 		return CharStreams.toString(new InputStreamReader(in, "UTF-8"));
 	}
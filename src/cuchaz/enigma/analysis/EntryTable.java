@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.Entry;
+
+public class EntryTable {
+	
+	public static final int NoId = -1;
+	
+	private ConcurrentMap<Entry,Entry> m_entries;
+	private ConcurrentMap<Entry,Integer> m_ids;
+	private List<Entry> m_entriesById;
+	
+	public EntryTable() {
+		m_entries = Maps.newConcurrentMap();
+		m_ids = Maps.newConcurrentMap();
+		m_entriesById = Lists.newArrayList();
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <T extends Entry> T intern(T entry) {
+		
+		if (entry == null) {
+			return null;
+		}
+		
+		// the common case is we've seen this entry already, so don't lock for that
+		Entry internedEntry = m_entries.get(entry);
+		if (internedEntry != null) {
+			return (T)internedEntry;
+		}
+		
+		// members share the interned class entry too
+		if (!(entry instanceof ClassEntry)) {
+			ClassEntry classEntry = intern(entry.getClassEntry());
+			if (classEntry != entry.getClassEntry()) {
+				entry = (T)entry.cloneToNewClass(classEntry);
+			}
+		}
+		
+		synchronized (this) {
+			internedEntry = m_entries.get(entry);
+			if (internedEntry == null) {
+				internedEntry = entry;
+				m_ids.put(entry, m_entriesById.size());
+				m_entriesById.add(entry);
+				m_entries.put(entry, entry);
+			}
+		}
+		return (T)internedEntry;
+	}
+	
+	public int getId(Entry entry) {
+		Integer id = m_ids.get(entry);
+		if (id == null) {
+			return NoId;
+		}
+		return id;
+	}
+	
+	public synchronized Entry getEntry(int id) {
+		return m_entriesById.get(id);
+	}
+	
+	public synchronized int size() {
+		return m_entriesById.size();
+	}
+	
+	public synchronized void clear() {
+		m_entries.clear();
+		m_ids.clear();
+		m_entriesById.clear();
+	}
+}
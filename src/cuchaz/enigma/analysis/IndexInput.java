@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.ConstructorEntry;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+class IndexInput {
+	
+	private DataInputStream m_in;
+	private List<String> m_strings;
+	private List<Entry> m_entries;
+	private Map<String,Type> m_types;
+	private Map<String,Signature> m_signatures;
+	
+	public IndexInput(InputStream in) {
+		m_in = new DataInputStream(in);
+		m_strings = Lists.newArrayList();
+		m_entries = Lists.newArrayList();
+		m_types = Maps.newHashMap();
+		m_signatures = Maps.newHashMap();
+	}
+	
+	public int readInt()
+	throws IOException {
+		return m_in.readInt();
+	}
+	
+	public boolean readBoolean()
+	throws IOException {
+		return m_in.readBoolean();
+	}
+	
+	public String readString()
+	throws IOException {
+		int id = m_in.readInt();
+		if (id == IndexOutput.NullId) {
+			return null;
+		} else if (id == IndexOutput.NewId) {
+			String val = m_in.readUTF();
+			m_strings.add(val);
+			return val;
+		}
+		return m_strings.get(id - 1);
+	}
+	
+	public String readText()
+	throws IOException {
+		byte[] data = new byte[m_in.readInt()];
+		m_in.readFully(data);
+		return new String(data, "UTF-8");
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <T extends Entry> T readEntry()
+	throws IOException {
+		int id = m_in.readInt();
+		if (id == IndexOutput.NullId) {
+			return null;
+		} else if (id != IndexOutput.NewId) {
+			return (T)m_entries.get(id - 1);
+		}
+		
+		Entry entry;
+		int kind = m_in.readByte();
+		switch (kind) {
+			case IndexOutput.ClassKind:
+				entry = new ClassEntry(readString());
+			break;
+			
+			case IndexOutput.FieldKind: {
+				ClassEntry classEntry = readEntry();
+				String name = readString();
+				entry = new FieldEntry(classEntry, name, getType(readString()));
+			}
+			break;
+			
+			case IndexOutput.MethodKind: {
+				ClassEntry classEntry = readEntry();
+				String name = readString();
+				entry = new MethodEntry(classEntry, name, getSignature(readString()));
+			}
+			break;
+			
+			case IndexOutput.ConstructorKind: {
+				ClassEntry classEntry = readEntry();
+				String signature = readString();
+				if (signature == null) {
+					entry = new ConstructorEntry(classEntry);
+				} else {
+					entry = new ConstructorEntry(classEntry, getSignature(signature));
+				}
+			}
+			break;
+			
+			case IndexOutput.ArgumentKind: {
+				BehaviorEntry behaviorEntry = readEntry();
+				int index = readInt();
+				entry = new ArgumentEntry(behaviorEntry, index, readString());
+			}
+			break;
+			
+			default:
+				throw new IOException("Unknown entry kind: " + kind);
+		}
+		m_entries.add(entry);
+		return (T)entry;
+	}
+	
+	public <E extends Entry,C extends Entry> EntryReference<E,C> readReference()
+	throws IOException {
+		E entry = readEntry();
+		C context = readEntry();
+		boolean isNamed = readBoolean();
+		return new EntryReference<E,C>(entry, isNamed ? entry.getName() : null, context);
+	}
+	
+	public <T extends Entry> void readEntries(Collection<T> out)
+	throws IOException {
+		int size = readInt();
+		for (int i=0; i<size; i++) {
+			out.add(this.<T>readEntry());
+		}
+	}
+	
+	public <K extends Entry,V extends Entry> void readEntryMap(Map<K,V> out)
+	throws IOException {
+		int size = readInt();
+		for (int i=0; i<size; i++) {
+			K key = readEntry();
+			V val = readEntry();
+			out.put(key, val);
+		}
+	}
+	
+	public <K extends Entry,V extends Entry> void readEntryMultimap(Multimap<K,V> out)
+	throws IOException {
+		int size = readInt();
+		for (int i=0; i<size; i++) {
+			K key = readEntry();
+			V val = readEntry();
+			out.put(key, val);
+		}
+	}
+	
+	public <K extends Entry,E extends Entry,C extends Entry> void readReferenceMultimap(Multimap<K,EntryReference<E,C>> out)
+	throws IOException {
+		int size = readInt();
+		for (int i=0; i<size; i++) {
+			K key = readEntry();
+			EntryReference<E,C> reference = readReference();
+			out.put(key, reference);
+		}
+	}
+	
+	private Type getType(String name) {
+		Type type = m_types.get(name);
+		if (type == null) {
+			type = new Type(name);
+			m_types.put(name, type);
+		}
+		return type;
+	}
+	
+	private Signature getSignature(String signature) {
+		Signature out = m_signatures.get(signature);
+		if (out == null) {
+			out = new Signature(signature);
+			m_signatures.put(signature, out);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.ConstructorEntry;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
+
+class IndexOutput {
+	
+	// entries and strings are written out the first time we see them, and by id after that
+	static final int NullId = 0;
+	static final int NewId = -1;
+	
+	static final int ClassKind = 0;
+	static final int FieldKind = 1;
+	static final int MethodKind = 2;
+	static final int ConstructorKind = 3;
+	static final int ArgumentKind = 4;
+	
+	private DataOutputStream m_out;
+	private Map<String,Integer> m_stringIds;
+	private Map<Entry,Integer> m_entryIds;
+	
+	public IndexOutput(OutputStream out) {
+		m_out = new DataOutputStream(out);
+		m_stringIds = Maps.newHashMap();
+		m_entryIds = Maps.newHashMap();
+	}
+	
+	public void writeInt(int val)
+	throws IOException {
+		m_out.writeInt(val);
+	}
+	
+	public void writeBoolean(boolean val)
+	throws IOException {
+		m_out.writeBoolean(val);
+	}
+	
+	public void writeString(String val)
+	throws IOException {
+		if (val == null) {
+			m_out.writeInt(NullId);
+			return;
+		}
+		Integer id = m_stringIds.get(val);
+		if (id != null) {
+			m_out.writeInt(id);
+			return;
+		}
+		m_stringIds.put(val, m_stringIds.size() + 1);
+		m_out.writeInt(NewId);
+		m_out.writeUTF(val);
+	}
+	
+	public void writeText(String val)
+	throws IOException {
+		// unlike writeString(), there's no limit on the length, but there's no sharing either
+		byte[] data = val.getBytes("UTF-8");
+		m_out.writeInt(data.length);
+		m_out.write(data);
+	}
+	
+	public void writeEntry(Entry entry)
+	throws IOException {
+		if (entry == null) {
+			m_out.writeInt(NullId);
+			return;
+		}
+		Integer id = m_entryIds.get(entry);
+		if (id != null) {
+			m_out.writeInt(id);
+			return;
+		}
+		
+		// write the parts first so the reader sees them in the same order it reads them
+		m_out.writeInt(NewId);
+		if (entry instanceof ClassEntry) {
+			m_out.writeByte(ClassKind);
+			writeString(entry.getName());
+		} else if (entry instanceof FieldEntry) {
+			FieldEntry fieldEntry = (FieldEntry)entry;
+			m_out.writeByte(FieldKind);
+			writeEntry(fieldEntry.getClassEntry());
+			writeString(fieldEntry.getName());
+			writeString(fieldEntry.getType().toString());
+		} else if (entry instanceof MethodEntry) {
+			MethodEntry methodEntry = (MethodEntry)entry;
+			m_out.writeByte(MethodKind);
+			writeEntry(methodEntry.getClassEntry());
+			writeString(methodEntry.getName());
+			writeString(methodEntry.getSignature().toString());
+		} else if (entry instanceof ConstructorEntry) {
+			ConstructorEntry constructorEntry = (ConstructorEntry)entry;
+			m_out.writeByte(ConstructorKind);
+			writeEntry(constructorEntry.getClassEntry());
+			writeString(constructorEntry.isStatic() ? null : constructorEntry.getSignature().toString());
+		} else if (entry instanceof ArgumentEntry) {
+			ArgumentEntry argumentEntry = (ArgumentEntry)entry;
+			m_out.writeByte(ArgumentKind);
+			writeEntry(argumentEntry.getBehaviorEntry());
+			writeInt(argumentEntry.getIndex());
+			writeString(argumentEntry.getName());
+		} else {
+			throw new IllegalArgumentException("Entry type not supported: " + entry.getClass().getName());
+		}
+		m_entryIds.put(entry, m_entryIds.size() + 1);
+	}
+	
+	public void writeReference(EntryReference<? extends Entry,? extends Entry> reference)
+	throws IOException {
+		writeEntry(reference.entry);
+		writeEntry(reference.context);
+		writeBoolean(reference.isNamed());
+	}
+	
+	public void writeEntries(Collection<? extends Entry> entries)
+	throws IOException {
+		writeInt(entries.size());
+		for (Entry entry : entries) {
+			writeEntry(entry);
+		}
+	}
+	
+	public void writeEntryMap(Map<? extends Entry,? extends Entry> map)
+	throws IOException {
+		writeInt(map.size());
+		for (Map.Entry<? extends Entry,? extends Entry> mapEntry : map.entrySet()) {
+			writeEntry(mapEntry.getKey());
+			writeEntry(mapEntry.getValue());
+		}
+	}
+	
+	public void writeEntryMultimap(Multimap<? extends Entry,? extends Entry> map)
+	throws IOException {
+		writeInt(map.size());
+		for (Map.Entry<? extends Entry,? extends Entry> mapEntry : map.entries()) {
+			writeEntry(mapEntry.getKey());
+			writeEntry(mapEntry.getValue());
+		}
+	}
+	
+	public void writeReferenceMultimap(Multimap<? extends Entry,? extends EntryReference<? extends Entry,? extends Entry>> map)
+	throws IOException {
+		writeInt(map.size());
+		for (Map.Entry<? extends Entry,? extends EntryReference<? extends Entry,? extends Entry>> mapEntry : map.entries()) {
+			writeEntry(mapEntry.getKey());
+			writeReference(mapEntry.getValue());
+		}
+	}
+	
+	public void flush()
+	throws IOException {
+		m_out.flush();
+	}
+}
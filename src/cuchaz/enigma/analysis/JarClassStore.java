@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import cuchaz.enigma.ClassBytesCache;
+import cuchaz.enigma.Util;
+import cuchaz.enigma.mapping.ClassEntry;
+
+public class JarClassStore {
+	
+	private JarFile m_jar;
+	private MappedJar m_mappedJar;
+	private List<JarEntry> m_classJarEntries;
+	private ClassBytesCache m_bytes;
+	private ClassPool m_systemPool;
+	
+	public JarClassStore(JarFile jar) {
+		m_jar = jar;
+		try {
+			m_mappedJar = new MappedJar(new File(jar.getName()));
+		} catch (IOException ex) {
+			// we can still read the jar the slow way
+			System.err.println("WARNING: unable to map jar, reading it with streams instead: " + ex.getMessage());
+			m_mappedJar = null;
+		}
+		m_classJarEntries = listClassJarEntries();
+		
+		// re-reading a class is cheap, so don't keep the whole uncompressed jar around
+		m_bytes = new ClassBytesCache();
+		
+		// every class handle gets a small pool of its own, but they all share this one for the JRE classes
+		m_systemPool = new ClassPool();
+		m_systemPool.appendSystemPath();
+	}
+	
+	public JarFile getJar() {
+		return m_jar;
+	}
+	
+	public List<JarEntry> getClassJarEntries() {
+		return m_classJarEntries;
+	}
+	
+	public List<ClassEntry> getClassEntries() {
+		List<ClassEntry> classEntries = Lists.newArrayListWithCapacity(m_classJarEntries.size());
+		for (JarEntry entry : m_classJarEntries) {
+			classEntries.add(new ClassEntry(getClassInJarName(entry)));
+		}
+		return classEntries;
+	}
+	
+	public boolean containsClass(String classInJarName) {
+		String entryName = classInJarName + ".class";
+		if (m_mappedJar != null) {
+			return m_mappedJar.containsEntry(entryName);
+		}
+		return m_jar.getJarEntry(entryName) != null;
+	}
+	
+	public byte[] getBytes(JarEntry entry) {
+		return getBytes(getClassInJarName(entry));
+	}
+	
+	public byte[] getBytes(String classInJarName) {
+		byte[] data = m_bytes.get(classInJarName);
+		if (data == ClassBytesCache.NotFound) {
+			return null;
+		}
+		if (data == null) {
+			// racing threads will just read the same bytes, so no need to lock
+			data = readEntry(classInJarName + ".class");
+			m_bytes.put(classInJarName, data);
+		}
+		return data;
+	}
+	
+	public CtClass getClass(String classInJarName) {
+		byte[] data = getBytes(classInJarName);
+		if (data == null) {
+			return null;
+		}
+		return makeClass(data);
+	}
+	
+	public CtClass getClass(JarEntry entry) {
+		return makeClass(getBytes(entry));
+	}
+	
+	public CtClass makeClass(byte[] data) {
+		// hand out a fresh handle every time, since callers are free to rename and transform it
+		// each handle needs its own pool: a shared pool would keep every class it ever made, and once a handle
+		// is frozen by toBytecode(), it refuses to make another class with that name
+		// look in the child pool first so classes in the jar win over anything on the system classpath
+		ClassPool classPool = new ClassPool(m_systemPool);
+		classPool.childFirstLookup = true;
+		try {
+			return classPool.makeClass(new ByteArrayInputStream(data));
+		} catch (IOException ex) {
+			throw new Error(ex);
+		}
+	}
+	
+	public Iterable<CtClass> classes() {
+		return new Iterable<CtClass>() {
+			@Override
+			public Iterator<CtClass> iterator() {
+				return new JarClassIterator(JarClassStore.this);
+			}
+		};
+	}
+	
+	public void clear() {
+		m_bytes.clear();
+	}
+	
+	private List<JarEntry> listClassJarEntries() {
+		if (m_mappedJar == null) {
+			return JarClassIterator.getClassJarEntries(m_jar);
+		}
+		
+		// we already read the central directory when we mapped the jar, no need to have the JarFile read it again
+		List<JarEntry> classJarEntries = Lists.newArrayList();
+		for (String entryName : m_mappedJar.getEntryNames()) {
+			if (entryName.endsWith(".class")) {
+				classJarEntries.add(new JarEntry(entryName));
+			}
+		}
+		return classJarEntries;
+	}
+	
+	private byte[] readEntry(String entryName) {
+		InputStream in = null;
+		try {
+			if (m_mappedJar != null) {
+				// if the mapped jar doesn't have it, the JarFile won't either
+				return m_mappedJar.getBytes(entryName);
+			}
+			JarEntry entry = m_jar.getJarEntry(entryName);
+			if (entry == null) {
+				return null;
+			}
+			in = m_jar.getInputStream(entry);
+			long size = entry.getSize();
+			if (size < 0) {
+				// the jar doesn't know how big the entry is, so we have to grow the buffer as we go
+				return ByteStreams.toByteArray(in);
+			}
+			byte[] data = new byte[(int)size];
+			ByteStreams.readFully(in, data);
+			return data;
+		} catch (IOException ex) {
+			throw new Error("Unable to read class: " + entryName, ex);
+		} finally {
+			Util.closeQuietly(in);
+		}
+	}
+	
+	private static String getClassInJarName(JarEntry entry) {
+		return entry.getName().substring(0, entry.getName().length() - ".class".length());
+	}
+}
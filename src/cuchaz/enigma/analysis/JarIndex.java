@@ -10,6 +10,9 @@
  ******************************************************************************/
 package cuchaz.enigma.analysis;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Collections;
@@ -17,9 +20,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import javassist.CannotCompileException;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
@@ -31,11 +39,6 @@ import javassist.bytecode.Descriptor;
 import javassist.bytecode.EnclosingMethodAttribute;
 import javassist.bytecode.FieldInfo;
 import javassist.bytecode.InnerClassesAttribute;
-import javassist.expr.ConstructorCall;
-import javassist.expr.ExprEditor;
-import javassist.expr.FieldAccess;
-import javassist.expr.MethodCall;
-import javassist.expr.NewExpr;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
@@ -45,6 +48,7 @@ import com.google.common.collect.Sets;
 
 import cuchaz.enigma.Constants;
 import cuchaz.enigma.bytecode.ClassRenamer;
+import cuchaz.enigma.bytecode.ReferenceScanner;
 import cuchaz.enigma.mapping.ArgumentEntry;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
@@ -57,6 +61,11 @@ import cuchaz.enigma.mapping.Translator;
 
 public class JarIndex {
 	
+	// bump this whenever the snapshot layout or the indexing logic changes, ie anything that changes what gets indexed
+	public static final int SnapshotVersion = 4;
+	private static final int SnapshotMagic = 0x454e4958; // "ENIX"
+	
+	private EntryTable m_entryTable;
 	private Set<ClassEntry> m_obfClassEntries;
 	private TranslationIndex m_translationIndex;
 	private Map<Entry,Access> m_access;
@@ -65,12 +74,16 @@ public class JarIndex {
 	private Multimap<String,MethodEntry> m_methodImplementations;
 	private Multimap<BehaviorEntry,EntryReference<BehaviorEntry,BehaviorEntry>> m_behaviorReferences;
 	private Multimap<FieldEntry,EntryReference<FieldEntry,BehaviorEntry>> m_fieldReferences;
+	private Multimap<BehaviorEntry,EntryReference<BehaviorEntry,BehaviorEntry>> m_behaviorReferencesByContext;
+	private Multimap<BehaviorEntry,EntryReference<FieldEntry,BehaviorEntry>> m_fieldReferencesByContext;
 	private Multimap<ClassEntry,ClassEntry> m_innerClassesByOuter;
 	private Map<ClassEntry,ClassEntry> m_outerClassesByInner;
 	private Map<ClassEntry,BehaviorEntry> m_anonymousClasses;
 	private Map<MethodEntry,MethodEntry> m_bridgedMethods;
+	private Map<MethodEntry,Set<MethodEntry>> m_relatedMethods;
 	
 	public JarIndex() {
+		m_entryTable = new EntryTable();
 		m_obfClassEntries = Sets.newHashSet();
 		m_translationIndex = new TranslationIndex();
 		m_access = Maps.newHashMap();
@@ -79,68 +92,114 @@ public class JarIndex {
 		m_methodImplementations = HashMultimap.create();
 		m_behaviorReferences = HashMultimap.create();
 		m_fieldReferences = HashMultimap.create();
+		m_behaviorReferencesByContext = HashMultimap.create();
+		m_fieldReferencesByContext = HashMultimap.create();
 		m_innerClassesByOuter = HashMultimap.create();
 		m_outerClassesByInner = Maps.newHashMap();
 		m_anonymousClasses = Maps.newHashMap();
 		m_bridgedMethods = Maps.newHashMap();
+		m_relatedMethods = Maps.newHashMap();
+	}
+	
+	public void indexJar(JarClassStore store, boolean buildInnerClasses) {
+		indexJar(store, buildInnerClasses, Runtime.getRuntime().availableProcessors());
 	}
 	
-	public void indexJar(JarFile jar, boolean buildInnerClasses) {
+	public void indexJar(final JarClassStore store, boolean buildInnerClasses, int numThreads) {
 		
-		// step 1: read the class names
-		for (ClassEntry classEntry : JarClassIterator.getClassEntries(jar)) {
+		// step 1: read the class names, the store already listed them when it read the jar
+		for (ClassEntry classEntry : store.getClassEntries()) {
 			if (classEntry.isInDefaultPackage()) {
 				// move out of default package
 				classEntry = new ClassEntry(Constants.NonePackage + "/" + classEntry.getName());
 			}
-			m_obfClassEntries.add(classEntry);
+			m_obfClassEntries.add(m_entryTable.intern(classEntry));
 		}
 		
-		// step 2: index field/method/constructor access
-		for (CtClass c : JarClassIterator.classes(jar)) {
-			ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-			for (CtField field : c.getDeclaredFields()) {
-				FieldEntry fieldEntry = EntryFactory.getFieldEntry(field);
-				m_access.put(fieldEntry, Access.get(field));
-				m_fields.put(fieldEntry.getClassEntry(), fieldEntry);
+		// step 2: load every class in the jar exactly once
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		List<CtClass> classes = Lists.newArrayList();
+		try {
+			List<Callable<List<CtClass>>> loadTasks = Lists.newArrayList();
+			for (final List<JarEntry> chunk : chunk(store.getClassJarEntries(), numThreads)) {
+				loadTasks.add(new Callable<List<CtClass>>() {
+					@Override
+					public List<CtClass> call() throws Exception {
+						List<CtClass> loaded = Lists.newArrayList();
+						for (JarEntry entry : chunk) {
+							CtClass c = store.getClass(entry);
+							ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
+							loaded.add(c);
+						}
+						return loaded;
+					}
+				});
 			}
-			for (CtBehavior behavior : c.getDeclaredBehaviors()) {
-				BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(behavior);
-				m_access.put(behaviorEntry, Access.get(behavior));
-				m_behaviors.put(behaviorEntry.getClassEntry(), behaviorEntry);
+			for (List<CtClass> loaded : invokeAll(pool, loadTasks)) {
+				classes.addAll(loaded);
 			}
-		}
-		
-		// step 3: index extends, implements, fields, and methods
-		for (CtClass c : JarClassIterator.classes(jar)) {
-			ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-			m_translationIndex.indexClass(c);
-			String className = Descriptor.toJvmName(c.getName());
-			for (String interfaceName : c.getClassFile().getInterfaces()) {
-				className = Descriptor.toJvmName(className);
-				interfaceName = Descriptor.toJvmName(interfaceName);
-				if (className.equals(interfaceName)) {
-					throw new IllegalArgumentException("Class cannot be its own interface! " + className);
-				}
+			
+			// we have our own handles on every class now, so the store doesn't need to hold on to their bytes
+			store.clear();
+			
+			// step 3: index field/method/constructor access, extends, implements, fields, and methods
+			// each worker fills its own partial index, then we merge them all here
+			List<Callable<JarIndex>> indexTasks = Lists.newArrayList();
+			for (final List<CtClass> chunk : chunk(classes, numThreads)) {
+				indexTasks.add(new Callable<JarIndex>() {
+					@Override
+					public JarIndex call() {
+						JarIndex partial = new JarIndex();
+						partial.m_entryTable = m_entryTable;
+						for (CtClass c : chunk) {
+							partial.indexClass(c);
+						}
+						return partial;
+					}
+				});
 			}
-			for (CtBehavior behavior : c.getDeclaredBehaviors()) {
-				indexBehavior(behavior);
+			for (JarIndex partial : invokeAll(pool, indexTasks)) {
+				m_access.putAll(partial.m_access);
+				m_fields.putAll(partial.m_fields);
+				m_behaviors.putAll(partial.m_behaviors);
+				m_methodImplementations.putAll(partial.m_methodImplementations);
+				m_bridgedMethods.putAll(partial.m_bridgedMethods);
+				m_translationIndex.addAll(partial.m_translationIndex);
 			}
-		}
-		
-		// step 4: index field, method, constructor references
-		for (CtClass c : JarClassIterator.classes(jar)) {
-			ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
-			for (CtBehavior behavior : c.getDeclaredBehaviors()) {
-				indexBehaviorReferences(behavior);
+			
+			// step 4: index field, method, constructor references
+			// this needs the finished translation index, which the workers only read
+			List<Callable<JarIndex>> referenceTasks = Lists.newArrayList();
+			for (final List<CtClass> chunk : chunk(classes, numThreads)) {
+				referenceTasks.add(new Callable<JarIndex>() {
+					@Override
+					public JarIndex call() {
+						JarIndex partial = new JarIndex();
+						partial.m_translationIndex = m_translationIndex;
+						partial.m_entryTable = m_entryTable;
+						for (CtClass c : chunk) {
+							for (CtBehavior behavior : c.getDeclaredBehaviors()) {
+								partial.indexBehaviorReferences(behavior);
+							}
+						}
+						return partial;
+					}
+				});
+			}
+			for (JarIndex partial : invokeAll(pool, referenceTasks)) {
+				m_behaviorReferences.putAll(partial.m_behaviorReferences);
+				m_fieldReferences.putAll(partial.m_fieldReferences);
+				m_behaviorReferencesByContext.putAll(partial.m_behaviorReferencesByContext);
+				m_fieldReferencesByContext.putAll(partial.m_fieldReferencesByContext);
 			}
+		} finally {
+			pool.shutdown();
 		}
 		
 		if (buildInnerClasses) {
 			
 			// step 5: index inner classes and anonymous classes
-			for (CtClass c : JarClassIterator.classes(jar)) {
-				ClassRenamer.moveAllClassesOutOfDefaultPackage(c, Constants.NonePackage);
+			for (CtClass c : classes) {
 				ClassEntry innerClassEntry = EntryFactory.getClassEntry(c);
 				ClassEntry outerClassEntry = findOuterClass(c);
 				if (outerClassEntry != null) {
@@ -176,13 +235,172 @@ public class JarIndex {
 			EntryRenamer.renameClassesInMultimap(renames, m_methodImplementations);
 			EntryRenamer.renameClassesInMultimap(renames, m_behaviorReferences);
 			EntryRenamer.renameClassesInMultimap(renames, m_fieldReferences);
+			EntryRenamer.renameClassesInMultimap(renames, m_behaviorReferencesByContext);
+			EntryRenamer.renameClassesInMultimap(renames, m_fieldReferencesByContext);
 			EntryRenamer.renameClassesInMap(renames, m_access);
+			
+			// renamed inner classes got new entries, so start the ids over
+			if (!renames.isEmpty()) {
+				m_entryTable.clear();
+				internEntries();
+			}
+		}
+		
+		// step 7: group methods related by inheritance and interfaces
+		indexRelatedMethods();
+	}
+	
+	private void indexRelatedMethods() {
+		
+		// collect the declared methods of every class, using the final class names
+		Multimap<ClassEntry,MethodEntry> methodsByClass = HashMultimap.create();
+		for (Entry entry : m_access.keySet()) {
+			if (entry instanceof MethodEntry) {
+				MethodEntry methodEntry = m_entryTable.intern((MethodEntry)entry);
+				methodsByClass.put(methodEntry.getClassEntry(), methodEntry);
+			}
+		}
+		
+		// union-find over entry ids, so every method ends up pointing at one representative for its group
+		int[] parents = new int[m_entryTable.size()];
+		for (int i=0; i<parents.length; i++) {
+			parents[i] = i;
+		}
+		for (ClassEntry classEntry : methodsByClass.keySet()) {
+			
+			// overrides are related to the nearest implementation in a superclass
+			for (MethodEntry methodEntry : methodsByClass.get(classEntry)) {
+				MethodEntry overriddenEntry = findImplementation(m_translationIndex.getSuperclass(classEntry), methodEntry);
+				if (overriddenEntry != null) {
+					union(parents, methodEntry, overriddenEntry);
+				}
+			}
+		}
+		for (ClassEntry classEntry : m_obfClassEntries) {
+			
+			// interface methods are related to whatever implements them for this class, even if it's inherited
+			for (ClassEntry interfaceEntry : getAllInterfaces(classEntry)) {
+				for (MethodEntry interfaceMethodEntry : methodsByClass.get(interfaceEntry)) {
+					MethodEntry implementationEntry = findImplementation(classEntry, interfaceMethodEntry);
+					if (implementationEntry != null) {
+						union(parents, interfaceMethodEntry, implementationEntry);
+					}
+				}
+			}
+		}
+		
+		// build the groups
+		Map<Integer,Set<MethodEntry>> groups = Maps.newHashMap();
+		for (MethodEntry methodEntry : methodsByClass.values()) {
+			int root = find(parents, m_entryTable.getId(methodEntry));
+			Set<MethodEntry> group = groups.get(root);
+			if (group == null) {
+				group = Sets.newHashSet();
+				groups.put(root, group);
+			}
+			group.add(methodEntry);
+		}
+		m_relatedMethods.clear();
+		for (Set<MethodEntry> group : groups.values()) {
+			Set<MethodEntry> readOnlyGroup = Collections.unmodifiableSet(group);
+			for (MethodEntry methodEntry : group) {
+				m_relatedMethods.put(methodEntry, readOnlyGroup);
+			}
+		}
+	}
+	
+	private MethodEntry findImplementation(ClassEntry classEntry, MethodEntry methodEntry) {
+		// look for the closest class that declares the method, starting at this one
+		while (classEntry != null) {
+			MethodEntry implementationEntry = methodEntry.cloneToNewClass(classEntry);
+			if (containsObfBehavior(implementationEntry)) {
+				return implementationEntry;
+			}
+			classEntry = m_translationIndex.getSuperclass(classEntry);
+		}
+		return null;
+	}
+	
+	private Set<ClassEntry> getAllInterfaces(ClassEntry classEntry) {
+		// classes inherit the interfaces of their superclasses, and interfaces can extend other interfaces too
+		Set<ClassEntry> interfaces = Sets.newHashSet();
+		List<ClassEntry> queue = Lists.newArrayList(m_translationIndex.getInterfaces(classEntry));
+		for (ClassEntry ancestorEntry : m_translationIndex.getAncestry(classEntry)) {
+			queue.addAll(m_translationIndex.getInterfaces(ancestorEntry));
+		}
+		while (!queue.isEmpty()) {
+			ClassEntry interfaceEntry = queue.remove(queue.size() - 1);
+			if (interfaces.add(interfaceEntry)) {
+				queue.addAll(m_translationIndex.getInterfaces(interfaceEntry));
+			}
+		}
+		return interfaces;
+	}
+	
+	private void union(int[] parents, MethodEntry a, MethodEntry b) {
+		int rootA = find(parents, m_entryTable.getId(a));
+		int rootB = find(parents, m_entryTable.getId(b));
+		if (rootA != rootB) {
+			parents[rootB] = rootA;
+		}
+	}
+	
+	private int find(int[] parents, int id) {
+		while (parents[id] != id) {
+			// halve the path as we go so the trees stay flat
+			parents[id] = parents[parents[id]];
+			id = parents[id];
+		}
+		return id;
+	}
+	
+	private void internEntries() {
+		for (ClassEntry classEntry : m_obfClassEntries) {
+			m_entryTable.intern(classEntry);
+		}
+		for (Entry entry : m_access.keySet()) {
+			m_entryTable.intern(entry);
+		}
+		for (BehaviorEntry behaviorEntry : m_behaviorReferences.keySet()) {
+			m_entryTable.intern(behaviorEntry);
+		}
+		for (FieldEntry fieldEntry : m_fieldReferences.keySet()) {
+			m_entryTable.intern(fieldEntry);
+		}
+	}
+	
+	private void indexClass(CtClass c) {
+		
+		// index field/method/constructor access
+		for (CtField field : c.getDeclaredFields()) {
+			FieldEntry fieldEntry = m_entryTable.intern(EntryFactory.getFieldEntry(field));
+			m_access.put(fieldEntry, Access.get(field));
+			m_fields.put(fieldEntry.getClassEntry(), fieldEntry);
+		}
+		for (CtBehavior behavior : c.getDeclaredBehaviors()) {
+			BehaviorEntry behaviorEntry = m_entryTable.intern(EntryFactory.getBehaviorEntry(behavior));
+			m_access.put(behaviorEntry, Access.get(behavior));
+			m_behaviors.put(behaviorEntry.getClassEntry(), behaviorEntry);
+		}
+		
+		// index extends, implements, fields, and methods
+		m_translationIndex.indexClass(c);
+		String className = Descriptor.toJvmName(c.getName());
+		for (String interfaceName : c.getClassFile().getInterfaces()) {
+			className = Descriptor.toJvmName(className);
+			interfaceName = Descriptor.toJvmName(interfaceName);
+			if (className.equals(interfaceName)) {
+				throw new IllegalArgumentException("Class cannot be its own interface! " + className);
+			}
+		}
+		for (CtBehavior behavior : c.getDeclaredBehaviors()) {
+			indexBehavior(behavior);
 		}
 	}
 	
 	private void indexBehavior(CtBehavior behavior) {
 		// get the behavior entry
-		final BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(behavior);
+		final BehaviorEntry behaviorEntry = m_entryTable.intern(EntryFactory.getBehaviorEntry(behavior));
 		if (behaviorEntry instanceof MethodEntry) {
 			MethodEntry methodEntry = (MethodEntry)behaviorEntry;
 			
@@ -192,7 +410,7 @@ public class JarIndex {
 			// look for bridge and bridged methods
 			CtMethod bridgedMethod = getBridgedMethod((CtMethod)behavior);
 			if (bridgedMethod != null) {
-				m_bridgedMethods.put(methodEntry, EntryFactory.getMethodEntry(bridgedMethod));
+				m_bridgedMethods.put(methodEntry, m_entryTable.intern(EntryFactory.getMethodEntry(bridgedMethod)));
 			}
 		}
 		// looks like we don't care about constructors here
@@ -200,68 +418,70 @@ public class JarIndex {
 	
 	private void indexBehaviorReferences(CtBehavior behavior) {
 		// index method calls
-		final BehaviorEntry behaviorEntry = EntryFactory.getBehaviorEntry(behavior);
-		try {
-			behavior.instrument(new ExprEditor() {
-				@Override
-				public void edit(MethodCall call) {
-					MethodEntry calledMethodEntry = EntryFactory.getMethodEntry(call);
-					ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledMethodEntry);
-					if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledMethodEntry.getClassEntry())) {
-						calledMethodEntry = new MethodEntry(
-							resolvedClassEntry,
-							calledMethodEntry.getName(),
-							calledMethodEntry.getSignature()
-						);
-					}
-					EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
-						calledMethodEntry,
-						call.getMethodName(),
-						behaviorEntry
-					);
-					m_behaviorReferences.put(calledMethodEntry, reference);
-				}
-				
-				@Override
-				public void edit(FieldAccess call) {
-					FieldEntry calledFieldEntry = EntryFactory.getFieldEntry(call);
-					ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledFieldEntry);
-					if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledFieldEntry.getClassEntry())) {
-						calledFieldEntry = new FieldEntry(calledFieldEntry, resolvedClassEntry);
-					}
-					EntryReference<FieldEntry,BehaviorEntry> reference = new EntryReference<FieldEntry,BehaviorEntry>(
-						calledFieldEntry,
-						call.getFieldName(),
-						behaviorEntry
-					);
-					m_fieldReferences.put(calledFieldEntry, reference);
-				}
-				
-				@Override
-				public void edit(ConstructorCall call) {
-					ConstructorEntry calledConstructorEntry = EntryFactory.getConstructorEntry(call);
-					EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
-						calledConstructorEntry,
-						call.getMethodName(),
-						behaviorEntry
+		final BehaviorEntry behaviorEntry = m_entryTable.intern(EntryFactory.getBehaviorEntry(behavior));
+		ReferenceScanner.scan(behavior, new ReferenceScanner.Visitor() {
+			@Override
+			public void visitMethodCall(MethodEntry calledMethodEntry) {
+				String name = calledMethodEntry.getName();
+				ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledMethodEntry);
+				if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledMethodEntry.getClassEntry())) {
+					calledMethodEntry = new MethodEntry(
+						resolvedClassEntry,
+						calledMethodEntry.getName(),
+						calledMethodEntry.getSignature()
 					);
-					m_behaviorReferences.put(calledConstructorEntry, reference);
 				}
-				
-				@Override
-				public void edit(NewExpr call) {
-					ConstructorEntry calledConstructorEntry = EntryFactory.getConstructorEntry(call);
-					EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
-						calledConstructorEntry,
-						call.getClassName(),
-						behaviorEntry
-					);
-					m_behaviorReferences.put(calledConstructorEntry, reference);
+				calledMethodEntry = m_entryTable.intern(calledMethodEntry);
+				EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
+					calledMethodEntry,
+					name,
+					behaviorEntry
+				);
+				m_behaviorReferences.put(calledMethodEntry, reference);
+				m_behaviorReferencesByContext.put(behaviorEntry, reference);
+			}
+			
+			@Override
+			public void visitFieldAccess(FieldEntry calledFieldEntry, boolean isWriter) {
+				String name = calledFieldEntry.getName();
+				ClassEntry resolvedClassEntry = m_translationIndex.resolveEntryClass(calledFieldEntry);
+				if (resolvedClassEntry != null && !resolvedClassEntry.equals(calledFieldEntry.getClassEntry())) {
+					calledFieldEntry = new FieldEntry(calledFieldEntry, resolvedClassEntry);
 				}
-			});
-		} catch (CannotCompileException ex) {
-			throw new Error(ex);
-		}
+				calledFieldEntry = m_entryTable.intern(calledFieldEntry);
+				EntryReference<FieldEntry,BehaviorEntry> reference = new EntryReference<FieldEntry,BehaviorEntry>(
+					calledFieldEntry,
+					name,
+					behaviorEntry
+				);
+				m_fieldReferences.put(calledFieldEntry, reference);
+				m_fieldReferencesByContext.put(behaviorEntry, reference);
+			}
+			
+			@Override
+			public void visitConstructorCall(ConstructorEntry calledConstructorEntry, boolean isSuper) {
+				calledConstructorEntry = m_entryTable.intern(calledConstructorEntry);
+				EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
+					calledConstructorEntry,
+					isSuper ? "super" : "this",
+					behaviorEntry
+				);
+				m_behaviorReferences.put(calledConstructorEntry, reference);
+				m_behaviorReferencesByContext.put(behaviorEntry, reference);
+			}
+			
+			@Override
+			public void visitNewExpr(ConstructorEntry calledConstructorEntry) {
+				calledConstructorEntry = m_entryTable.intern(calledConstructorEntry);
+				EntryReference<BehaviorEntry,BehaviorEntry> reference = new EntryReference<BehaviorEntry,BehaviorEntry>(
+					calledConstructorEntry,
+					Descriptor.toJavaName(calledConstructorEntry.getClassName()),
+					behaviorEntry
+				);
+				m_behaviorReferences.put(calledConstructorEntry, reference);
+				m_behaviorReferencesByContext.put(behaviorEntry, reference);
+			}
+		});
 	}
 	
 	private CtMethod getBridgedMethod(CtMethod method) {
@@ -275,34 +495,50 @@ public class JarIndex {
 		}
 		
 		// get all the called methods
-		final List<MethodCall> methodCalls = Lists.newArrayList();
-		try {
-			method.instrument(new ExprEditor() {
-				@Override
-				public void edit(MethodCall call) {
-					methodCalls.add(call);
-				}
-			});
-		} catch (CannotCompileException ex) {
-			// this is stupid... we're not even compiling anything
-			throw new Error(ex);
-		}
+		final List<MethodEntry> calledMethodEntries = Lists.newArrayList();
+		ReferenceScanner.scan(method, new ReferenceScanner.Visitor() {
+			@Override
+			public void visitMethodCall(MethodEntry methodEntry) {
+				calledMethodEntries.add(methodEntry);
+			}
+		});
 		
 		// is there just one?
-		if (methodCalls.size() != 1) {
+		if (calledMethodEntries.size() != 1) {
 			return null;
 		}
-		MethodCall call = methodCalls.get(0);
+		MethodEntry calledMethodEntry = calledMethodEntries.get(0);
 		
 		try {
 			// we have a bridge method!
-			return call.getMethod();
+			CtClass calledClass = method.getDeclaringClass().getClassPool().get(Descriptor.toJavaName(calledMethodEntry.getClassName()));
+			return calledClass.getMethod(calledMethodEntry.getName(), calledMethodEntry.getSignature().toString());
 		} catch (NotFoundException ex) {
 			// can't find the type? not a bridge method
 			return null;
 		}
 	}
 	
+	private static <T> List<List<T>> chunk(List<T> items, int numThreads) {
+		// a few chunks per thread keeps the workers busy when some classes are much bigger than others
+		int chunkSize = Math.max(1, items.size()/(numThreads*4));
+		return Lists.partition(items, chunkSize);
+	}
+	
+	private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+		List<T> results = Lists.newArrayList();
+		for (Future<T> future : pool.invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			} catch (InterruptedException ex) {
+				throw new Error(ex);
+			} catch (ExecutionException ex) {
+				throw new Error("Unable to index jar!", ex.getCause());
+			}
+		}
+		return results;
+	}
+	
 	private ClassEntry findOuterClass(CtClass c) {
 		
 		ClassEntry classEntry = EntryFactory.getClassEntry(c);
@@ -402,29 +638,24 @@ public class JarIndex {
 	private boolean isIllegalConstructor(Set<String> syntheticFieldTypes, CtConstructor constructor) {
 		
 		// illegal constructors only set synthetic member fields, then call super()
-		String className = constructor.getDeclaringClass().getName();
+		String className = Descriptor.toJvmName(constructor.getDeclaringClass().getName());
 		
 		// collect all the field accesses, constructor calls, and method calls
-		final List<FieldAccess> illegalFieldWrites = Lists.newArrayList();
-		final List<ConstructorCall> constructorCalls = Lists.newArrayList();
-		try {
-			constructor.instrument(new ExprEditor() {
-				@Override
-				public void edit(FieldAccess fieldAccess) {
-					if (fieldAccess.isWriter() && constructorCalls.isEmpty()) {
-						illegalFieldWrites.add(fieldAccess);
-					}
+		final List<FieldEntry> illegalFieldWrites = Lists.newArrayList();
+		final List<ConstructorEntry> constructorCalls = Lists.newArrayList();
+		ReferenceScanner.scan(constructor, new ReferenceScanner.Visitor() {
+			@Override
+			public void visitFieldAccess(FieldEntry fieldEntry, boolean isWriter) {
+				if (isWriter && constructorCalls.isEmpty()) {
+					illegalFieldWrites.add(fieldEntry);
 				}
-				
-				@Override
-				public void edit(ConstructorCall constructorCall) {
-					constructorCalls.add(constructorCall);
-				}
-			});
-		} catch (CannotCompileException ex) {
-			// we're not compiling anything... this is stupid
-			throw new Error(ex);
-		}
+			}
+			
+			@Override
+			public void visitConstructorCall(ConstructorEntry constructorEntry, boolean isSuper) {
+				constructorCalls.add(constructorEntry);
+			}
+		});
 		
 		// are there any illegal field writes?
 		if (illegalFieldWrites.isEmpty()) {
@@ -432,18 +663,18 @@ public class JarIndex {
 		}
 		
 		// are all the writes to synthetic fields?
-		for (FieldAccess fieldWrite : illegalFieldWrites) {
+		for (FieldEntry fieldWrite : illegalFieldWrites) {
 			
 			// all illegal writes have to be to the local class
 			if (!fieldWrite.getClassName().equals(className)) {
-				System.err.println(String.format("WARNING: illegal write to non-member field %s.%s", fieldWrite.getClassName(), fieldWrite.getFieldName()));
+				System.err.println(String.format("WARNING: illegal write to non-member field %s.%s", fieldWrite.getClassName(), fieldWrite.getName()));
 				return false;
 			}
 			
 			// find the field
 			FieldInfo fieldInfo = null;
 			for (FieldInfo info : (List<FieldInfo>)constructor.getDeclaringClass().getClassFile().getFields()) {
-				if (info.getName().equals(fieldWrite.getFieldName()) && info.getDescriptor().equals(fieldWrite.getSignature())) {
+				if (info.getName().equals(fieldWrite.getName()) && info.getDescriptor().equals(fieldWrite.getType().toString())) {
 					fieldInfo = info;
 					break;
 				}
@@ -533,6 +764,10 @@ public class JarIndex {
 		return caller;
 	}
 	
+	public EntryTable getEntryTable() {
+		return m_entryTable;
+	}
+	
 	public Set<ClassEntry> getObfClassEntries() {
 		return m_obfClassEntries;
 	}
@@ -661,6 +896,14 @@ public class JarIndex {
 	}
 	
 	public Set<MethodEntry> getRelatedMethodImplementations(MethodEntry obfMethodEntry) {
+		
+		// methods in the jar were grouped at index time
+		Set<MethodEntry> group = m_relatedMethods.get(obfMethodEntry);
+		if (group != null) {
+			return group;
+		}
+		
+		// otherwise, walk the trees below this method
 		Set<MethodEntry> methodEntries = Sets.newHashSet();
 		getRelatedMethodImplementations(methodEntries, getMethodInheritance(null, obfMethodEntry));
 		return methodEntries;
@@ -701,13 +944,15 @@ public class JarIndex {
 		return m_fieldReferences.get(fieldEntry);
 	}
 	
+	public Collection<EntryReference<FieldEntry,BehaviorEntry>> getFieldReferencesFrom(BehaviorEntry behaviorEntry) {
+		// every field access made by the body of this behavior
+		return m_fieldReferencesByContext.get(behaviorEntry);
+	}
+	
 	public Collection<FieldEntry> getReferencedFields(BehaviorEntry behaviorEntry) {
-		// linear search is fast enough for now
 		Set<FieldEntry> fieldEntries = Sets.newHashSet();
-		for (EntryReference<FieldEntry,BehaviorEntry> reference : m_fieldReferences.values()) {
-			if (reference.context == behaviorEntry) {
-				fieldEntries.add(reference.entry);
-			}
+		for (EntryReference<FieldEntry,BehaviorEntry> reference : m_fieldReferencesByContext.get(behaviorEntry)) {
+			fieldEntries.add(reference.entry);
 		}
 		return fieldEntries;
 	}
@@ -716,13 +961,15 @@ public class JarIndex {
 		return m_behaviorReferences.get(behaviorEntry);
 	}
 	
+	public Collection<EntryReference<BehaviorEntry,BehaviorEntry>> getBehaviorReferencesFrom(BehaviorEntry behaviorEntry) {
+		// every method and constructor call made by the body of this behavior
+		return m_behaviorReferencesByContext.get(behaviorEntry);
+	}
+	
 	public Collection<BehaviorEntry> getReferencedBehaviors(BehaviorEntry behaviorEntry) {
-		// linear search is fast enough for now
 		Set<BehaviorEntry> behaviorEntries = Sets.newHashSet();
-		for (EntryReference<BehaviorEntry,BehaviorEntry> reference : m_behaviorReferences.values()) {
-			if (reference.context == behaviorEntry) {
-				behaviorEntries.add(reference.entry);
-			}
+		for (EntryReference<BehaviorEntry,BehaviorEntry> reference : m_behaviorReferencesByContext.get(behaviorEntry)) {
+			behaviorEntries.add(reference.entry);
 		}
 		return behaviorEntries;
 	}
@@ -754,16 +1001,10 @@ public class JarIndex {
 	}
 	
 	public Set<String> getImplementingClasses(String targetInterfaceName) {
-		
-		// linear search is fast enough for now
 		Set<String> classNames = Sets.newHashSet();
-		for (Map.Entry<ClassEntry,ClassEntry> entry : m_translationIndex.getClassInterfaces()) {
-			ClassEntry classEntry = entry.getKey();
-			ClassEntry interfaceEntry = entry.getValue();
-			if (interfaceEntry.getName().equals(targetInterfaceName)) {
-				classNames.add(classEntry.getClassName());
-				m_translationIndex.getSubclassNamesRecursively(classNames, classEntry);
-			}
+		for (ClassEntry classEntry : m_translationIndex.getImplementations(new ClassEntry(targetInterfaceName))) {
+			classNames.add(classEntry.getClassName());
+			m_translationIndex.getSubclassNamesRecursively(classNames, classEntry);
 		}
 		return classNames;
 	}
@@ -836,4 +1077,78 @@ public class JarIndex {
 		
 		return obfClassChain;
 	}
+	
+	public void write(OutputStream out)
+	throws IOException {
+		GZIPOutputStream gzipout = new GZIPOutputStream(out);
+		IndexOutput iout = new IndexOutput(gzipout);
+		iout.writeInt(SnapshotMagic);
+		iout.writeInt(SnapshotVersion);
+		iout.writeEntries(m_obfClassEntries);
+		m_translationIndex.write(iout);
+		iout.writeInt(m_access.size());
+		for (Map.Entry<Entry,Access> mapEntry : m_access.entrySet()) {
+			iout.writeEntry(mapEntry.getKey());
+			iout.writeInt(mapEntry.getValue().ordinal());
+		}
+		iout.writeEntryMultimap(m_fields);
+		iout.writeEntryMultimap(m_behaviors);
+		iout.writeInt(m_methodImplementations.size());
+		for (Map.Entry<String,MethodEntry> mapEntry : m_methodImplementations.entries()) {
+			iout.writeString(mapEntry.getKey());
+			iout.writeEntry(mapEntry.getValue());
+		}
+		iout.writeReferenceMultimap(m_behaviorReferences);
+		iout.writeReferenceMultimap(m_fieldReferences);
+		iout.writeEntryMultimap(m_innerClassesByOuter);
+		iout.writeEntryMap(m_outerClassesByInner);
+		iout.writeEntryMap(m_anonymousClasses);
+		iout.writeEntryMap(m_bridgedMethods);
+		iout.flush();
+		gzipout.finish();
+	}
+	
+	public void read(InputStream in)
+	throws IOException {
+		IndexInput iin = new IndexInput(new GZIPInputStream(in));
+		if (iin.readInt() != SnapshotMagic) {
+			throw new IOException("Not a jar index snapshot!");
+		}
+		int version = iin.readInt();
+		if (version != SnapshotVersion) {
+			throw new IOException("Jar index snapshot has version " + version + ", expected " + SnapshotVersion);
+		}
+		iin.readEntries(m_obfClassEntries);
+		m_translationIndex.read(iin);
+		int numAccesses = iin.readInt();
+		Access[] accesses = Access.values();
+		for (int i=0; i<numAccesses; i++) {
+			Entry entry = iin.readEntry();
+			m_access.put(entry, accesses[iin.readInt()]);
+		}
+		iin.readEntryMultimap(m_fields);
+		iin.readEntryMultimap(m_behaviors);
+		int numMethodImplementations = iin.readInt();
+		for (int i=0; i<numMethodImplementations; i++) {
+			String className = iin.readString();
+			MethodEntry methodEntry = iin.readEntry();
+			m_methodImplementations.put(className, methodEntry);
+		}
+		iin.readReferenceMultimap(m_behaviorReferences);
+		iin.readReferenceMultimap(m_fieldReferences);
+		
+		// the by-context indices are just the reference indices turned around, so don't bother storing them
+		for (EntryReference<BehaviorEntry,BehaviorEntry> reference : m_behaviorReferences.values()) {
+			m_behaviorReferencesByContext.put(reference.context, reference);
+		}
+		for (EntryReference<FieldEntry,BehaviorEntry> reference : m_fieldReferences.values()) {
+			m_fieldReferencesByContext.put(reference.context, reference);
+		}
+		iin.readEntryMultimap(m_innerClassesByOuter);
+		iin.readEntryMap(m_outerClassesByInner);
+		iin.readEntryMap(m_anonymousClasses);
+		iin.readEntryMap(m_bridgedMethods);
+		internEntries();
+		indexRelatedMethods();
+	}
 }
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import cuchaz.enigma.Constants;
+import cuchaz.enigma.Util;
+
+public class JarIndexCache {
+	
+	// snapshots from other versions of Enigma might not match what this one would index,
+	// even if someone forgot to bump JarIndex.SnapshotVersion
+	private static final String VersionKey = Constants.Version.replaceAll("[^A-Za-z0-9.]", "-");
+	
+	private File m_dir;
+	private Map<String,String> m_hashesByJarName;
+	
+	public JarIndexCache(File dir) {
+		m_dir = dir;
+		m_hashesByJarName = Maps.newHashMap();
+	}
+	
+	public static JarIndexCache getDefault() {
+		// an empty cache folder turns the cache off
+		if ("".equals(System.getProperty("enigma.cache.dir"))) {
+			return null;
+		}
+		return new JarIndexCache(getDefaultDir());
+	}
+	
+	public static File getDefaultDir() {
+		String path = System.getProperty("enigma.cache.dir");
+		if (path != null) {
+			return new File(path);
+		}
+		return new File(System.getProperty("user.home"), ".enigma/cache");
+	}
+	
+	public File getDir() {
+		return m_dir;
+	}
+	
+	public JarIndex getIndex(JarClassStore store, boolean buildInnerClasses)
+	throws IOException {
+		
+		File file = new File(m_dir, String.format("%s%s.%s.v%d.index", getHash(store), buildInnerClasses ? "" : ".noinner", VersionKey, JarIndex.SnapshotVersion));
+		
+		// do we already have a snapshot?
+		if (file.isFile()) {
+			JarIndex index = new JarIndex();
+			InputStream in = null;
+			try {
+				in = new BufferedInputStream(new FileInputStream(file));
+				index.read(in);
+				return index;
+			} catch (IOException | RuntimeException ex) {
+				// a broken snapshot just means we have to index again
+				System.err.println("WARNING: Unable to read jar index snapshot " + file + ": " + ex.getMessage());
+			} finally {
+				Util.closeQuietly(in);
+			}
+		}
+		
+		JarIndex index = new JarIndex();
+		index.indexJar(store, buildInnerClasses);
+		write(index, file);
+		return index;
+	}
+	
+	public File getSourceDir(JarClassStore store)
+	throws IOException {
+		// decompiled sources for this jar, see SourceCache
+		return new File(m_dir, getHash(store) + ".sources");
+	}
+	
+	public synchronized String getHash(JarClassStore store)
+	throws IOException {
+		// snapshots are keyed by the jar contents, not the path or timestamp
+		String jarName = store.getJar().getName();
+		String hash = m_hashesByJarName.get(jarName);
+		if (hash == null) {
+			hash = hashJar(store);
+			m_hashesByJarName.put(jarName, hash);
+		}
+		return hash;
+	}
+	
+	public static String hashJar(JarClassStore store)
+	throws IOException {
+		return Files.hash(new File(store.getJar().getName()), Hashing.sha1()).toString();
+	}
+	
+	private void write(final JarIndex index, File file) {
+		try {
+			Util.writeAtomically(file, new Util.FileContents() {
+				@Override
+				public void write(OutputStream out)
+				throws IOException {
+					index.write(out);
+				}
+			});
+		} catch (IOException ex) {
+			// not being able to cache the index isn't fatal
+			System.err.println("WARNING: Unable to write jar index snapshot " + file + ": " + ex.getMessage());
+		}
+	}
+}
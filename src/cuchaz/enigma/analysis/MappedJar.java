@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.common.collect.Maps;
+
+import cuchaz.enigma.Util;
+
+public class MappedJar {
+	
+	private static final int LocalHeaderSignature = 0x04034b50;
+	private static final int CentralHeaderSignature = 0x02014b50;
+	private static final int EndSignature = 0x06054b50;
+	private static final int EndSize = 22;
+	private static final int MaxCommentSize = 0xffff;
+	private static final int MethodStored = 0;
+	private static final int MethodDeflated = 8;
+	private static final Charset Utf8 = Charset.forName("UTF-8");
+	
+	private static class EntryInfo {
+		
+		public int method;
+		public long compressedSize;
+		public long size;
+		public long localHeaderOffset;
+	}
+	
+	private File m_file;
+	private MappedByteBuffer m_buf;
+	private Map<String,EntryInfo> m_entries;
+	private Queue<Inflater> m_inflaters;
+	
+	public MappedJar(File file)
+	throws IOException {
+		m_file = file;
+		
+		// map the whole archive once, the OS will page in whatever we actually read
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Jar is too big to map: " + file);
+			}
+			m_buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			m_buf.order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			Util.closeQuietly(raf);
+		}
+		
+		m_entries = Maps.newLinkedHashMap();
+		m_inflaters = new ConcurrentLinkedQueue<Inflater>();
+		readCentralDirectory();
+	}
+	
+	public File getFile() {
+		return m_file;
+	}
+	
+	public Collection<String> getEntryNames() {
+		return m_entries.keySet();
+	}
+	
+	public boolean containsEntry(String name) {
+		return m_entries.containsKey(name);
+	}
+	
+	public byte[] getBytes(String name)
+	throws IOException {
+		
+		EntryInfo info = m_entries.get(name);
+		if (info == null) {
+			return null;
+		}
+		
+		// skip over the local header to get to the data
+		int pos = (int)info.localHeaderOffset;
+		if (m_buf.getInt(pos) != LocalHeaderSignature) {
+			throw new IOException("Bad local header for jar entry: " + name);
+		}
+		int dataPos = pos + 30 + getUnsignedShort(pos + 26) + getUnsignedShort(pos + 28);
+		byte[] compressed = new byte[(int)info.compressedSize];
+		ByteBuffer buf = m_buf.duplicate();
+		buf.position(dataPos);
+		buf.get(compressed);
+		
+		switch (info.method) {
+			
+			case MethodStored:
+				return compressed;
+			
+			case MethodDeflated:
+				return inflate(name, compressed, (int)info.size);
+			
+			default:
+				throw new IOException("Unsupported compression method " + info.method + " for jar entry: " + name);
+		}
+	}
+	
+	private byte[] inflate(String name, byte[] compressed, int size)
+	throws IOException {
+		
+		// inflaters hold native memory, so hand them around instead of making one per entry
+		Inflater inflater = m_inflaters.poll();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		try {
+			inflater.setInput(compressed);
+			byte[] data = new byte[size];
+			int numBytes = 0;
+			while (numBytes < size) {
+				int numInflated = inflater.inflate(data, numBytes, size - numBytes);
+				if (numInflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				numBytes += numInflated;
+			}
+			if (numBytes != size) {
+				throw new IOException("Jar entry is truncated: " + name);
+			}
+			return data;
+		} catch (DataFormatException ex) {
+			throw new IOException("Jar entry is corrupt: " + name, ex);
+		} finally {
+			inflater.reset();
+			m_inflaters.offer(inflater);
+		}
+	}
+	
+	private void readCentralDirectory()
+	throws IOException {
+		
+		// find the end of central directory record, it's behind the optional archive comment
+		int endPos = -1;
+		int minPos = Math.max(0, m_buf.limit() - EndSize - MaxCommentSize);
+		for (int pos = m_buf.limit() - EndSize; pos >= minPos; pos--) {
+			if (m_buf.getInt(pos) == EndSignature) {
+				endPos = pos;
+				break;
+			}
+		}
+		if (endPos < 0) {
+			throw new IOException("Not a jar file: " + m_file);
+		}
+		
+		int numEntries = getUnsignedShort(endPos + 10);
+		long centralDirectoryOffset = getUnsignedInt(endPos + 16);
+		if (numEntries == 0xffff || centralDirectoryOffset == 0xffffffffL) {
+			throw new IOException("Zip64 jars are not supported: " + m_file);
+		}
+		
+		int pos = (int)centralDirectoryOffset;
+		for (int i=0; i<numEntries; i++) {
+			if (m_buf.getInt(pos) != CentralHeaderSignature) {
+				throw new IOException("Bad central directory in jar: " + m_file);
+			}
+			EntryInfo info = new EntryInfo();
+			info.method = getUnsignedShort(pos + 10);
+			info.compressedSize = getUnsignedInt(pos + 20);
+			info.size = getUnsignedInt(pos + 24);
+			info.localHeaderOffset = getUnsignedInt(pos + 42);
+			if (info.compressedSize == 0xffffffffL || info.size == 0xffffffffL || info.localHeaderOffset == 0xffffffffL) {
+				throw new IOException("Zip64 jars are not supported: " + m_file);
+			}
+			int nameLength = getUnsignedShort(pos + 28);
+			byte[] nameBytes = new byte[nameLength];
+			ByteBuffer buf = m_buf.duplicate();
+			buf.position(pos + 46);
+			buf.get(nameBytes);
+			m_entries.put(new String(nameBytes, Utf8), info);
+			
+			pos += 46 + nameLength + getUnsignedShort(pos + 30) + getUnsignedShort(pos + 32);
+		}
+	}
+	
+	private int getUnsignedShort(int pos) {
+		return m_buf.getShort(pos) & 0xffff;
+	}
+	
+	private long getUnsignedInt(int pos) {
+		return m_buf.getInt(pos) & 0xffffffffL;
+	}
+}
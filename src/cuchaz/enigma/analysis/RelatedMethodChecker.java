@@ -40,9 +40,6 @@ public class RelatedMethodChecker {
 	
 	public void checkMethod(ClassEntry classEntry, MethodMapping methodMapping) {
 		
-		// TEMP: disable the expensive check for now, maybe we can optimize it later, or just use it for debugging
-		if (true) return;
-		
 		BehaviorEntry obfBehaviorEntry = EntryFactory.getObfBehaviorEntry(classEntry, methodMapping);
 		if (!(obfBehaviorEntry instanceof MethodEntry)) {
 			// only methods have related implementations
@@ -56,9 +53,8 @@ public class RelatedMethodChecker {
 		Set<MethodEntry> group = m_groupsByObfMethod.get(obfMethodEntry);
 		if (group == null) {
 			
-			// no, compute the group and save the name
+			// no, look up the group
 			group = m_jarIndex.getRelatedMethodImplementations(obfMethodEntry);
-			m_deobfNamesByGroup.put(group, deobfName);
 			
 			assert(group.contains(obfMethodEntry));
 			for (MethodEntry relatedMethodEntry : group) {
@@ -67,20 +63,34 @@ public class RelatedMethodChecker {
 		}
 		
 		// check the name
-		if (!sameName(m_deobfNamesByGroup.get(group), deobfName)) {
-			m_inconsistentGroups.add(group);
+		checkName(group, deobfName);
+	}
+	
+	public void addAll(RelatedMethodChecker other) {
+		
+		// merge the results of a checker that saw different methods
+		m_deobfNamesByObfMethod.putAll(other.m_deobfNamesByObfMethod);
+		m_groupsByObfMethod.putAll(other.m_groupsByObfMethod);
+		m_inconsistentGroups.addAll(other.m_inconsistentGroups);
+		for (Map.Entry<Set<MethodEntry>,String> mapEntry : other.m_deobfNamesByGroup.entrySet()) {
+			checkName(mapEntry.getKey(), mapEntry.getValue());
 		}
 	}
 	
-	private boolean sameName(String a, String b) {
-		if (a == null && b == null) {
-			return true;
-		} else if (a != null && b != null) {
-			return a.equals(b);
+	private void checkName(Set<MethodEntry> group, String deobfName) {
+		
+		// a method mapping with no name (eg, just argument names) doesn't say anything about the group's name
+		if (deobfName == null) {
+			return;
+		}
+		String groupDeobfName = m_deobfNamesByGroup.get(group);
+		if (groupDeobfName == null) {
+			m_deobfNamesByGroup.put(group, deobfName);
+		} else if (!groupDeobfName.equals(deobfName)) {
+			m_inconsistentGroups.add(group);
 		}
-		return false;
 	}
-
+	
 	public boolean hasProblems() {
 		return m_inconsistentGroups.size() > 0;
 	}
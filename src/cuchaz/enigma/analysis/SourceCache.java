@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.strobel.decompiler.DecompilerSettings;
+
+import cuchaz.enigma.Constants;
+import cuchaz.enigma.Util;
+import cuchaz.enigma.mapping.Entry;
+
+public class SourceCache {
+	
+	public static final int DefaultMaxClasses = 64;
+	public static final int DefaultMaxDiskClasses = 4096;
+	
+	// bump this when the snapshot layout or the decompiler settings change
+	public static final int SnapshotVersion = 1;
+	private static final int SnapshotMagic = 0x454e5352; // "ENSR"
+	private static final String SnapshotExtension = ".source";
+	
+	// but other versions of Enigma or Procyon decompile differently too, so they get their own snapshots
+	private static String s_versionKey = null;
+	
+	public static interface Fingerprinter {
+		// a fingerprint of the mappings for these obf entries, so a source can be reused as long as they don't change
+		String getFingerprint(List<Entry> obfEntries);
+	}
+	
+	private static class CachedSource {
+		
+		public SourceIndex index;
+		public List<Entry> obfEntries;
+		public String fingerprint;
+		
+		public CachedSource(SourceIndex index, List<Entry> obfEntries, String fingerprint) {
+			this.index = index;
+			this.obfEntries = obfEntries;
+			this.fingerprint = fingerprint;
+		}
+	}
+	
+	private File m_dir;
+	private int m_maxDiskClasses;
+	private int m_numDiskClasses;
+	private LinkedHashMap<String,CachedSource> m_sources;
+	private long m_numHits;
+	private long m_numDiskHits;
+	private long m_numMisses;
+	
+	public SourceCache(File dir) {
+		this(dir, DefaultMaxClasses, DefaultMaxDiskClasses);
+	}
+	
+	public SourceCache(File dir, final int maxClasses, int maxDiskClasses) {
+		// dir can be null, then we only cache in memory
+		m_dir = dir;
+		m_maxDiskClasses = maxDiskClasses;
+		m_numDiskClasses = 0;
+		if (m_dir != null) {
+			prune();
+		}
+		
+		// access order, so the eldest entry is always the least recently used one
+		m_sources = new LinkedHashMap<String,CachedSource>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = -4087469564012470592L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,CachedSource> eldest) {
+				return size() > maxClasses;
+			}
+		};
+		m_numHits = 0;
+		m_numDiskHits = 0;
+		m_numMisses = 0;
+	}
+	
+	public File getDir() {
+		return m_dir;
+	}
+	
+	public SourceIndex get(String obfClassName, boolean ignoreBadTokens, Fingerprinter fingerprinter) {
+		
+		String key = getKey(obfClassName, ignoreBadTokens);
+		CachedSource cachedSource;
+		synchronized (this) {
+			cachedSource = m_sources.get(key);
+		}
+		if (cachedSource != null && cachedSource.fingerprint.equals(fingerprinter.getFingerprint(cachedSource.obfEntries))) {
+			synchronized (this) {
+				m_numHits++;
+			}
+			return cachedSource.index;
+		}
+		
+		// maybe we saw it in an earlier session
+		if (m_dir != null) {
+			File file = getFile(key);
+			cachedSource = read(file, fingerprinter);
+			if (cachedSource != null) {
+				// so pruning knows it's still useful
+				file.setLastModified(System.currentTimeMillis());
+				synchronized (this) {
+					m_sources.put(key, cachedSource);
+					m_numDiskHits++;
+				}
+				return cachedSource.index;
+			}
+		}
+		
+		synchronized (this) {
+			m_numMisses++;
+		}
+		return null;
+	}
+	
+	public void put(String obfClassName, boolean ignoreBadTokens, SourceIndex index, List<Entry> obfEntries, String fingerprint) {
+		String key = getKey(obfClassName, ignoreBadTokens);
+		CachedSource cachedSource = new CachedSource(index, Lists.newArrayList(obfEntries), fingerprint);
+		synchronized (this) {
+			m_sources.put(key, cachedSource);
+		}
+		if (m_dir != null) {
+			File file = getFile(key);
+			boolean isNewFile = !file.exists();
+			write(cachedSource, file);
+			if (isNewFile) {
+				synchronized (this) {
+					m_numDiskClasses++;
+					if (m_numDiskClasses > m_maxDiskClasses) {
+						prune();
+					}
+				}
+			}
+		}
+	}
+	
+	public synchronized void clear() {
+		// just the memory, the files are still good for whatever mappings they were made with
+		m_sources.clear();
+	}
+	
+	public synchronized int getNumClasses() {
+		return m_sources.size();
+	}
+	
+	public synchronized long getNumHits() {
+		return m_numHits;
+	}
+	
+	public synchronized long getNumDiskHits() {
+		return m_numDiskHits;
+	}
+	
+	public synchronized long getNumMisses() {
+		return m_numMisses;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d classes, %d hits, %d disk hits, %d misses", m_sources.size(), m_numHits, m_numDiskHits, m_numMisses);
+	}
+	
+	private String getKey(String obfClassName, boolean ignoreBadTokens) {
+		return ignoreBadTokens ? obfClassName : obfClassName + ".strict";
+	}
+	
+	public synchronized int getNumDiskClasses() {
+		return m_numDiskClasses;
+	}
+	
+	private File getFile(String key) {
+		return new File(m_dir, key + "." + getVersionKey() + SnapshotExtension);
+	}
+	
+	private synchronized void prune() {
+		
+		// snapshots from other versions will never be read again
+		List<File> files = Lists.newArrayList();
+		listSnapshots(m_dir, "." + getVersionKey() + SnapshotExtension, files);
+		
+		// then drop the least recently used ones, with some room to spare so we don't prune again right away
+		int maxFiles = m_maxDiskClasses*3/4;
+		if (files.size() > maxFiles) {
+			final Map<File,Long> lastModifieds = Maps.newHashMap();
+			for (File file : files) {
+				lastModifieds.put(file, file.lastModified());
+			}
+			Collections.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File a, File b) {
+					return Long.compare(lastModifieds.get(a), lastModifieds.get(b));
+				}
+			});
+			List<File> oldFiles = files.subList(0, files.size() - maxFiles);
+			for (File file : oldFiles) {
+				delete(file);
+			}
+			oldFiles.clear();
+		}
+		m_numDiskClasses = files.size();
+	}
+	
+	private void listSnapshots(File dir, String suffix, List<File> files) {
+		// class names have packages, so the snapshots are in folders too
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				listSnapshots(child, suffix, files);
+			} else if (child.getName().endsWith(suffix)) {
+				files.add(child);
+			} else if (child.getName().endsWith(SnapshotExtension)) {
+				delete(child);
+			}
+		}
+	}
+	
+	private void delete(File file) {
+		if (!file.delete()) {
+			System.err.println("WARNING: Unable to delete source snapshot " + file);
+		}
+	}
+	
+	private static synchronized String getVersionKey() {
+		if (s_versionKey == null) {
+			s_versionKey = String.format("%s.procyon-%s.v%d",
+				Constants.Version.replaceAll("[^A-Za-z0-9.]", "-"),
+				getDecompilerVersion(),
+				SnapshotVersion
+			);
+		}
+		return s_versionKey;
+	}
+	
+	private static String getDecompilerVersion() {
+		
+		// Procyon's jars don't say what version they are, so use a hash of whatever jar it came from
+		// in the application jar, that's Enigma itself, so a new build of Enigma gets new snapshots too
+		String version = DecompilerSettings.class.getPackage().getImplementationVersion();
+		if (version != null) {
+			return version;
+		}
+		try {
+			File file = new File(DecompilerSettings.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if (file.isFile()) {
+				return Files.hash(file, Hashing.sha1()).toString().substring(0, 8);
+			}
+		} catch (IOException | URISyntaxException | RuntimeException ex) {
+			System.err.println("WARNING: Unable to tell what version the decompiler is: " + ex.getMessage());
+		}
+		return "unknown";
+	}
+	
+	private CachedSource read(File file, Fingerprinter fingerprinter) {
+		if (!file.isFile()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file));
+			IndexInput iin = new IndexInput(new GZIPInputStream(in));
+			if (iin.readInt() != SnapshotMagic || iin.readInt() != SnapshotVersion) {
+				throw new IOException("Not a source snapshot, or the wrong version!");
+			}
+			
+			// check the names first, and don't bother reading the rest if they changed
+			String fingerprint = iin.readString();
+			List<Entry> obfEntries = Lists.newArrayList();
+			iin.readEntries(obfEntries);
+			if (!fingerprint.equals(fingerprinter.getFingerprint(obfEntries))) {
+				return null;
+			}
+			return new CachedSource(SourceIndex.read(iin), obfEntries, fingerprint);
+		} catch (IOException | RuntimeException ex) {
+			// a broken snapshot just means we have to decompile again
+			System.err.println("WARNING: Unable to read source snapshot " + file + ": " + ex.getMessage());
+			return null;
+		} finally {
+			Util.closeQuietly(in);
+		}
+	}
+	
+	private void write(final CachedSource cachedSource, File file) {
+		try {
+			Util.writeAtomically(file, new Util.FileContents() {
+				@Override
+				public void write(OutputStream out)
+				throws IOException {
+					GZIPOutputStream gzipout = new GZIPOutputStream(out);
+					IndexOutput iout = new IndexOutput(gzipout);
+					iout.writeInt(SnapshotMagic);
+					iout.writeInt(SnapshotVersion);
+					iout.writeString(cachedSource.fingerprint);
+					iout.writeEntries(cachedSource.obfEntries);
+					cachedSource.index.write(iout);
+					iout.flush();
+					gzipout.finish();
+				}
+			});
+		} catch (IOException ex) {
+			// not being able to cache the source isn't fatal
+			System.err.println("WARNING: Unable to write source snapshot " + file + ": " + ex.getMessage());
+		}
+	}
+}
@@ -10,15 +10,18 @@
  ******************************************************************************/
 package cuchaz.enigma.analysis;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.strobel.decompiler.languages.Region;
 import com.strobel.decompiler.languages.java.ast.AstNode;
 import com.strobel.decompiler.languages.java.ast.Identifier;
@@ -31,6 +34,7 @@ public class SourceIndex {
 	private TreeMap<Token,EntryReference<Entry,Entry>> m_tokenToReference;
 	private Multimap<EntryReference<Entry,Entry>,Token> m_referenceToTokens;
 	private Map<Entry,Token> m_declarationToToken;
+	private Set<Entry> m_entries;
 	private List<Integer> m_lineOffsets;
 	private boolean m_ignoreBadTokens;
 	
@@ -44,6 +48,7 @@ public class SourceIndex {
 		m_tokenToReference = Maps.newTreeMap();
 		m_referenceToTokens = HashMultimap.create();
 		m_declarationToToken = Maps.newHashMap();
+		m_entries = Sets.newLinkedHashSet();
 		m_lineOffsets = Lists.newArrayList();
 		
 		// count the lines
@@ -99,6 +104,7 @@ public class SourceIndex {
 	}
 	
 	public void addReference(AstNode node, Entry deobfEntry, Entry deobfContext) {
+		m_entries.add(deobfEntry);
 		Token token = getToken(node);
 		if (token != null) {
 			EntryReference<Entry,Entry> deobfReference = new EntryReference<Entry,Entry>(deobfEntry, token.text, deobfContext);
@@ -107,7 +113,13 @@ public class SourceIndex {
 		}
 	}
 	
+	public void addReference(Entry deobfEntry) {
+		// the source uses this name somewhere, but the decompiler can't tell us where
+		m_entries.add(deobfEntry);
+	}
+	
 	public void addDeclaration(AstNode node, Entry deobfEntry) {
+		m_entries.add(deobfEntry);
 		Token token = getToken(node);
 		if (token != null) {
 			EntryReference<Entry,Entry> reference = new EntryReference<Entry,Entry>(deobfEntry, token.text);
@@ -156,6 +168,11 @@ public class SourceIndex {
 		return m_declarationToToken.keySet();
 	}
 	
+	public Iterable<Entry> entries() {
+		// everything the source names, even the ones we couldn't find a token for
+		return m_entries;
+	}
+	
 	public Token getDeclarationToken(Entry deobfEntry) {
 		return m_declarationToToken.get(deobfEntry);
 	}
@@ -177,6 +194,45 @@ public class SourceIndex {
 		return pos - m_lineOffsets.get(getLineNumber(pos) - 1) + 1;
 	}
 	
+	void write(IndexOutput out)
+	throws IOException {
+		out.writeText(m_source);
+		out.writeBoolean(m_ignoreBadTokens);
+		out.writeInt(m_tokenToReference.size());
+		for (Map.Entry<Token,EntryReference<Entry,Entry>> mapEntry : m_tokenToReference.entrySet()) {
+			out.writeInt(mapEntry.getKey().start);
+			out.writeInt(mapEntry.getKey().end);
+			out.writeReference(mapEntry.getValue());
+		}
+		out.writeInt(m_declarationToToken.size());
+		for (Map.Entry<Entry,Token> mapEntry : m_declarationToToken.entrySet()) {
+			out.writeEntry(mapEntry.getKey());
+			out.writeInt(mapEntry.getValue().start);
+			out.writeInt(mapEntry.getValue().end);
+		}
+		out.writeEntries(m_entries);
+	}
+	
+	static SourceIndex read(IndexInput in)
+	throws IOException {
+		String source = in.readText();
+		SourceIndex index = new SourceIndex(source, in.readBoolean());
+		int numTokens = in.readInt();
+		for (int i=0; i<numTokens; i++) {
+			Token token = new Token(in.readInt(), in.readInt(), source);
+			EntryReference<Entry,Entry> reference = in.readReference();
+			index.m_tokenToReference.put(token, reference);
+			index.m_referenceToTokens.put(reference, token);
+		}
+		int numDeclarations = in.readInt();
+		for (int i=0; i<numDeclarations; i++) {
+			Entry entry = in.readEntry();
+			index.m_declarationToToken.put(entry, new Token(in.readInt(), in.readInt(), source));
+		}
+		in.readEntries(index.m_entries);
+		return index;
+	}
+	
 	private int toPos(int line, int col) {
 		// line and col are 1-based
 		return m_lineOffsets.get(line - 1) + col - 1;
@@ -74,6 +74,8 @@ public class SourceIndexBehaviorVisitor extends SourceIndexVisitor {
 			}
 			if (tokenNode != null) {
 				index.addReference(tokenNode, behaviorEntry, m_behaviorEntry);
+			} else {
+				index.addReference(behaviorEntry);
 			}
 		}
 		
@@ -100,9 +102,11 @@ public class SourceIndexBehaviorVisitor extends SourceIndexVisitor {
 	@Override
 	public Void visitSimpleType(SimpleType node, SourceIndex index) {
 		TypeReference ref = node.getUserData(Keys.TYPE_REFERENCE);
+		ClassEntry classEntry = new ClassEntry(ref.getInternalName());
 		if (node.getIdentifierToken().getStartLocation() != TextLocation.EMPTY) {
-			ClassEntry classEntry = new ClassEntry(ref.getInternalName());
 			index.addReference(node.getIdentifierToken(), classEntry, m_behaviorEntry);
+		} else {
+			index.addReference(classEntry);
 		}
 		
 		return recurse(node, index);
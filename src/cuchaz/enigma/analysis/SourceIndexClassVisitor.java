@@ -56,9 +56,11 @@ public class SourceIndexClassVisitor extends SourceIndexVisitor {
 	@Override
 	public Void visitSimpleType(SimpleType node, SourceIndex index) {
 		TypeReference ref = node.getUserData(Keys.TYPE_REFERENCE);
+		ClassEntry classEntry = new ClassEntry(ref.getInternalName());
 		if (node.getIdentifierToken().getStartLocation() != TextLocation.EMPTY) {
-			ClassEntry classEntry = new ClassEntry(ref.getInternalName());
 			index.addReference(node.getIdentifierToken(), classEntry, m_classEntry);
+		} else {
+			index.addReference(classEntry);
 		}
 		
 		return recurse(node, index);
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import cuchaz.enigma.Constants;
+import cuchaz.enigma.Util;
+import cuchaz.enigma.mapping.Entry;
+
+public class SourceManifest {
+	
+	public static final String FileName = ".enigma-sources";
+	
+	// bump this when the manifest layout changes, or when sources written by older builds shouldn't be kept
+	public static final int ManifestVersion = 1;
+	private static final int ManifestMagic = 0x454e534d; // "ENSM"
+	
+	private static class WrittenSource {
+		
+		public String path;
+		public List<Entry> obfEntries;
+		public String fingerprint;
+		
+		public WrittenSource(String path, List<Entry> obfEntries, String fingerprint) {
+			this.path = path;
+			this.obfEntries = obfEntries;
+			this.fingerprint = fingerprint;
+		}
+	}
+	
+	private File m_dir;
+	private String m_jarHash;
+	private Map<String,WrittenSource> m_sources;
+	
+	public SourceManifest(File dir, String jarHash) {
+		m_dir = dir;
+		m_jarHash = jarHash;
+		m_sources = Maps.newTreeMap();
+	}
+	
+	public static SourceManifest read(File dir, String jarHash) {
+		
+		// sources written from a different jar, or by a different version, can't be trusted, so start over
+		SourceManifest manifest = new SourceManifest(dir, jarHash);
+		File file = manifest.getFile();
+		if (!file.isFile()) {
+			return manifest;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file));
+			IndexInput iin = new IndexInput(new GZIPInputStream(in));
+			if (iin.readInt() != ManifestMagic || iin.readInt() != ManifestVersion) {
+				throw new IOException("Not a source manifest, or the wrong version!");
+			}
+			if (!Constants.Version.equals(iin.readString()) || !jarHash.equals(iin.readString())) {
+				return manifest;
+			}
+			int numSources = iin.readInt();
+			for (int i = 0; i < numSources; i++) {
+				String obfClassName = iin.readString();
+				String path = iin.readString();
+				String fingerprint = iin.readString();
+				List<Entry> obfEntries = Lists.newArrayList();
+				iin.readEntries(obfEntries);
+				manifest.m_sources.put(obfClassName, new WrittenSource(path, obfEntries, fingerprint));
+			}
+		} catch (IOException | RuntimeException ex) {
+			// a broken manifest just means we have to decompile everything again
+			System.err.println("WARNING: Unable to read source manifest " + file + ": " + ex.getMessage());
+			manifest.m_sources.clear();
+		} finally {
+			Util.closeQuietly(in);
+		}
+		return manifest;
+	}
+	
+	public File getDir() {
+		return m_dir;
+	}
+	
+	public File getFile() {
+		return new File(m_dir, FileName);
+	}
+	
+	public String getJarHash() {
+		return m_jarHash;
+	}
+	
+	public synchronized int getNumSources() {
+		return m_sources.size();
+	}
+	
+	public synchronized Set<String> getPaths() {
+		Set<String> paths = Sets.newHashSet();
+		for (WrittenSource source : m_sources.values()) {
+			paths.add(source.path);
+		}
+		return paths;
+	}
+	
+	public boolean isUpToDate(String obfClassName, String path, SourceCache.Fingerprinter fingerprinter) {
+		WrittenSource source;
+		synchronized (this) {
+			source = m_sources.get(obfClassName);
+		}
+		
+		// the file has to still be there, under the same name, and written with the same names for everything it uses
+		return source != null
+			&& source.path.equals(path)
+			&& new File(m_dir, path).isFile()
+			&& source.fingerprint.equals(fingerprinter.getFingerprint(source.obfEntries));
+	}
+	
+	public synchronized void put(String obfClassName, String path, List<Entry> obfEntries, String fingerprint) {
+		m_sources.put(obfClassName, new WrittenSource(path, Lists.newArrayList(obfEntries), fingerprint));
+	}
+	
+	public synchronized void putFrom(SourceManifest other, String obfClassName) {
+		WrittenSource source = other.m_sources.get(obfClassName);
+		if (source != null) {
+			m_sources.put(obfClassName, source);
+		}
+	}
+	
+	public synchronized void write() {
+		try {
+			Util.writeAtomically(getFile(), new Util.FileContents() {
+				@Override
+				public void write(OutputStream out)
+				throws IOException {
+					GZIPOutputStream gzipout = new GZIPOutputStream(out);
+					IndexOutput iout = new IndexOutput(gzipout);
+					iout.writeInt(ManifestMagic);
+					iout.writeInt(ManifestVersion);
+					iout.writeString(Constants.Version);
+					iout.writeString(m_jarHash);
+					iout.writeInt(m_sources.size());
+					for (Map.Entry<String,WrittenSource> mapEntry : m_sources.entrySet()) {
+						WrittenSource source = mapEntry.getValue();
+						iout.writeString(mapEntry.getKey());
+						iout.writeString(source.path);
+						iout.writeString(source.fingerprint);
+						iout.writeEntries(source.obfEntries);
+					}
+					iout.flush();
+					gzipout.finish();
+				}
+			});
+		} catch (IOException ex) {
+			// the sources are still good, the next export just has to decompile everything again
+			System.err.println("WARNING: Unable to write source manifest " + getFile() + ": " + ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.analysis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javassist.CtClass;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+import cuchaz.enigma.CopyOnWriteMap;
+import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.Translator;
+import cuchaz.enigma.mapping.Type;
+
+// a translation index with all the names translated, eg for the obfuscating translator
+// it never changes, retranslating makes a new index that shares every class that didn't change
+public class TranslatedIndex extends TranslationIndex {
+	
+	private static final long serialVersionUID = -2880496404786390117L;
+	
+	private static class ClassRecord {
+		
+		public ClassEntry classEntry;
+		public ClassEntry superclassEntry;
+		public List<ClassEntry> interfaceEntries;
+		public Set<FieldEntry> fieldEntries;
+		public Set<BehaviorEntry> behaviorEntries;
+		
+		public ClassRecord(TranslationIndex index, Translator translator, ClassEntry classEntry) {
+			this.classEntry = translator.translateEntry(classEntry);
+			ClassEntry superclassEntry = index.getSuperclass(classEntry);
+			if (superclassEntry != null) {
+				this.superclassEntry = translator.translateEntry(superclassEntry);
+			}
+			interfaceEntries = Lists.newArrayList();
+			for (ClassEntry interfaceEntry : index.getInterfaces(classEntry)) {
+				interfaceEntries.add(translator.translateEntry(interfaceEntry));
+			}
+			fieldEntries = Sets.newHashSet();
+			for (FieldEntry fieldEntry : index.getFieldEntries(classEntry)) {
+				fieldEntries.add(translator.translateEntry(fieldEntry));
+			}
+			behaviorEntries = Sets.newHashSet();
+			for (BehaviorEntry behaviorEntry : index.getBehaviorEntries(classEntry)) {
+				behaviorEntries.add(translator.translateEntry(behaviorEntry));
+			}
+		}
+	}
+	
+	// the untranslated index answers the reverse lookups, the records are keyed by untranslated class
+	private TranslationIndex m_index;
+	private CopyOnWriteMap<ClassEntry,ClassRecord> m_records;
+	
+	// names for every class the records mention, in both directions
+	private CopyOnWriteMap<ClassEntry,ClassEntry> m_translatedNames;
+	private CopyOnWriteMap<ClassEntry,ClassEntry> m_untranslatedNames;
+	
+	public TranslatedIndex(TranslationIndex index, Translator translator) {
+		this(
+			index,
+			new CopyOnWriteMap<ClassEntry,ClassRecord>(),
+			new CopyOnWriteMap<ClassEntry,ClassEntry>(),
+			new CopyOnWriteMap<ClassEntry,ClassEntry>(),
+			translator,
+			index.getClassEntries()
+		);
+	}
+	
+	private TranslatedIndex(TranslationIndex index, CopyOnWriteMap<ClassEntry,ClassRecord> records, CopyOnWriteMap<ClassEntry,ClassEntry> translatedNames, CopyOnWriteMap<ClassEntry,ClassEntry> untranslatedNames, Translator translator, Collection<ClassEntry> classEntries) {
+		m_index = index;
+		
+		Map<ClassEntry,ClassRecord> recordChanges = Maps.newHashMap();
+		Map<ClassEntry,ClassEntry> translatedNameChanges = Maps.newHashMap();
+		Map<ClassEntry,ClassEntry> untranslatedNameChanges = Maps.newHashMap();
+		
+		// take out all the old names first, a new name could be the same as an old one
+		for (ClassEntry classEntry : classEntries) {
+			ClassEntry oldTranslatedClassEntry = translatedNames.get(classEntry);
+			if (oldTranslatedClassEntry != null) {
+				untranslatedNameChanges.put(oldTranslatedClassEntry, null);
+			}
+		}
+		
+		for (ClassEntry classEntry : classEntries) {
+			if (m_index.containsClass(classEntry)) {
+				ClassRecord record = new ClassRecord(m_index, translator, classEntry);
+				recordChanges.put(classEntry, record);
+				putName(translatedNameChanges, untranslatedNameChanges, classEntry, record.classEntry);
+				ClassEntry superclassEntry = m_index.getSuperclass(classEntry);
+				if (superclassEntry != null) {
+					putName(translatedNameChanges, untranslatedNameChanges, superclassEntry, record.superclassEntry);
+				}
+				int i = 0;
+				for (ClassEntry interfaceEntry : m_index.getInterfaces(classEntry)) {
+					putName(translatedNameChanges, untranslatedNameChanges, interfaceEntry, record.interfaceEntries.get(i++));
+				}
+			} else if (translatedNames.containsKey(classEntry)) {
+				// classes outside the index only have names
+				putName(translatedNameChanges, untranslatedNameChanges, classEntry, translator.translateEntry(classEntry));
+			}
+		}
+		
+		m_records = records.withChanges(recordChanges);
+		m_translatedNames = translatedNames.withChanges(translatedNameChanges);
+		m_untranslatedNames = untranslatedNames.withChanges(untranslatedNameChanges);
+	}
+	
+	private static void putName(Map<ClassEntry,ClassEntry> translatedNames, Map<ClassEntry,ClassEntry> untranslatedNames, ClassEntry classEntry, ClassEntry translatedClassEntry) {
+		translatedNames.put(classEntry, translatedClassEntry);
+		untranslatedNames.put(translatedClassEntry, classEntry);
+	}
+	
+	public TranslatedIndex retranslate(Translator translator, Collection<ClassEntry> classEntries) {
+		// the untranslated classes to retranslate, call this after their mappings changed
+		return new TranslatedIndex(m_index, m_records, m_translatedNames, m_untranslatedNames, translator, classEntries);
+	}
+	
+	private ClassRecord getRecord(ClassEntry translatedClassEntry) {
+		ClassEntry classEntry = m_untranslatedNames.get(translatedClassEntry);
+		if (classEntry == null) {
+			return null;
+		}
+		return m_records.get(classEntry);
+	}
+	
+	private List<ClassEntry> getTranslatedClassEntries(Collection<ClassEntry> classEntries) {
+		List<ClassEntry> translatedClassEntries = Lists.newArrayListWithCapacity(classEntries.size());
+		for (ClassEntry classEntry : classEntries) {
+			translatedClassEntries.add(m_translatedNames.get(classEntry));
+		}
+		return translatedClassEntries;
+	}
+	
+	@Override
+	public void indexClass(CtClass c, boolean indexMembers) {
+		throw new UnsupportedOperationException("Translated indices can't change");
+	}
+	
+	@Override
+	public void addAll(TranslationIndex other) {
+		throw new UnsupportedOperationException("Translated indices can't change");
+	}
+	
+	@Override
+	public void renameClasses(Map<String,String> renames) {
+		throw new UnsupportedOperationException("Translated indices can't change");
+	}
+	
+	@Override
+	public Set<ClassEntry> getClassEntries() {
+		Set<ClassEntry> classEntries = Sets.newHashSet();
+		for (ClassRecord record : m_records.values()) {
+			classEntries.add(record.classEntry);
+		}
+		return classEntries;
+	}
+	
+	@Override
+	public boolean containsClass(ClassEntry classEntry) {
+		return getRecord(classEntry) != null;
+	}
+	
+	@Override
+	Collection<FieldEntry> getFieldEntries(ClassEntry classEntry) {
+		ClassRecord record = getRecord(classEntry);
+		if (record == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(record.fieldEntries);
+	}
+	
+	@Override
+	Collection<BehaviorEntry> getBehaviorEntries(ClassEntry classEntry) {
+		ClassRecord record = getRecord(classEntry);
+		if (record == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(record.behaviorEntries);
+	}
+	
+	@Override
+	public Multimap<ClassEntry,ClassEntry> getClassesByMemberType() {
+		Multimap<ClassEntry,ClassEntry> classes = HashMultimap.create();
+		for (ClassRecord record : m_records.values()) {
+			for (FieldEntry fieldEntry : record.fieldEntries) {
+				if (fieldEntry.getType().hasClass()) {
+					classes.put(fieldEntry.getType().getClassEntry(), fieldEntry.getClassEntry());
+				}
+			}
+			for (BehaviorEntry behaviorEntry : record.behaviorEntries) {
+				if (behaviorEntry.getSignature() != null) {
+					for (Type type : behaviorEntry.getSignature().types()) {
+						if (type.hasClass()) {
+							classes.put(type.getClassEntry(), behaviorEntry.getClassEntry());
+						}
+					}
+				}
+			}
+		}
+		return classes;
+	}
+	
+	@Override
+	public ClassEntry getSuperclass(ClassEntry classEntry) {
+		ClassRecord record = getRecord(classEntry);
+		if (record == null) {
+			return null;
+		}
+		return record.superclassEntry;
+	}
+	
+	@Override
+	public List<ClassEntry> getSubclass(ClassEntry classEntry) {
+		ClassEntry untranslatedClassEntry = m_untranslatedNames.get(classEntry);
+		if (untranslatedClassEntry == null) {
+			return Lists.newArrayList();
+		}
+		return getTranslatedClassEntries(m_index.getSubclass(untranslatedClassEntry));
+	}
+	
+	@Override
+	public Collection<Map.Entry<ClassEntry,ClassEntry>> getClassInterfaces() {
+		List<Map.Entry<ClassEntry,ClassEntry>> classInterfaces = Lists.newArrayList();
+		for (ClassRecord record : m_records.values()) {
+			for (ClassEntry interfaceEntry : record.interfaceEntries) {
+				classInterfaces.add(Maps.immutableEntry(record.classEntry, interfaceEntry));
+			}
+		}
+		return classInterfaces;
+	}
+	
+	@Override
+	public Collection<ClassEntry> getInterfaces(ClassEntry classEntry) {
+		ClassRecord record = getRecord(classEntry);
+		if (record == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(record.interfaceEntries);
+	}
+	
+	@Override
+	public Collection<ClassEntry> getImplementations(ClassEntry interfaceEntry) {
+		ClassEntry untranslatedInterfaceEntry = m_untranslatedNames.get(interfaceEntry);
+		if (untranslatedInterfaceEntry == null) {
+			return Collections.emptyList();
+		}
+		return getTranslatedClassEntries(m_index.getImplementations(untranslatedInterfaceEntry));
+	}
+	
+	@Override
+	public Set<ClassEntry> getInterfaceEntries() {
+		return Sets.newHashSet(getTranslatedClassEntries(m_index.getInterfaceEntries()));
+	}
+	
+	@Override
+	public boolean isInterface(ClassEntry classEntry) {
+		ClassEntry untranslatedClassEntry = m_untranslatedNames.get(classEntry);
+		return untranslatedClassEntry != null && m_index.isInterface(untranslatedClassEntry);
+	}
+	
+	@Override
+	public boolean fieldExists(FieldEntry fieldEntry) {
+		ClassRecord record = getRecord(fieldEntry.getClassEntry());
+		return record != null && record.fieldEntries.contains(fieldEntry);
+	}
+	
+	@Override
+	public boolean behaviorExists(BehaviorEntry behaviorEntry) {
+		ClassRecord record = getRecord(behaviorEntry.getClassEntry());
+		return record != null && record.behaviorEntries.contains(behaviorEntry);
+	}
+	
+	@Override
+	void write(IndexOutput out) {
+		throw new UnsupportedOperationException("Write the untranslated index instead");
+	}
+	
+	@Override
+	void read(IndexInput in) {
+		throw new UnsupportedOperationException("Translated indices can't change");
+	}
+}
@@ -12,15 +12,14 @@ package cuchaz.enigma.analysis;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -29,10 +28,12 @@ import javassist.CtClass;
 import javassist.CtField;
 import javassist.bytecode.Descriptor;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
 import cuchaz.enigma.mapping.ArgumentEntry;
 import cuchaz.enigma.mapping.BehaviorEntry;
@@ -40,7 +41,7 @@ import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.EntryFactory;
 import cuchaz.enigma.mapping.FieldEntry;
-import cuchaz.enigma.mapping.Translator;
+import cuchaz.enigma.mapping.Type;
 
 public class TranslationIndex implements Serializable {
 	
@@ -51,49 +52,26 @@ public class TranslationIndex implements Serializable {
 	private Multimap<ClassEntry,BehaviorEntry> m_behaviorEntries;
 	private Multimap<ClassEntry,ClassEntry> m_interfaces;
 	
+	// reverse indices, always derived from m_superclasses and m_interfaces
+	private Multimap<ClassEntry,ClassEntry> m_subclasses;
+	private Multimap<ClassEntry,ClassEntry> m_implementations;
+	
+	// resolved classes for member entries, including entries that don't resolve
+	// cleared whenever the classes or members above change
+	private ConcurrentMap<Entry,Optional<ClassEntry>> m_resolvedClasses;
+	private AtomicLong m_resolveHits;
+	private AtomicLong m_resolveMisses;
+	
 	public TranslationIndex() {
 		m_superclasses = Maps.newHashMap();
 		m_fieldEntries = HashMultimap.create();
 		m_behaviorEntries = HashMultimap.create();
 		m_interfaces = HashMultimap.create();
-	}
-	
-	public TranslationIndex(TranslationIndex other, Translator translator) {
-		
-		// translate the superclasses
-		m_superclasses = Maps.newHashMap();
-		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : other.m_superclasses.entrySet()) {
-			m_superclasses.put(
-				translator.translateEntry(mapEntry.getKey()),
-				translator.translateEntry(mapEntry.getValue())
-			);
-		}
-		
-		// translate the interfaces
-		m_interfaces = HashMultimap.create();
-		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : other.m_interfaces.entries()) {
-			m_interfaces.put(
-				translator.translateEntry(mapEntry.getKey()),
-				translator.translateEntry(mapEntry.getValue())
-			);
-		}
-		
-		// translate the fields
-		m_fieldEntries = HashMultimap.create();
-		for (Map.Entry<ClassEntry,FieldEntry> mapEntry : other.m_fieldEntries.entries()) {
-			m_fieldEntries.put(
-				translator.translateEntry(mapEntry.getKey()),
-				translator.translateEntry(mapEntry.getValue())
-			);
-		}
-		
-		m_behaviorEntries = HashMultimap.create();
-		for (Map.Entry<ClassEntry,BehaviorEntry> mapEntry : other.m_behaviorEntries.entries()) {
-			m_behaviorEntries.put(
-				translator.translateEntry(mapEntry.getKey()),
-				translator.translateEntry(mapEntry.getValue())
-			);
-		}
+		m_subclasses = HashMultimap.create();
+		m_implementations = HashMultimap.create();
+		m_resolvedClasses = Maps.newConcurrentMap();
+		m_resolveHits = new AtomicLong();
+		m_resolveMisses = new AtomicLong();
 	}
 	
 	public void indexClass(CtClass c) {
@@ -106,11 +84,13 @@ public class TranslationIndex implements Serializable {
 		if (isJre(classEntry)) {
 			return;
 		}
+		m_resolvedClasses.clear();
 		
 		// add the superclass
 		ClassEntry superclassEntry = EntryFactory.getSuperclassEntry(c);
 		if (superclassEntry != null) {
 			m_superclasses.put(classEntry, superclassEntry);
+			m_subclasses.put(superclassEntry, classEntry);
 		}
 		
 		// add the interfaces
@@ -118,6 +98,7 @@ public class TranslationIndex implements Serializable {
 			ClassEntry interfaceClassEntry = new ClassEntry(Descriptor.toJvmName(interfaceClassName));
 			if (!isJre(interfaceClassEntry)) {
 				m_interfaces.put(classEntry, interfaceClassEntry);
+				m_implementations.put(interfaceClassEntry, classEntry);
 			}
 		}
 		
@@ -136,10 +117,78 @@ public class TranslationIndex implements Serializable {
 		}
 	}
 	
+	public void addAll(TranslationIndex other) {
+		m_superclasses.putAll(other.m_superclasses);
+		m_fieldEntries.putAll(other.m_fieldEntries);
+		m_behaviorEntries.putAll(other.m_behaviorEntries);
+		m_interfaces.putAll(other.m_interfaces);
+		m_subclasses.putAll(other.m_subclasses);
+		m_implementations.putAll(other.m_implementations);
+		m_resolvedClasses.clear();
+	}
+	
 	public void renameClasses(Map<String,String> renames) {
 		EntryRenamer.renameClassesInMap(renames, m_superclasses);
 		EntryRenamer.renameClassesInMultimap(renames, m_fieldEntries);
 		EntryRenamer.renameClassesInMultimap(renames, m_behaviorEntries);
+		EntryRenamer.renameClassesInMultimap(renames, m_interfaces);
+		rebuildReverseIndices();
+		m_resolvedClasses.clear();
+	}
+	
+	private void rebuildReverseIndices() {
+		m_subclasses.clear();
+		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : m_superclasses.entrySet()) {
+			m_subclasses.put(mapEntry.getValue(), mapEntry.getKey());
+		}
+		m_implementations.clear();
+		for (Map.Entry<ClassEntry,ClassEntry> mapEntry : m_interfaces.entries()) {
+			m_implementations.put(mapEntry.getValue(), mapEntry.getKey());
+		}
+	}
+	
+	public Set<ClassEntry> getClassEntries() {
+		Set<ClassEntry> classEntries = Sets.newHashSet();
+		classEntries.addAll(m_superclasses.keySet());
+		classEntries.addAll(m_interfaces.keySet());
+		classEntries.addAll(m_fieldEntries.keySet());
+		classEntries.addAll(m_behaviorEntries.keySet());
+		return classEntries;
+	}
+	
+	public boolean containsClass(ClassEntry classEntry) {
+		return m_superclasses.containsKey(classEntry)
+			|| m_interfaces.containsKey(classEntry)
+			|| m_fieldEntries.containsKey(classEntry)
+			|| m_behaviorEntries.containsKey(classEntry);
+	}
+	
+	Collection<FieldEntry> getFieldEntries(ClassEntry classEntry) {
+		return m_fieldEntries.get(classEntry);
+	}
+	
+	Collection<BehaviorEntry> getBehaviorEntries(ClassEntry classEntry) {
+		return m_behaviorEntries.get(classEntry);
+	}
+	
+	public Multimap<ClassEntry,ClassEntry> getClassesByMemberType() {
+		// ie, which classes have fields or behaviors whose types mention each class
+		Multimap<ClassEntry,ClassEntry> classes = HashMultimap.create();
+		for (FieldEntry fieldEntry : m_fieldEntries.values()) {
+			if (fieldEntry.getType().hasClass()) {
+				classes.put(fieldEntry.getType().getClassEntry(), fieldEntry.getClassEntry());
+			}
+		}
+		for (BehaviorEntry behaviorEntry : m_behaviorEntries.values()) {
+			if (behaviorEntry.getSignature() != null) {
+				for (Type type : behaviorEntry.getSignature().types()) {
+					if (type.hasClass()) {
+						classes.put(type.getClassEntry(), behaviorEntry.getClassEntry());
+					}
+				}
+			}
+		}
+		return classes;
 	}
 	
 	public ClassEntry getSuperclass(ClassEntry classEntry) {
@@ -158,17 +207,7 @@ public class TranslationIndex implements Serializable {
 	}
 	
 	public List<ClassEntry> getSubclass(ClassEntry classEntry) {
-		
-		// linear search is fast enough for now
-		List<ClassEntry> subclasses = Lists.newArrayList();
-		for (Map.Entry<ClassEntry,ClassEntry> entry : m_superclasses.entrySet()) {
-			ClassEntry subclass = entry.getKey();
-			ClassEntry superclass = entry.getValue();
-			if (classEntry.equals(superclass)) {
-				subclasses.add(subclass);
-			}
-		}
-		return subclasses;
+		return Lists.newArrayList(m_subclasses.get(classEntry));
 	}
 	
 	public void getSubclassesRecursively(Set<ClassEntry> out, ClassEntry classEntry) {
@@ -193,8 +232,16 @@ public class TranslationIndex implements Serializable {
 		return m_interfaces.get(classEntry);
 	}
 	
+	public Collection<ClassEntry> getImplementations(ClassEntry interfaceEntry) {
+		return m_implementations.get(interfaceEntry);
+	}
+	
+	public Set<ClassEntry> getInterfaceEntries() {
+		return m_implementations.keySet();
+	}
+	
 	public boolean isInterface(ClassEntry classEntry) {
-		return m_interfaces.containsValue(classEntry);
+		return m_implementations.containsKey(classEntry);
 	}
 	
 	public boolean entryExists(Entry entry) {
@@ -222,6 +269,29 @@ public class TranslationIndex implements Serializable {
 			return (ClassEntry)entry;
 		}
 		
+		Optional<ClassEntry> resolvedClassEntry = m_resolvedClasses.get(entry);
+		if (resolvedClassEntry != null) {
+			m_resolveHits.incrementAndGet();
+			return resolvedClassEntry.orNull();
+		}
+		m_resolveMisses.incrementAndGet();
+		
+		// racing threads will just resolve the same answer, so no need to lock
+		resolvedClassEntry = Optional.fromNullable(resolveEntryClassUncached(entry));
+		m_resolvedClasses.put(entry, resolvedClassEntry);
+		return resolvedClassEntry.orNull();
+	}
+	
+	public long getResolveCacheHits() {
+		return m_resolveHits.get();
+	}
+	
+	public long getResolveCacheMisses() {
+		return m_resolveMisses.get();
+	}
+	
+	private ClassEntry resolveEntryClassUncached(Entry entry) {
+		
 		ClassEntry superclassEntry = resolveSuperclass(entry);
 		if (superclassEntry != null) {
 			return superclassEntry;
@@ -259,7 +329,7 @@ public class TranslationIndex implements Serializable {
 		
 		// the interfaces for any class is a forest
 		// so let's look at all the trees
-		for (ClassEntry interfaceEntry : m_interfaces.get(entry.getClassEntry())) {
+		for (ClassEntry interfaceEntry : getInterfaces(entry.getClassEntry())) {
 			ClassEntry resolvedClassEntry = resolveSuperclass(entry.cloneToNewClass(interfaceEntry));
 			if (resolvedClassEntry != null) {
 				return resolvedClassEntry;
@@ -276,23 +346,36 @@ public class TranslationIndex implements Serializable {
 	public void write(OutputStream out)
 	throws IOException {
 		GZIPOutputStream gzipout = new GZIPOutputStream(out);
-		ObjectOutputStream oout = new ObjectOutputStream(gzipout);
-		oout.writeObject(m_superclasses);
-		oout.writeObject(m_fieldEntries);
-		oout.writeObject(m_behaviorEntries);
+		IndexOutput iout = new IndexOutput(gzipout);
+		write(iout);
+		iout.flush();
 		gzipout.finish();
 	}
 	
-	@SuppressWarnings("unchecked")
+	void write(IndexOutput out)
+	throws IOException {
+		out.writeEntryMap(m_superclasses);
+		out.writeEntryMultimap(m_fieldEntries);
+		out.writeEntryMultimap(m_behaviorEntries);
+		out.writeEntryMultimap(m_interfaces);
+	}
+	
 	public void read(InputStream in)
 	throws IOException {
-		try {
-			ObjectInputStream oin = new ObjectInputStream(new GZIPInputStream(in));
-			m_superclasses = (HashMap<ClassEntry,ClassEntry>)oin.readObject();
-			m_fieldEntries = (HashMultimap<ClassEntry,FieldEntry>)oin.readObject();
-			m_behaviorEntries = (HashMultimap<ClassEntry,BehaviorEntry>)oin.readObject();
-		} catch (ClassNotFoundException ex) {
-			throw new Error(ex);
-		}
+		read(new IndexInput(new GZIPInputStream(in)));
+	}
+	
+	void read(IndexInput in)
+	throws IOException {
+		m_superclasses.clear();
+		m_fieldEntries.clear();
+		m_behaviorEntries.clear();
+		m_interfaces.clear();
+		in.readEntryMap(m_superclasses);
+		in.readEntryMultimap(m_fieldEntries);
+		in.readEntryMultimap(m_behaviorEntries);
+		in.readEntryMultimap(m_interfaces);
+		rebuildReverseIndices();
+		m_resolvedClasses.clear();
 	}
 }
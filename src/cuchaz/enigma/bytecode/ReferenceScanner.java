@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.bytecode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javassist.CtBehavior;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.ConstructorEntry;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+public class ReferenceScanner {
+	
+	// reports the same call sites as javassist's ExprEditor, but only reads the bytecode
+	// so nothing gets rewritten and no classes get looked up
+	public static class Visitor {
+		
+		public void visitMethodCall(MethodEntry methodEntry) {
+			// override me
+		}
+		
+		public void visitFieldAccess(FieldEntry fieldEntry, boolean isWriter) {
+			// override me
+		}
+		
+		// ie, super(...) or this(...)
+		public void visitConstructorCall(ConstructorEntry constructorEntry, boolean isSuper) {
+			// override me
+		}
+		
+		// ie, new Foo(...)
+		public void visitNewExpr(ConstructorEntry constructorEntry) {
+			// override me
+		}
+	}
+	
+	public static void scan(CtBehavior behavior, Visitor visitor) {
+		CodeAttribute codeAttribute = behavior.getMethodInfo().getCodeAttribute();
+		if (codeAttribute == null) {
+			// abstract or native, nothing to scan
+			return;
+		}
+		try {
+			scan(codeAttribute, Descriptor.toJvmName(behavior.getDeclaringClass().getName()), visitor);
+		} catch (BadBytecode ex) {
+			throw new Error(ex);
+		}
+	}
+	
+	public static void scan(CodeAttribute codeAttribute, String className, Visitor visitor)
+	throws BadBytecode {
+		
+		ConstPool constants = codeAttribute.getConstPool();
+		Deque<String> newClassNames = new ArrayDeque<String>();
+		CodeIterator iter = codeAttribute.iterator();
+		while (iter.hasNext()) {
+			int pos = iter.next();
+			int opcode = iter.byteAt(pos);
+			switch (opcode) {
+				
+				case Opcode.INVOKEVIRTUAL:
+				case Opcode.INVOKESTATIC: {
+					int index = iter.u16bitAt(pos + 1);
+					visitor.visitMethodCall(new MethodEntry(
+						getClassEntry(constants.getMethodrefClassName(index)),
+						constants.getMethodrefName(index),
+						new Signature(constants.getMethodrefType(index))
+					));
+				}
+				break;
+				
+				case Opcode.INVOKEINTERFACE: {
+					int index = iter.u16bitAt(pos + 1);
+					visitor.visitMethodCall(new MethodEntry(
+						getClassEntry(constants.getInterfaceMethodrefClassName(index)),
+						constants.getInterfaceMethodrefName(index),
+						new Signature(constants.getInterfaceMethodrefType(index))
+					));
+				}
+				break;
+				
+				case Opcode.INVOKESPECIAL: {
+					int index = iter.u16bitAt(pos + 1);
+					ClassEntry classEntry = getClassEntry(constants.getMethodrefClassName(index));
+					Signature signature = new Signature(constants.getMethodrefType(index));
+					if (!newClassNames.isEmpty() && constants.isConstructor(newClassNames.peek(), index) > 0) {
+						// this call finishes the innermost pending new
+						visitor.visitNewExpr(new ConstructorEntry(getClassEntry(newClassNames.pop()), signature));
+					} else if (constants.getMethodrefName(index).equals(MethodInfo.nameInit)) {
+						visitor.visitConstructorCall(new ConstructorEntry(classEntry, signature), !classEntry.getName().equals(className));
+					} else {
+						// private methods and super.foo() calls
+						visitor.visitMethodCall(new MethodEntry(classEntry, constants.getMethodrefName(index), signature));
+					}
+				}
+				break;
+				
+				case Opcode.NEW:
+					newClassNames.push(constants.getClassInfo(iter.u16bitAt(pos + 1)));
+				break;
+				
+				case Opcode.GETFIELD:
+				case Opcode.GETSTATIC:
+				case Opcode.PUTFIELD:
+				case Opcode.PUTSTATIC: {
+					int index = iter.u16bitAt(pos + 1);
+					visitor.visitFieldAccess(
+						new FieldEntry(
+							getClassEntry(constants.getFieldrefClassName(index)),
+							constants.getFieldrefName(index),
+							new Type(constants.getFieldrefType(index))
+						),
+						opcode == Opcode.PUTFIELD || opcode == Opcode.PUTSTATIC
+					);
+				}
+				break;
+			}
+		}
+	}
+	
+	private static ClassEntry getClassEntry(String className) {
+		if (className.charAt(0) == '[') {
+			// name array classes the way javassist does, eg foo/Bar[]
+			className = Descriptor.toClassName(className);
+		}
+		return new ClassEntry(Descriptor.toJvmName(className));
+	}
+}
@@ -11,12 +11,12 @@
 package cuchaz.enigma.convert;
 
 import java.util.Map;
-import java.util.jar.JarFile;
 
 import com.google.common.collect.Maps;
 
 import javassist.CtClass;
 import cuchaz.enigma.TranslatingTypeLoader;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.convert.ClassNamer.SidedClassNamer;
 import cuchaz.enigma.mapping.ClassEntry;
@@ -30,11 +30,11 @@ public class ClassIdentifier {
 	private TranslatingTypeLoader m_loader;
 	private Map<ClassEntry,ClassIdentity> m_cache;
 	
-	public ClassIdentifier(JarFile jar, JarIndex index, SidedClassNamer namer, boolean useReferences) {
+	public ClassIdentifier(JarClassStore classStore, JarIndex index, SidedClassNamer namer, boolean useReferences) {
 		m_index = index;
 		m_namer = namer;
 		m_useReferences = useReferences;
-		m_loader = new TranslatingTypeLoader(jar, index);
+		m_loader = new TranslatingTypeLoader(classStore, index);
 		m_cache = Maps.newHashMap();
 	}
 	
@@ -18,7 +18,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javassist.CannotCompileException;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
@@ -29,11 +28,6 @@ import javassist.bytecode.CodeIterator;
 import javassist.bytecode.ConstPool;
 import javassist.bytecode.Descriptor;
 import javassist.bytecode.Opcode;
-import javassist.expr.ConstructorCall;
-import javassist.expr.ExprEditor;
-import javassist.expr.FieldAccess;
-import javassist.expr.MethodCall;
-import javassist.expr.NewExpr;
 
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
@@ -48,14 +42,17 @@ import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.bytecode.ConstPoolEditor;
 import cuchaz.enigma.bytecode.InfoType;
+import cuchaz.enigma.bytecode.ReferenceScanner;
 import cuchaz.enigma.bytecode.accessors.ConstInfoAccessor;
 import cuchaz.enigma.convert.ClassNamer.SidedClassNamer;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.ClassNameReplacer;
+import cuchaz.enigma.mapping.ConstructorEntry;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.EntryFactory;
 import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
 import cuchaz.enigma.mapping.Signature;
 import cuchaz.enigma.mapping.Type;
 
@@ -320,40 +317,40 @@ public class ClassIdentity {
 			}
 			
 			// update hash with method and field accesses
-			behavior.instrument(new ExprEditor() {
+			ReferenceScanner.scan(behavior, new ReferenceScanner.Visitor() {
 				@Override
-				public void edit(MethodCall call) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(call.getClassName())));
-					updateHashWithString(digest, scrubSignature(call.getSignature()));
-					if (isClassMatchedUniquely(call.getClassName())) {
-						updateHashWithString(digest, call.getMethodName());
+				public void visitMethodCall(MethodEntry methodEntry) {
+					updateHashWithString(digest, scrubClassName(methodEntry.getClassName()));
+					updateHashWithString(digest, scrubSignature(methodEntry.getSignature()).toString());
+					if (isClassMatchedUniquely(methodEntry.getClassName())) {
+						updateHashWithString(digest, methodEntry.getName());
 					}
 				}
 				
 				@Override
-				public void edit(FieldAccess access) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(access.getClassName())));
-					updateHashWithString(digest, scrubType(access.getSignature()));
-					if (isClassMatchedUniquely(access.getClassName())) {
-						updateHashWithString(digest, access.getFieldName());
+				public void visitFieldAccess(FieldEntry fieldEntry, boolean isWriter) {
+					updateHashWithString(digest, scrubClassName(fieldEntry.getClassName()));
+					updateHashWithString(digest, scrubType(fieldEntry.getType()).toString());
+					if (isClassMatchedUniquely(fieldEntry.getClassName())) {
+						updateHashWithString(digest, fieldEntry.getName());
 					}
 				}
 				
 				@Override
-				public void edit(ConstructorCall call) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(call.getClassName())));
-					updateHashWithString(digest, scrubSignature(call.getSignature()));
+				public void visitConstructorCall(ConstructorEntry constructorEntry, boolean isSuper) {
+					updateHashWithString(digest, scrubClassName(constructorEntry.getClassName()));
+					updateHashWithString(digest, scrubSignature(constructorEntry.getSignature()).toString());
 				}
 				
 				@Override
-				public void edit(NewExpr expr) {
-					updateHashWithString(digest, scrubClassName(Descriptor.toJvmName(expr.getClassName())));
+				public void visitNewExpr(ConstructorEntry constructorEntry) {
+					updateHashWithString(digest, scrubClassName(constructorEntry.getClassName()));
 				}
 			});
 			
 			// convert the hash to a hex string
 			return toHex(digest.digest());
-		} catch (BadBytecode | NoSuchAlgorithmException | CannotCompileException ex) {
+		} catch (BadBytecode | NoSuchAlgorithmException ex) {
 			throw new Error(ex);
 		}
 	}
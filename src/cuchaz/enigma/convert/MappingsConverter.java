@@ -29,6 +29,7 @@ import com.google.common.collect.Sets;
 
 import cuchaz.enigma.Constants;
 import cuchaz.enigma.Deobfuscator;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.convert.ClassNamer.SidedClassNamer;
 import cuchaz.enigma.mapping.BehaviorEntry;
@@ -51,20 +52,22 @@ public class MappingsConverter {
 	
 	public static ClassMatches computeClassMatches(JarFile sourceJar, JarFile destJar, Mappings mappings) {
 		
-		// index jars
+		// index jars, and keep the class stores so matching doesn't read the jars again
 		System.out.println("Indexing source jar...");
+		JarClassStore sourceClassStore = new JarClassStore(sourceJar);
 		JarIndex sourceIndex = new JarIndex();
-		sourceIndex.indexJar(sourceJar, false);
+		sourceIndex.indexJar(sourceClassStore, false);
 		System.out.println("Indexing dest jar...");
+		JarClassStore destClassStore = new JarClassStore(destJar);
 		JarIndex destIndex = new JarIndex();
-		destIndex.indexJar(destJar, false);
+		destIndex.indexJar(destClassStore, false);
 		
 		// compute the matching
-		ClassMatching matching = computeMatching(sourceJar, sourceIndex, destJar, destIndex, null);
+		ClassMatching matching = computeMatching(sourceClassStore, sourceIndex, destClassStore, destIndex, null);
 		return new ClassMatches(matching.matches());
 	}
 	
-	public static ClassMatching computeMatching(JarFile sourceJar, JarIndex sourceIndex, JarFile destJar, JarIndex destIndex, BiMap<ClassEntry,ClassEntry> knownMatches) {
+	public static ClassMatching computeMatching(JarClassStore sourceClassStore, JarIndex sourceIndex, JarClassStore destClassStore, JarIndex destIndex, BiMap<ClassEntry,ClassEntry> knownMatches) {
 		
 		System.out.println("Iteratively matching classes");
 		
@@ -85,8 +88,8 @@ public class MappingsConverter {
 				
 				// init the matching with identity settings
 				ClassMatching matching = new ClassMatching(
-					new ClassIdentifier(sourceJar, sourceIndex, sourceNamer, useReferences),
-					new ClassIdentifier(destJar, destIndex, destNamer, useReferences)
+					new ClassIdentifier(sourceClassStore, sourceIndex, sourceNamer, useReferences),
+					new ClassIdentifier(destClassStore, destIndex, destNamer, useReferences)
 				);
 				
 				if (knownMatches != null) {
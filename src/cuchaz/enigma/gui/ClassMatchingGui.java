@@ -306,10 +306,12 @@ public class ClassMatchingGui {
 	}
 	
 	private Collection<ClassEntry> deobfuscateClasses(Collection<ClassEntry> in, Deobfuscator deobfuscator) {
+		List<ClassEntry> entries = Lists.newArrayList(in);
+		List<ClassEntry> deobfEntries = deobfuscator.deobfuscateEntries(entries);
 		List<ClassEntry> out = Lists.newArrayList();
-		for (ClassEntry entry : in) {
-			
-			ClassEntry deobf = deobfuscator.deobfuscateEntry(entry);
+		for (int i=0; i<entries.size(); i++) {
+			ClassEntry entry = entries.get(i);
+			ClassEntry deobf = deobfEntries.get(i);
 			
 			// make sure we preserve any scores
 			if (entry instanceof ScoredClassEntry) {
@@ -393,11 +395,11 @@ public class ClassMatchingGui {
 		// set up identifiers
 		ClassNamer namer = new ClassNamer(m_classMatches.getUniqueMatches());
 		ClassIdentifier sourceIdentifier = new ClassIdentifier(
-			m_sourceDeobfuscator.getJar(), m_sourceDeobfuscator.getJarIndex(),
+			m_sourceDeobfuscator.getClassStore(), m_sourceDeobfuscator.getJarIndex(),
 			namer.getSourceNamer(), true
 		);
 		ClassIdentifier destIdentifier = new ClassIdentifier(
-			m_destDeobfuscator.getJar(), m_destDeobfuscator.getJarIndex(),
+			m_destDeobfuscator.getClassStore(), m_destDeobfuscator.getJarIndex(),
 			namer.getDestNamer(), true
 		);
 		
@@ -543,8 +545,8 @@ public class ClassMatchingGui {
 		
 		// compute a new matching
 		ClassMatching matching = MappingsConverter.computeMatching(
-			m_sourceDeobfuscator.getJar(), m_sourceDeobfuscator.getJarIndex(),
-			m_destDeobfuscator.getJar(), m_destDeobfuscator.getJarIndex(),
+			m_sourceDeobfuscator.getClassStore(), m_sourceDeobfuscator.getJarIndex(),
+			m_destDeobfuscator.getClassStore(), m_destDeobfuscator.getJarIndex(),
 			m_classMatches.getUniqueMatches()
 		);
 		ClassMatches newMatches = new ClassMatches(matching.matches());
@@ -125,6 +125,7 @@ public class Gui {
         // init file choosers
         m_jarFileChooser = new JFileChooser();
         m_mappingsFileChooser = new JFileChooser();
+        m_mappingsFileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
         m_exportSourceFileChooser = new JFileChooser();
         m_exportSourceFileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         m_exportJarFileChooser = new JFileChooser();
@@ -453,6 +454,8 @@ public class Gui {
                 item.addActionListener(event -> {
                     try {
                         m_controller.saveMappings(m_mappingsFileChooser.getSelectedFile());
+                    } catch (MappingsFolderException ex) {
+                        JOptionPane.showMessageDialog(m_frame, ex.getMessage());
                     } catch (IOException ex) {
                         throw new Error(ex);
                     }
@@ -468,6 +471,8 @@ public class Gui {
                         try {
                             m_controller.saveMappings(m_mappingsFileChooser.getSelectedFile());
                             m_saveMappingsMenu.setEnabled(true);
+                        } catch (MappingsFolderException ex) {
+                            JOptionPane.showMessageDialog(m_frame, ex.getMessage());
                         } catch (IOException ex) {
                             throw new Error(ex);
                         }
@@ -1193,7 +1198,8 @@ public class Gui {
 
     private void close() {
         if (!m_controller.isDirty()) {
-            // everything is saved, we can exit safely
+            // everything is saved, we can exit safely, and there's nothing in the journal worth keeping
+            m_controller.discardChanges();
             m_frame.dispose();
         } else {
             // ask to save before closing
@@ -1206,6 +1212,8 @@ public class Gui {
                         try {
                             m_controller.saveMappings(m_mappingsFileChooser.getSelectedFile());
                             m_frame.dispose();
+                        } catch (MappingsFolderException ex) {
+                            JOptionPane.showMessageDialog(m_frame, ex.getMessage());
                         } catch (IOException ex) {
                             throw new Error(ex);
                         }
@@ -1214,6 +1222,7 @@ public class Gui {
 
                 case JOptionPane.NO_OPTION:
                     // don't save, exit
+                    m_controller.discardChanges();
                     m_frame.dispose();
                     break;
 
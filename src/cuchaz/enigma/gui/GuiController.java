@@ -12,13 +12,14 @@ package cuchaz.enigma.gui;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.List;
 import java.util.jar.JarFile;
 
+import javax.swing.SwingUtilities;
+
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 import com.strobel.decompiler.languages.java.ast.CompilationUnit;
@@ -30,6 +31,7 @@ import cuchaz.enigma.analysis.ClassImplementationsTreeNode;
 import cuchaz.enigma.analysis.ClassInheritanceTreeNode;
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.FieldReferenceTreeNode;
+import cuchaz.enigma.analysis.JarIndexCache;
 import cuchaz.enigma.analysis.MethodImplementationsTreeNode;
 import cuchaz.enigma.analysis.MethodInheritanceTreeNode;
 import cuchaz.enigma.analysis.SourceIndex;
@@ -41,7 +43,13 @@ import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsBinaryReader;
+import cuchaz.enigma.mapping.MappingsBinaryWriter;
+import cuchaz.enigma.mapping.MappingsChecker;
+import cuchaz.enigma.mapping.MappingsJournal;
 import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsSnapshot;
 import cuchaz.enigma.mapping.MappingsWriter;
 import cuchaz.enigma.mapping.MethodEntry;
 import cuchaz.enigma.mapping.TranslationDirection;
@@ -53,6 +61,9 @@ public class GuiController {
 	private SourceIndex m_index;
 	private ClassEntry m_currentObfClass;
 	private boolean m_isDirty;
+	private File m_savedMappingsFile;
+	private boolean m_isBinaryMappings;
+	private MappingsJournal m_journal;
 	private Deque<EntryReference<Entry,Entry>> m_referenceStack;
 	
 	public GuiController(Gui gui) {
@@ -61,6 +72,9 @@ public class GuiController {
 		m_index = null;
 		m_currentObfClass = null;
 		m_isDirty = false;
+		m_savedMappingsFile = null;
+		m_isBinaryMappings = false;
+		m_journal = null;
 		m_referenceStack = Queues.newArrayDeque();
 	}
 	
@@ -70,35 +84,130 @@ public class GuiController {
 	
 	public void openJar(final JarFile jar) throws IOException {
 		m_gui.onStartOpenJar();
-		m_deobfuscator = new Deobfuscator(jar);
+		closeJournal(false);
+		m_deobfuscator = new Deobfuscator(jar, JarIndexCache.getDefault());
 		m_gui.onFinishOpenJar(m_deobfuscator.getJarName());
 		refreshClasses();
 	}
 	
 	public void closeJar() {
+		closeJournal(false);
 		m_deobfuscator = null;
 		m_gui.onCloseJar();
 	}
 	
 	public void openMappings(File file) throws IOException, MappingParseException {
-		FileReader in = new FileReader(file);
-		m_deobfuscator.setMappings(new MappingsReader().read(in));
-		in.close();
-		m_isDirty = false;
+		// show the mappings right away, and drop the ones that don't match the jar once the checker catches up
+		// and remember what format they were in, so saving doesn't change it
+		m_isBinaryMappings = false;
+		if (file.isDirectory()) {
+			m_deobfuscator.setUncheckedMappings(new MappingsReader().readDirectory(file));
+		} else if (MappingsBinaryReader.isBinary(file)) {
+			m_deobfuscator.setUncheckedMappings(new MappingsBinaryReader().read(file));
+			m_isBinaryMappings = true;
+		} else {
+			FileReader in = new FileReader(file);
+			m_deobfuscator.setUncheckedMappings(new MappingsReader().read(in));
+			in.close();
+		}
+		m_savedMappingsFile = file;
+		
+		// recover any changes that didn't get saved last time
+		closeJournal(false);
+		File journalFile = MappingsJournal.getFile(file);
+		int numReplayed = m_deobfuscator.replayJournal(MappingsJournal.recover(journalFile));
+		m_journal = new MappingsJournal(journalFile);
+		m_deobfuscator.setJournal(m_journal);
+		m_isDirty = numReplayed > 0;
+		
 		m_gui.setMappingsFile(file);
 		refreshClasses();
 		refreshCurrentClass();
+		checkMappings();
+	}
+	
+	private void checkMappings() {
+		
+		final Deobfuscator deobfuscator = m_deobfuscator;
+		final Mappings mappings = deobfuscator.getMappings();
+		final MappingsSnapshot snapshot = deobfuscator.getSnapshot();
+		new Thread() {
+			@Override
+			public void run() {
+				final MappingsChecker checker = deobfuscator.checkMappings(snapshot);
+				
+				// renames happen on the event thread, so drop mappings there too
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (m_deobfuscator != deobfuscator || deobfuscator.getMappings() != mappings) {
+							// something else got opened in the meantime
+							return;
+						}
+						deobfuscator.dropBrokenMappings(checker, true);
+						if (checker.getRelatedMethodChecker().hasProblems()) {
+							System.err.println("WARNING: Related methods are inconsistent! Need to fix the mappings manually.\n" + checker.getRelatedMethodChecker().getReport());
+						}
+						refreshClasses();
+						refreshCurrentClass();
+					}
+				});
+			}
+		}.start();
 	}
 	
 	public void saveMappings(File file) throws IOException {
-		FileWriter out = new FileWriter(file);
-		new MappingsWriter().write(out, m_deobfuscator.getMappings());
-		out.close();
+		if (file.isDirectory()) {
+			// only the classes that changed since the last save need to go back to the same folder
+			new MappingsWriter().writeDirectory(file, m_deobfuscator.getMappings(), file.equals(m_savedMappingsFile));
+		} else if (m_isBinaryMappings) {
+			new MappingsBinaryWriter().write(file, m_deobfuscator.getMappings());
+		} else {
+			new MappingsWriter().write(file, m_deobfuscator.getMappings());
+		}
+		
+		// everything in the journal is in the mappings now, so the next rename starts a new journal
+		if (m_journal != null && file.equals(m_savedMappingsFile)) {
+			m_journal.clear();
+		} else {
+			closeJournal(true);
+			m_journal = new MappingsJournal(MappingsJournal.getFile(file));
+			m_journal.clear();
+			m_deobfuscator.setJournal(m_journal);
+		}
+		
 		m_isDirty = false;
+		m_savedMappingsFile = file;
+	}
+	
+	public void discardChanges() {
+		closeJournal(true);
+	}
+	
+	private void closeJournal(boolean discardChanges) {
+		if (m_journal == null) {
+			return;
+		}
+		if (discardChanges) {
+			m_journal.delete();
+		} else {
+			try {
+				m_journal.close();
+			} catch (IOException ex) {
+				System.err.println("WARNING: Unable to close mappings journal " + m_journal.getFile() + ": " + ex.getMessage());
+			}
+		}
+		m_journal = null;
+		if (m_deobfuscator != null) {
+			m_deobfuscator.setJournal(null);
+		}
 	}
 	
 	public void closeMappings() {
+		closeJournal(true);
 		m_deobfuscator.setMappings(null);
+		m_savedMappingsFile = null;
+		m_isBinaryMappings = false;
 		m_gui.setMappingsFile(null);
 		refreshClasses();
 		refreshCurrentClass();
@@ -108,7 +217,7 @@ public class GuiController {
 		ProgressDialog.runInThread(m_gui.getFrame(), new ProgressRunnable() {
 			@Override
 			public void run(ProgressListener progress) throws Exception {
-				m_deobfuscator.writeSources(dirOut, progress);
+				m_deobfuscator.writeSources(dirOut, progress, Runtime.getRuntime().availableProcessors());
 			}
 		});
 	}
@@ -318,32 +427,36 @@ public class GuiController {
 		
 		m_gui.setSource("(deobfuscating...)");
 		
+		// take the mappings as they are now, renames can keep going while we decompile
+		final MappingsSnapshot snapshot = m_deobfuscator.getSnapshot();
+		
 		// run the deobfuscator in a separate thread so we don't block the GUI event queue
 		new Thread() {
 			@Override
 			public void run() {
-				// decompile,deobfuscate the bytecode
-				CompilationUnit sourceTree = m_deobfuscator.getSourceTree(classEntry.getClassName());
-				if (sourceTree == null) {
-					// decompilation of this class is not supported
-					m_gui.setSource("Unable to find class: " + classEntry);
-					return;
-				}
-				String source = m_deobfuscator.getSource(sourceTree);
-				m_index = m_deobfuscator.getSourceIndex(sourceTree, source);
+				// decompile,deobfuscate the bytecode, unless none of the names in it changed since last time
+				m_index = m_deobfuscator.getSourceIndex(classEntry.getClassName(), null, snapshot);
 				m_gui.setSource(m_index.getSource());
 				if (obfReference != null) {
 					showReference(obfReference);
 				}
 				
 				// set the highlighted tokens
+				// obfuscate all the referenced entries in one go, most of them share classes
+				List<Token> tokens = Lists.newArrayList(m_index.referenceTokens());
+				List<Entry> deobfEntries = Lists.newArrayList();
+				for (Token token : tokens) {
+					deobfEntries.add(m_index.getDeobfReference(token).getNameableEntry());
+				}
+				List<Entry> obfEntries = snapshot.getTranslator(TranslationDirection.Obfuscating).translateEntries(deobfEntries);
 				List<Token> obfuscatedTokens = Lists.newArrayList();
 				List<Token> deobfuscatedTokens = Lists.newArrayList();
 				List<Token> otherTokens = Lists.newArrayList();
-				for (Token token : m_index.referenceTokens()) {
-					EntryReference<Entry,Entry> reference = m_index.getDeobfReference(token);
-					if (referenceIsRenameable(reference)) {
-						if (entryHasDeobfuscatedName(reference.getNameableEntry())) {
+				for (int i=0; i<tokens.size(); i++) {
+					Token token = tokens.get(i);
+					Entry obfEntry = obfEntries.get(i);
+					if (m_index.getDeobfReference(token).isNamed() && snapshot.isObfuscatedIdentifier(obfEntry)) {
+						if (snapshot.hasDeobfuscatedName(obfEntry)) {
 							deobfuscatedTokens.add(token);
 						} else {
 							obfuscatedTokens.add(token);
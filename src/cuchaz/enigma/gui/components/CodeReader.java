@@ -22,8 +22,6 @@ import javax.swing.event.CaretListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Highlighter.HighlightPainter;
 
-import com.strobel.decompiler.languages.java.ast.CompilationUnit;
-
 import cuchaz.enigma.Deobfuscator;
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.SourceIndex;
@@ -113,11 +111,9 @@ public class CodeReader extends JEditorPane {
 			@Override
 			public void run() {
 				
-				// decompile it
-				CompilationUnit sourceTree = deobfuscator.getSourceTree(classEntry.getOutermostClassName());
-				String source = deobfuscator.getSource(sourceTree);
-				setCode(source);
-				m_sourceIndex = deobfuscator.getSourceIndex(sourceTree, source, ignoreBadTokens);
+				// decompile it, or get the source we already have
+				m_sourceIndex = deobfuscator.getSourceIndex(classEntry.getOutermostClassName(), ignoreBadTokens, deobfuscator.getSnapshot());
+				setCode(m_sourceIndex.getSource());
 				
 				if (callback != null) {
 					callback.run();
@@ -21,6 +21,7 @@ public class ArgumentEntry implements Entry, Serializable {
 	private BehaviorEntry m_behaviorEntry;
 	private int m_index;
 	private String m_name;
+	private transient int m_hashCode;
 	
 	public ArgumentEntry(BehaviorEntry behaviorEntry, int index, String name) {
 		if (behaviorEntry == null) {
@@ -88,11 +89,14 @@ public class ArgumentEntry implements Entry, Serializable {
 	
 	@Override
 	public int hashCode() {
-		return Util.combineHashesOrdered(
-			m_behaviorEntry,
-			Integer.valueOf(m_index).hashCode(),
-			m_name.hashCode()
-		);
+		if (m_hashCode == 0) {
+			m_hashCode = Util.combineHashesOrdered(
+				m_behaviorEntry,
+				Integer.valueOf(m_index).hashCode(),
+				m_name.hashCode()
+			);
+		}
+		return m_hashCode;
 	}
 	
 	@Override
@@ -87,18 +87,29 @@ public class ClassEntry implements Entry, Serializable {
 	}
 	
 	public List<String> getClassChainNames() {
-		return Lists.newArrayList(m_name.split("\\$"));
+		List<String> names = Lists.newArrayList();
+		int start = 0;
+		int pos;
+		while ((pos = m_name.indexOf('$', start)) >= 0) {
+			names.add(m_name.substring(start, pos));
+			start = pos + 1;
+		}
+		names.add(m_name.substring(start));
+		
+		// like split("\\$"), drop empty names at the end, so eg Scala's Foo$ is just Foo
+		while (!names.isEmpty() && names.get(names.size() - 1).isEmpty()) {
+			names.remove(names.size() - 1);
+		}
+		return names;
 	}
 	
 	public List<ClassEntry> getClassChain() {
+		// every prefix of the name up to a $ is the next class in the chain
 		List<ClassEntry> entries = Lists.newArrayList();
-		StringBuilder buf = new StringBuilder();
+		int end = -1;
 		for (String name : getClassChainNames()) {
-			if (buf.length() > 0) {
-				buf.append("$");
-			}
-			buf.append(name);
-			entries.add(new ClassEntry(buf.toString()));
+			end += name.length() + 1;
+			entries.add(end == m_name.length() ? this : new ClassEntry(m_name.substring(0, end)));
 		}
 		return entries;
 	}
@@ -12,23 +12,27 @@ package cuchaz.enigma.mapping;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
 
 import com.google.common.collect.Maps;
 
 public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	
-	private static final long serialVersionUID = -5148491146902340107L;
+	private static final long serialVersionUID = 4716305983421573498L;
+	
+	private static final int SmallMapSize = 3;
 	
 	private String m_obfFullName;
 	private String m_obfSimpleName;
 	private String m_deobfName;
 	private Map<String,ClassMapping> m_innerClassesByObfSimple;
 	private Map<String,ClassMapping> m_innerClassesByDeobf;
-	private Map<String,FieldMapping> m_fieldsByObf;
-	private Map<String,FieldMapping> m_fieldsByDeobf;
-	private Map<String,MethodMapping> m_methodsByObf;
-	private Map<String,MethodMapping> m_methodsByDeobf;
+	private Map<MemberKey,FieldMapping> m_fieldsByObf;
+	private Map<MemberKey,FieldMapping> m_fieldsByDeobf;
+	private Map<MemberKey,MethodMapping> m_methodsByObf;
+	private Map<MemberKey,MethodMapping> m_methodsByDeobf;
+	private transient boolean m_isDirty;
 	
 	public ClassMapping(String obfFullName) {
 		this(obfFullName, null);
@@ -39,12 +43,58 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		ClassEntry classEntry = new ClassEntry(obfFullName);
 		m_obfSimpleName = classEntry.isInnerClass() ? classEntry.getInnermostClassName() : classEntry.getSimpleName();
 		m_deobfName = NameValidator.validateClassName(deobfName, false);
-		m_innerClassesByObfSimple = Maps.newHashMap();
-		m_innerClassesByDeobf = Maps.newHashMap();
-		m_fieldsByObf = Maps.newHashMap();
-		m_fieldsByDeobf = Maps.newHashMap();
-		m_methodsByObf = Maps.newHashMap();
-		m_methodsByDeobf = Maps.newHashMap();
+		m_innerClassesByObfSimple = Collections.emptyMap();
+		m_innerClassesByDeobf = Collections.emptyMap();
+		m_fieldsByObf = Collections.emptyMap();
+		m_fieldsByDeobf = Collections.emptyMap();
+		m_methodsByObf = Collections.emptyMap();
+		m_methodsByDeobf = Collections.emptyMap();
+		m_isDirty = true;
+	}
+	
+	public ClassMapping(ClassMapping other) {
+		
+		// deep copy, but keep the by-obf and by-deobf lookups pointing at the same copies
+		m_obfFullName = other.m_obfFullName;
+		m_obfSimpleName = other.m_obfSimpleName;
+		m_deobfName = other.m_deobfName;
+		m_isDirty = other.m_isDirty;
+		
+		Map<ClassMapping,ClassMapping> innerClasses = Maps.newIdentityHashMap();
+		m_innerClassesByObfSimple = newMap(other.m_innerClassesByObfSimple.size());
+		for (Map.Entry<String,ClassMapping> mapEntry : other.m_innerClassesByObfSimple.entrySet()) {
+			ClassMapping innerClassMapping = new ClassMapping(mapEntry.getValue());
+			innerClasses.put(mapEntry.getValue(), innerClassMapping);
+			m_innerClassesByObfSimple.put(mapEntry.getKey(), innerClassMapping);
+		}
+		m_innerClassesByDeobf = newMap(other.m_innerClassesByDeobf.size());
+		for (Map.Entry<String,ClassMapping> mapEntry : other.m_innerClassesByDeobf.entrySet()) {
+			m_innerClassesByDeobf.put(mapEntry.getKey(), innerClasses.get(mapEntry.getValue()));
+		}
+		
+		Map<FieldMapping,FieldMapping> fields = Maps.newIdentityHashMap();
+		m_fieldsByObf = newMap(other.m_fieldsByObf.size());
+		for (Map.Entry<MemberKey,FieldMapping> mapEntry : other.m_fieldsByObf.entrySet()) {
+			FieldMapping fieldMapping = new FieldMapping(mapEntry.getValue());
+			fields.put(mapEntry.getValue(), fieldMapping);
+			m_fieldsByObf.put(mapEntry.getKey(), fieldMapping);
+		}
+		m_fieldsByDeobf = newMap(other.m_fieldsByDeobf.size());
+		for (Map.Entry<MemberKey,FieldMapping> mapEntry : other.m_fieldsByDeobf.entrySet()) {
+			m_fieldsByDeobf.put(mapEntry.getKey(), fields.get(mapEntry.getValue()));
+		}
+		
+		Map<MethodMapping,MethodMapping> methods = Maps.newIdentityHashMap();
+		m_methodsByObf = newMap(other.m_methodsByObf.size());
+		for (Map.Entry<MemberKey,MethodMapping> mapEntry : other.m_methodsByObf.entrySet()) {
+			MethodMapping methodMapping = new MethodMapping(mapEntry.getValue());
+			methods.put(mapEntry.getValue(), methodMapping);
+			m_methodsByObf.put(mapEntry.getKey(), methodMapping);
+		}
+		m_methodsByDeobf = newMap(other.m_methodsByDeobf.size());
+		for (Map.Entry<MemberKey,MethodMapping> mapEntry : other.m_methodsByDeobf.entrySet()) {
+			m_methodsByDeobf.put(mapEntry.getKey(), methods.get(mapEntry.getValue()));
+		}
 	}
 	
 	public String getObfFullName() {
@@ -60,9 +110,30 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void setDeobfName(String val) {
+		m_isDirty = true;
 		m_deobfName = NameValidator.validateClassName(val, false);
 	}
 	
+	public boolean isDirty() {
+		// changes to inner classes count as changes to their outer class
+		if (m_isDirty) {
+			return true;
+		}
+		for (ClassMapping innerClassMapping : m_innerClassesByObfSimple.values()) {
+			if (innerClassMapping.isDirty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void clearDirty() {
+		m_isDirty = false;
+		for (ClassMapping innerClassMapping : m_innerClassesByObfSimple.values()) {
+			innerClassMapping.clearDirty();
+		}
+	}
+	
 	//// INNER CLASSES ////////
 	
 	public Iterable<ClassMapping> innerClasses() {
@@ -71,16 +142,18 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void addInnerClassMapping(ClassMapping classMapping) {
-		boolean obfWasAdded = m_innerClassesByObfSimple.put(classMapping.getObfSimpleName(), classMapping) == null;
+		m_isDirty = true;
+		boolean obfWasAdded = writableInnerClassesByObfSimple().put(classMapping.getObfSimpleName(), classMapping) == null;
 		assert (obfWasAdded);
 		if (classMapping.getDeobfName() != null) {
 			assert (isSimpleClassName(classMapping.getDeobfName()));
-			boolean deobfWasAdded = m_innerClassesByDeobf.put(classMapping.getDeobfName(), classMapping) == null;
+			boolean deobfWasAdded = writableInnerClassesByDeobf().put(classMapping.getDeobfName(), classMapping) == null;
 			assert (deobfWasAdded);
 		}
 	}
 	
 	public void removeInnerClassMapping(ClassMapping classMapping) {
+		m_isDirty = true;
 		boolean obfWasRemoved = m_innerClassesByObfSimple.remove(classMapping.getObfSimpleName()) != null;
 		assert (obfWasRemoved);
 		if (classMapping.getDeobfName() != null) {
@@ -92,8 +165,9 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	public ClassMapping getOrCreateInnerClass(ClassEntry obfInnerClass) {
 		ClassMapping classMapping = m_innerClassesByObfSimple.get(obfInnerClass.getInnermostClassName());
 		if (classMapping == null) {
+			m_isDirty = true;
 			classMapping = new ClassMapping(obfInnerClass.getName());
-			boolean wasAdded = m_innerClassesByObfSimple.put(classMapping.getObfSimpleName(), classMapping) == null;
+			boolean wasAdded = writableInnerClassesByObfSimple().put(classMapping.getObfSimpleName(), classMapping) == null;
 			assert (wasAdded);
 		}
 		return classMapping;
@@ -127,6 +201,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void setInnerClassName(ClassEntry obfInnerClass, String deobfName) {
+		m_isDirty = true;
 		ClassMapping classMapping = getOrCreateInnerClass(obfInnerClass);
 		if (classMapping.getDeobfName() != null) {
 			boolean wasRemoved = m_innerClassesByDeobf.remove(classMapping.getDeobfName()) != null;
@@ -135,7 +210,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		classMapping.setDeobfName(deobfName);
 		if (deobfName != null) {
 			assert (isSimpleClassName(deobfName));
-			boolean wasAdded = m_innerClassesByDeobf.put(deobfName, classMapping) == null;
+			boolean wasAdded = writableInnerClassesByDeobf().put(deobfName, classMapping) == null;
 			assert (wasAdded);
 		}
 	}
@@ -165,22 +240,24 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void addFieldMapping(FieldMapping fieldMapping) {
-		String obfKey = getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType());
+		m_isDirty = true;
+		MemberKey obfKey = getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType());
 		if (m_fieldsByObf.containsKey(obfKey)) {
 			throw new Error("Already have mapping for " + m_obfFullName + "." + obfKey);
 		}
-		String deobfKey = getFieldKey(fieldMapping.getDeobfName(), fieldMapping.getObfType());
+		MemberKey deobfKey = getFieldKey(fieldMapping.getDeobfName(), fieldMapping.getObfType());
 		if (m_fieldsByDeobf.containsKey(deobfKey)) {
 			throw new Error("Already have mapping for " + m_deobfName + "." + deobfKey);
 		}
-		boolean obfWasAdded = m_fieldsByObf.put(obfKey, fieldMapping) == null;
+		boolean obfWasAdded = writableFieldsByObf().put(obfKey, fieldMapping) == null;
 		assert (obfWasAdded);
-		boolean deobfWasAdded = m_fieldsByDeobf.put(deobfKey, fieldMapping) == null;
+		boolean deobfWasAdded = writableFieldsByDeobf().put(deobfKey, fieldMapping) == null;
 		assert (deobfWasAdded);
 		assert (m_fieldsByObf.size() == m_fieldsByDeobf.size());
 	}
 	
 	public void removeFieldMapping(FieldMapping fieldMapping) {
+		m_isDirty = true;
 		boolean obfWasRemoved = m_fieldsByObf.remove(getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType())) != null;
 		assert (obfWasRemoved);
 		if (fieldMapping.getDeobfName() != null) {
@@ -213,23 +290,18 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		return null;
 	}
 	
-	private String getFieldKey(String name, Type type) {
-		if (name == null) {
-			throw new IllegalArgumentException("name cannot be null!");
-		}
-		if (type == null) {
-			throw new IllegalArgumentException("type cannot be null!");
-		}
-		return name + ":" + type;
+	private MemberKey getFieldKey(String name, Type type) {
+		return MemberKey.forField(name, type);
 	}
 	
 	
 	public void setFieldName(String obfName, Type obfType, String deobfName) {
+		m_isDirty = true;
 		assert(deobfName != null);
 		FieldMapping fieldMapping = m_fieldsByObf.get(getFieldKey(obfName, obfType));
 		if (fieldMapping == null) {
 			fieldMapping = new FieldMapping(obfName, obfType, deobfName);
-			boolean obfWasAdded = m_fieldsByObf.put(getFieldKey(obfName, obfType), fieldMapping) == null;
+			boolean obfWasAdded = writableFieldsByObf().put(getFieldKey(obfName, obfType), fieldMapping) == null;
 			assert (obfWasAdded);
 		} else {
 			boolean wasRemoved = m_fieldsByDeobf.remove(getFieldKey(fieldMapping.getDeobfName(), obfType)) != null;
@@ -237,18 +309,19 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		}
 		fieldMapping.setDeobfName(deobfName);
 		if (deobfName != null) {
-			boolean wasAdded = m_fieldsByDeobf.put(getFieldKey(deobfName, obfType), fieldMapping) == null;
+			boolean wasAdded = writableFieldsByDeobf().put(getFieldKey(deobfName, obfType), fieldMapping) == null;
 			assert (wasAdded);
 		}
 	}
 	
 	public void setFieldObfNameAndType(String oldObfName, Type obfType, String newObfName, Type newObfType) {
+		m_isDirty = true;
 		assert(newObfName != null);
 		FieldMapping fieldMapping = m_fieldsByObf.remove(getFieldKey(oldObfName, obfType));
 		assert(fieldMapping != null);
 		fieldMapping.setObfName(newObfName);
 		fieldMapping.setObfType(newObfType);
-		boolean obfWasAdded = m_fieldsByObf.put(getFieldKey(newObfName, newObfType), fieldMapping) == null;
+		boolean obfWasAdded = writableFieldsByObf().put(getFieldKey(newObfName, newObfType), fieldMapping) == null;
 		assert(obfWasAdded);
 	}
 	
@@ -269,24 +342,26 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void addMethodMapping(MethodMapping methodMapping) {
-		String obfKey = getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature());
+		m_isDirty = true;
+		MemberKey obfKey = getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature());
 		if (m_methodsByObf.containsKey(obfKey)) {
 			throw new Error("Already have mapping for " + m_obfFullName + "." + obfKey);
 		}
-		boolean wasAdded = m_methodsByObf.put(obfKey, methodMapping) == null;
+		boolean wasAdded = writableMethodsByObf().put(obfKey, methodMapping) == null;
 		assert (wasAdded);
 		if (methodMapping.getDeobfName() != null) {
-			String deobfKey = getMethodKey(methodMapping.getDeobfName(), methodMapping.getObfSignature());
+			MemberKey deobfKey = getMethodKey(methodMapping.getDeobfName(), methodMapping.getObfSignature());
 			if (m_methodsByDeobf.containsKey(deobfKey)) {
 				throw new Error("Already have mapping for " + m_deobfName + "." + deobfKey);
 			}
-			boolean deobfWasAdded = m_methodsByDeobf.put(deobfKey, methodMapping) == null;
+			boolean deobfWasAdded = writableMethodsByDeobf().put(deobfKey, methodMapping) == null;
 			assert (deobfWasAdded);
 		}
 		assert (m_methodsByObf.size() >= m_methodsByDeobf.size());
 	}
 	
 	public void removeMethodMapping(MethodMapping methodMapping) {
+		m_isDirty = true;
 		boolean obfWasRemoved = m_methodsByObf.remove(getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature())) != null;
 		assert (obfWasRemoved);
 		if (methodMapping.getDeobfName() != null) {
@@ -303,17 +378,12 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		return m_methodsByDeobf.get(getMethodKey(deobfName, obfSignature));
 	}
 	
-	private String getMethodKey(String name, Signature signature) {
-		if (name == null) {
-			throw new IllegalArgumentException("name cannot be null!");
-		}
-		if (signature == null) {
-			throw new IllegalArgumentException("signature cannot be null!");
-		}
-		return name + signature;
+	private MemberKey getMethodKey(String name, Signature signature) {
+		return MemberKey.forMethod(name, signature);
 	}
 	
 	public void setMethodName(String obfName, Signature obfSignature, String deobfName) {
+		m_isDirty = true;
 		MethodMapping methodMapping = m_methodsByObf.get(getMethodKey(obfName, obfSignature));
 		if (methodMapping == null) {
 			methodMapping = createMethodMapping(obfName, obfSignature);
@@ -323,24 +393,26 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		}
 		methodMapping.setDeobfName(deobfName);
 		if (deobfName != null) {
-			boolean wasAdded = m_methodsByDeobf.put(getMethodKey(deobfName, obfSignature), methodMapping) == null;
+			boolean wasAdded = writableMethodsByDeobf().put(getMethodKey(deobfName, obfSignature), methodMapping) == null;
 			assert (wasAdded);
 		}
 	}
 	
 	public void setMethodObfNameAndSignature(String oldObfName, Signature obfSignature, String newObfName, Signature newObfSignature) {
+		m_isDirty = true;
 		assert(newObfName != null);
 		MethodMapping methodMapping = m_methodsByObf.remove(getMethodKey(oldObfName, obfSignature));
 		assert(methodMapping != null);
 		methodMapping.setObfName(newObfName);
 		methodMapping.setObfSignature(newObfSignature);
-		boolean obfWasAdded = m_methodsByObf.put(getMethodKey(newObfName, newObfSignature), methodMapping) == null;
+		boolean obfWasAdded = writableMethodsByObf().put(getMethodKey(newObfName, newObfSignature), methodMapping) == null;
 		assert(obfWasAdded);
 	}
 	
 	//// ARGUMENTS ////////
 	
 	public void setArgumentName(String obfMethodName, Signature obfMethodSignature, int argumentIndex, String argumentName) {
+		m_isDirty = true;
 		assert(argumentName != null);
 		MethodMapping methodMapping = m_methodsByObf.get(getMethodKey(obfMethodName, obfMethodSignature));
 		if (methodMapping == null) {
@@ -350,16 +422,67 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 	}
 	
 	public void removeArgumentName(String obfMethodName, Signature obfMethodSignature, int argumentIndex) {
+		m_isDirty = true;
 		m_methodsByObf.get(getMethodKey(obfMethodName, obfMethodSignature)).removeArgumentName(argumentIndex);
 	}
 	
 	private MethodMapping createMethodMapping(String obfName, Signature obfSignature) {
 		MethodMapping methodMapping = new MethodMapping(obfName, obfSignature);
-		boolean wasAdded = m_methodsByObf.put(getMethodKey(obfName, obfSignature), methodMapping) == null;
+		boolean wasAdded = writableMethodsByObf().put(getMethodKey(obfName, obfSignature), methodMapping) == null;
 		assert (wasAdded);
 		return methodMapping;
 	}
 	
+	private Map<String,ClassMapping> writableInnerClassesByObfSimple() {
+		if (m_innerClassesByObfSimple.isEmpty()) {
+			m_innerClassesByObfSimple = newMap(SmallMapSize);
+		}
+		return m_innerClassesByObfSimple;
+	}
+	
+	private Map<String,ClassMapping> writableInnerClassesByDeobf() {
+		if (m_innerClassesByDeobf.isEmpty()) {
+			m_innerClassesByDeobf = newMap(SmallMapSize);
+		}
+		return m_innerClassesByDeobf;
+	}
+	
+	private Map<MemberKey,FieldMapping> writableFieldsByObf() {
+		if (m_fieldsByObf.isEmpty()) {
+			m_fieldsByObf = newMap(SmallMapSize);
+		}
+		return m_fieldsByObf;
+	}
+	
+	private Map<MemberKey,FieldMapping> writableFieldsByDeobf() {
+		if (m_fieldsByDeobf.isEmpty()) {
+			m_fieldsByDeobf = newMap(SmallMapSize);
+		}
+		return m_fieldsByDeobf;
+	}
+	
+	private Map<MemberKey,MethodMapping> writableMethodsByObf() {
+		if (m_methodsByObf.isEmpty()) {
+			m_methodsByObf = newMap(SmallMapSize);
+		}
+		return m_methodsByObf;
+	}
+	
+	private Map<MemberKey,MethodMapping> writableMethodsByDeobf() {
+		if (m_methodsByDeobf.isEmpty()) {
+			m_methodsByDeobf = newMap(SmallMapSize);
+		}
+		return m_methodsByDeobf;
+	}
+	
+	private static <K,V> Map<K,V> newMap(int size) {
+		// most classes only map a handful of members and many have no inner classes, so don't allocate until needed
+		if (size == 0) {
+			return Collections.emptyMap();
+		}
+		return Maps.newHashMapWithExpectedSize(size);
+	}
+	
 	@Override
 	public String toString() {
 		StringBuilder buf = new StringBuilder();
@@ -405,31 +528,34 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		// rename inner classes
 		for (ClassMapping innerClassMapping : new ArrayList<ClassMapping>(m_innerClassesByObfSimple.values())) {
 			if (innerClassMapping.renameObfClass(oldObfClassName, newObfClassName)) {
+				m_isDirty = true;
 				boolean wasRemoved = m_innerClassesByObfSimple.remove(oldObfClassName) != null;
 				assert (wasRemoved);
-				boolean wasAdded = m_innerClassesByObfSimple.put(newObfClassName, innerClassMapping) == null;
+				boolean wasAdded = writableInnerClassesByObfSimple().put(newObfClassName, innerClassMapping) == null;
 				assert (wasAdded);
 			}
 		}
 		
 		// rename field types
 		for (FieldMapping fieldMapping : new ArrayList<FieldMapping>(m_fieldsByObf.values())) {
-			String oldFieldKey = getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType());
+			MemberKey oldFieldKey = getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType());
 			if (fieldMapping.renameObfClass(oldObfClassName, newObfClassName)) {
+				m_isDirty = true;
 				boolean wasRemoved = m_fieldsByObf.remove(oldFieldKey) != null;
 				assert (wasRemoved);
-				boolean wasAdded = m_fieldsByObf.put(getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType()), fieldMapping) == null;
+				boolean wasAdded = writableFieldsByObf().put(getFieldKey(fieldMapping.getObfName(), fieldMapping.getObfType()), fieldMapping) == null;
 				assert (wasAdded);
 			}
 		}
 		
 		// rename method signatures
 		for (MethodMapping methodMapping : new ArrayList<MethodMapping>(m_methodsByObf.values())) {
-			String oldMethodKey = getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature());
+			MemberKey oldMethodKey = getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature());
 			if (methodMapping.renameObfClass(oldObfClassName, newObfClassName)) {
+				m_isDirty = true;
 				boolean wasRemoved = m_methodsByObf.remove(oldMethodKey) != null;
 				assert (wasRemoved);
-				boolean wasAdded = m_methodsByObf.put(getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature()), methodMapping) == null;
+				boolean wasAdded = writableMethodsByObf().put(getMethodKey(methodMapping.getObfName(), methodMapping.getObfSignature()), methodMapping) == null;
 				assert (wasAdded);
 			}
 		}
@@ -437,6 +563,7 @@ public class ClassMapping implements Serializable, Comparable<ClassMapping> {
 		if (m_obfFullName.equals(oldObfClassName)) {
 			// rename this class
 			m_obfFullName = newObfClassName;
+			m_isDirty = true;
 			return true;
 		}
 		return false;
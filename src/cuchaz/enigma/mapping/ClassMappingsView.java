@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+
+// outer class mappings keyed the way a translator wants them, without building a new map
+// deobfuscating looks up by obf name, obfuscating looks up by deobf name, or by obf name if there's no deobf name
+// changes are applied over the class mappings, absent means the key went away
+class ClassMappingsView extends AbstractMap<String,ClassMapping> {
+	
+	private TranslationDirection m_direction;
+	private Map<String,ClassMapping> m_classesByObf;
+	private Map<String,ClassMapping> m_classesByDeobf;
+	private Map<String,Optional<ClassMapping>> m_changes;
+	
+	public ClassMappingsView(TranslationDirection direction, Map<String,ClassMapping> classesByObf, Map<String,ClassMapping> classesByDeobf) {
+		this(direction, classesByObf, classesByDeobf, Collections.<String,Optional<ClassMapping>>emptyMap());
+	}
+	
+	public ClassMappingsView(TranslationDirection direction, Map<String,ClassMapping> classesByObf, Map<String,ClassMapping> classesByDeobf, Map<String,Optional<ClassMapping>> changes) {
+		m_direction = direction;
+		m_classesByObf = classesByObf;
+		m_classesByDeobf = classesByDeobf;
+		m_changes = changes;
+	}
+	
+	public static String getKey(TranslationDirection direction, ClassMapping classMapping) {
+		if (direction == TranslationDirection.Obfuscating && classMapping.getDeobfName() != null) {
+			return classMapping.getDeobfName();
+		}
+		return classMapping.getObfFullName();
+	}
+	
+	@Override
+	public ClassMapping get(Object key) {
+		
+		Optional<ClassMapping> changedClassMapping = m_changes.get(key);
+		if (changedClassMapping != null) {
+			return changedClassMapping.orNull();
+		}
+		
+		switch (m_direction) {
+			case Deobfuscating:
+				return m_classesByObf.get(key);
+			case Obfuscating:
+				ClassMapping classMapping = m_classesByDeobf.get(key);
+				if (classMapping != null) {
+					return classMapping;
+				}
+				classMapping = m_classesByObf.get(key);
+				if (classMapping != null && classMapping.getDeobfName() == null) {
+					return classMapping;
+				}
+				return null;
+			default:
+				throw new Error("Invalid translation direction!");
+		}
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+	
+	@Override
+	public Set<Map.Entry<String,ClassMapping>> entrySet() {
+		
+		// this walks every class, so callers that need all of them more than once should keep the result
+		Map<String,ClassMapping> entries = Maps.newHashMap();
+		for (ClassMapping classMapping : m_classesByObf.values()) {
+			String key = getKey(m_direction, classMapping);
+			if (!m_changes.containsKey(key)) {
+				entries.put(key, classMapping);
+			}
+		}
+		for (Map.Entry<String,Optional<ClassMapping>> mapEntry : m_changes.entrySet()) {
+			if (mapEntry.getValue().isPresent()) {
+				entries.put(mapEntry.getKey(), mapEntry.getValue().get());
+			}
+		}
+		return Collections.unmodifiableMap(entries).entrySet();
+	}
+}
@@ -20,6 +20,7 @@ public class ConstructorEntry implements BehaviorEntry, Serializable {
 	
 	private ClassEntry m_classEntry;
 	private Signature m_signature;
+	private transient int m_hashCode;
 	
 	public ConstructorEntry(ClassEntry classEntry) {
 		this(classEntry, null);
@@ -73,16 +74,19 @@ public class ConstructorEntry implements BehaviorEntry, Serializable {
 	
 	@Override
 	public ConstructorEntry cloneToNewClass(ClassEntry classEntry) {
-		return new ConstructorEntry(this, classEntry.getName());
+		return new ConstructorEntry(classEntry, m_signature);
 	}
 	
 	@Override
 	public int hashCode() {
-		if (isStatic()) {
-			return Util.combineHashesOrdered(m_classEntry);
-		} else {
-			return Util.combineHashesOrdered(m_classEntry, m_signature);
+		if (m_hashCode == 0) {
+			if (isStatic()) {
+				m_hashCode = Util.combineHashesOrdered(m_classEntry);
+			} else {
+				m_hashCode = Util.combineHashesOrdered(m_classEntry, m_signature);
+			}
 		}
+		return m_hashCode;
 	}
 	
 	@Override
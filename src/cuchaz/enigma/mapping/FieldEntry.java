@@ -21,6 +21,7 @@ public class FieldEntry implements Entry, Serializable {
 	private ClassEntry m_classEntry;
 	private String m_name;
 	private Type m_type;
+	private transient int m_hashCode;
 	
 	// NOTE: this argument order is important for the MethodReader/MethodWriter
 	public FieldEntry(ClassEntry classEntry, String name, Type type) {
@@ -75,7 +76,11 @@ public class FieldEntry implements Entry, Serializable {
 	
 	@Override
 	public int hashCode() {
-		return Util.combineHashesOrdered(m_classEntry, m_name, m_type);
+		// entries are immutable and hashed constantly, so only combine the hashes once
+		if (m_hashCode == 0) {
+			m_hashCode = Util.combineHashesOrdered(m_classEntry, m_name, m_type);
+		}
+		return m_hashCode;
 	}
 	
 	@Override
@@ -26,6 +26,12 @@ public class FieldMapping implements Serializable, Comparable<FieldMapping>, Mem
 		m_obfType = obfType;
 	}
 	
+	public FieldMapping(FieldMapping other) {
+		m_obfName = other.m_obfName;
+		m_deobfName = other.m_deobfName;
+		m_obfType = other.m_obfType;
+	}
+	
 	public FieldMapping(FieldMapping other, ClassNameReplacer obfClassNameReplacer) {
 		m_obfName = other.m_obfName;
 		m_deobfName = other.m_deobfName;
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+
+// class mappings by name, only read from the binary mappings when they're looked up
+// lookups load classes, so even reads take the lock
+class LazyClassMap extends AbstractMap<String,ClassMapping> implements Serializable {
+	
+	private static final long serialVersionUID = 2311845128530279311L;
+	
+	private MappingsBinaryReader.ClassSource m_source;
+	private Map<String,Integer> m_unloaded;
+	private Map<String,ClassMapping> m_loaded;
+	
+	public LazyClassMap(MappingsBinaryReader.ClassSource source, Map<String,Integer> unloaded) {
+		m_source = source;
+		m_unloaded = unloaded;
+		m_loaded = Maps.newHashMap();
+	}
+	
+	@Override
+	public synchronized ClassMapping get(Object key) {
+		ClassMapping classMapping = m_loaded.get(key);
+		if (classMapping == null) {
+			Integer i = m_unloaded.remove(key);
+			if (i != null) {
+				classMapping = m_source.getClass(i);
+				m_loaded.put((String)key, classMapping);
+			}
+		}
+		return classMapping;
+	}
+	
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return m_loaded.containsKey(key) || m_unloaded.containsKey(key);
+	}
+	
+	@Override
+	public synchronized ClassMapping put(String key, ClassMapping classMapping) {
+		ClassMapping oldClassMapping = get(key);
+		m_loaded.put(key, classMapping);
+		return oldClassMapping;
+	}
+	
+	@Override
+	public synchronized ClassMapping remove(Object key) {
+		ClassMapping oldClassMapping = get(key);
+		m_loaded.remove(key);
+		return oldClassMapping;
+	}
+	
+	@Override
+	public synchronized int size() {
+		return m_loaded.size() + m_unloaded.size();
+	}
+	
+	@Override
+	public synchronized Set<Map.Entry<String,ClassMapping>> entrySet() {
+		// anyone walking all the classes needs all of them anyway
+		for (String key : new ArrayList<String>(m_unloaded.keySet())) {
+			get(key);
+		}
+		// other threads can load classes while the caller walks these, so they get a copy
+		return Collections.unmodifiableMap(Maps.newHashMap(m_loaded)).entrySet();
+	}
+	
+	public synchronized LazyClassMap copy() {
+		// the copy shares the class source, so it gets the same class mappings for the same names
+		LazyClassMap copy = new LazyClassMap(m_source, Maps.newHashMap(m_unloaded));
+		copy.m_loaded.putAll(m_loaded);
+		return copy;
+	}
+	
+	private Object writeReplace() {
+		// don't try to serialize the mapped file
+		return Maps.newHashMap(this);
+	}
+}
@@ -10,20 +10,33 @@
  ******************************************************************************/
 package cuchaz.enigma.mapping;
 
+import java.io.File;
+
 public class MappingParseException extends Exception {
 	
 	private static final long serialVersionUID = -5487280332892507236L;
 	
+	private File m_file;
 	private int m_line;
 	private String m_message;
 	
 	public MappingParseException(int line, String message) {
+		m_file = null;
 		m_line = line;
 		m_message = message;
 	}
 	
+	public MappingParseException(File file, MappingParseException other) {
+		m_file = file;
+		m_line = other.m_line;
+		m_message = other.m_message;
+	}
+	
 	@Override
 	public String getMessage() {
+		if (m_file != null) {
+			return m_file + ", Line " + m_line + ": " + m_message;
+		}
 		return "Line " + m_line + ": " + m_message;
 	}
 }
@@ -13,6 +13,7 @@ package cuchaz.enigma.mapping;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -21,6 +22,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import cuchaz.enigma.analysis.TranslatedIndex;
 import cuchaz.enigma.analysis.TranslationIndex;
 
 public class Mappings implements Serializable {
@@ -35,6 +37,11 @@ public class Mappings implements Serializable {
 		m_classesByDeobf = Maps.newHashMap();
 	}
 	
+	Mappings(Map<String,ClassMapping> classesByObf, Map<String,ClassMapping> classesByDeobf) {
+		m_classesByObf = classesByObf;
+		m_classesByDeobf = classesByDeobf;
+	}
+	
 	public Mappings(Iterable<ClassMapping> classes) {
 		this();
 		
@@ -75,6 +82,32 @@ public class Mappings implements Serializable {
 		}
 	}
 	
+	void replaceClassMapping(ClassMapping classMapping) {
+		// swap in a different instance of the same class mapping, eg a copy
+		boolean obfWasReplaced = m_classesByObf.put(classMapping.getObfFullName(), classMapping) != null;
+		assert (obfWasReplaced);
+		if (classMapping.getDeobfName() != null) {
+			boolean deobfWasReplaced = m_classesByDeobf.put(classMapping.getDeobfName(), classMapping) != null;
+			assert (deobfWasReplaced);
+		}
+	}
+	
+	Map<String,ClassMapping> copyClassesByObf() {
+		return copyClasses(m_classesByObf);
+	}
+	
+	Map<String,ClassMapping> copyClassesByDeobf() {
+		return copyClasses(m_classesByDeobf);
+	}
+	
+	private Map<String,ClassMapping> copyClasses(Map<String,ClassMapping> classes) {
+		// only the map gets copied, not the class mappings, and lazy maps stay lazy
+		if (classes instanceof LazyClassMap) {
+			return Collections.unmodifiableMap(((LazyClassMap)classes).copy());
+		}
+		return Collections.unmodifiableMap(Maps.newHashMap(classes));
+	}
+	
 	public ClassMapping getClassByObf(ClassEntry entry) {
 		return getClassByObf(entry.getName());
 	}
@@ -123,7 +156,7 @@ public class Mappings implements Serializable {
 				
 				// translate the translation index
 				// NOTE: this isn't actually recursive
-				TranslationIndex deobfIndex = new TranslationIndex(index, getTranslator(TranslationDirection.Deobfuscating, index));
+				TranslationIndex deobfIndex = new TranslatedIndex(index, getTranslator(TranslationDirection.Deobfuscating, index));
 				
 				return new Translator(direction, classes, deobfIndex);
 				
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import cuchaz.enigma.Util;
+
+public class MappingsBinaryReader {
+	
+	public static final Charset Utf8 = Charset.forName("UTF-8");
+	
+	// reads class records out of the mapped file when someone first asks for them
+	static class ClassSource {
+		
+		private File m_file;
+		private ByteBuffer m_buf;
+		private int m_stringOffsetsPos;
+		private int m_stringsPos;
+		private int m_recordsPos;
+		private int[] m_recordOffsets;
+		private String[] m_strings;
+		private Type[] m_types;
+		private Signature[] m_signatures;
+		private ClassMapping[] m_classes;
+		
+		private ClassSource(File file, ByteBuffer buf) {
+			m_file = file;
+			m_buf = buf;
+		}
+		
+		public synchronized ClassMapping getClass(int i) {
+			if (m_classes[i] == null) {
+				try {
+					ByteBuffer buf = m_buf.duplicate();
+					buf.position(m_recordsPos + m_recordOffsets[i]);
+					m_classes[i] = readClass(buf);
+					m_classes[i].clearDirty();
+				} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+					throw new Error("Binary mappings are corrupt: " + m_file, ex);
+				}
+			}
+			return m_classes[i];
+		}
+		
+		private ClassMapping readClass(ByteBuffer buf) {
+			ClassMapping classMapping = new ClassMapping(getString(buf.getInt()), getString(buf.getInt()));
+			
+			int numInnerClasses = buf.getInt();
+			for (int i=0; i<numInnerClasses; i++) {
+				classMapping.addInnerClassMapping(readClass(buf));
+			}
+			
+			int numFields = buf.getInt();
+			for (int i=0; i<numFields; i++) {
+				String obfName = getString(buf.getInt());
+				String deobfName = getString(buf.getInt());
+				classMapping.addFieldMapping(new FieldMapping(obfName, getType(buf.getInt()), deobfName));
+			}
+			
+			int numMethods = buf.getInt();
+			for (int i=0; i<numMethods; i++) {
+				String obfName = getString(buf.getInt());
+				String deobfName = getString(buf.getInt());
+				MethodMapping methodMapping = new MethodMapping(obfName, getSignature(buf.getInt()), deobfName);
+				int numArguments = buf.getInt();
+				for (int j=0; j<numArguments; j++) {
+					int index = buf.getInt();
+					methodMapping.addArgumentMapping(new ArgumentMapping(index, getString(buf.getInt())));
+				}
+				classMapping.addMethodMapping(methodMapping);
+			}
+			
+			return classMapping;
+		}
+		
+		private String getString(int id) {
+			if (id < 0) {
+				return null;
+			}
+			if (m_strings[id] == null) {
+				int start = m_buf.getInt(m_stringOffsetsPos + id*4);
+				int stop = m_buf.getInt(m_stringOffsetsPos + id*4 + 4);
+				byte[] bytes = new byte[stop - start];
+				ByteBuffer buf = m_buf.duplicate();
+				buf.position(m_stringsPos + start);
+				buf.get(bytes);
+				m_strings[id] = new String(bytes, Utf8);
+			}
+			return m_strings[id];
+		}
+		
+		private Type getType(int id) {
+			// lots of members share descriptors, so only parse each one once
+			if (m_types == null) {
+				m_types = new Type[m_strings.length];
+			}
+			if (m_types[id] == null) {
+				m_types[id] = new Type(getString(id));
+			}
+			return m_types[id];
+		}
+		
+		private Signature getSignature(int id) {
+			if (m_signatures == null) {
+				m_signatures = new Signature[m_strings.length];
+			}
+			if (m_signatures[id] == null) {
+				m_signatures[id] = new Signature(getString(id));
+			}
+			return m_signatures[id];
+		}
+	}
+	
+	public static boolean isBinary(File file)
+	throws IOException {
+		if (file.length() < 4) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return in.readInt() == MappingsBinaryWriter.Magic;
+		}
+	}
+	
+	public Mappings read(File file)
+	throws IOException {
+		
+		// map the whole file, only the index gets read now
+		MappedByteBuffer buf;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Mappings are too big to map: " + file);
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			Util.closeQuietly(raf);
+		}
+		
+		ClassSource source = new ClassSource(file, buf);
+		Map<String,Integer> classesByObf = Maps.newHashMap();
+		Map<String,Integer> classesByDeobf = Maps.newHashMap();
+		try {
+			
+			if (buf.getInt() != MappingsBinaryWriter.Magic) {
+				throw new IOException("Not a binary mappings file: " + file);
+			}
+			int version = buf.getInt();
+			if (version != MappingsBinaryWriter.Version) {
+				throw new IOException("Unsupported binary mappings version " + version + ": " + file);
+			}
+			
+			// skip over the string table
+			int numStrings = buf.getInt();
+			source.m_strings = new String[numStrings];
+			source.m_stringOffsetsPos = buf.position();
+			buf.position(source.m_stringOffsetsPos + numStrings*4);
+			int stringsSize = buf.getInt();
+			source.m_stringsPos = buf.position();
+			buf.position(source.m_stringsPos + stringsSize);
+			
+			// read the class index
+			int numClasses = buf.getInt();
+			source.m_recordOffsets = new int[numClasses];
+			source.m_classes = new ClassMapping[numClasses];
+			for (int i=0; i<numClasses; i++) {
+				classesByObf.put(source.getString(buf.getInt()), i);
+				String deobfName = source.getString(buf.getInt());
+				if (deobfName != null) {
+					classesByDeobf.put(deobfName, i);
+				}
+				source.m_recordOffsets[i] = buf.getInt();
+			}
+			buf.getInt();
+			source.m_recordsPos = buf.position();
+		
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+			throw new IOException("Binary mappings are corrupt: " + file, ex);
+		}
+		
+		return new Mappings(new LazyClassMap(source, classesByObf), new LazyClassMap(source, classesByDeobf));
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import cuchaz.enigma.Util;
+
+public class MappingsBinaryWriter {
+	
+	/* file layout, all big-endian:
+		int magic, int version
+		string table: int numStrings, int offsets[numStrings + 1], utf-8 bytes
+		class index: int numClasses, (int obfName, int deobfName, int recordOffset)[numClasses]
+		class records: int size, then one record per outer class, inner classes nested inside
+		strings are referenced by their index in the string table, -1 means null
+	*/
+	public static final int Magic = 0x454d4150; // "EMAP"
+	public static final int Version = 1;
+	
+	private Map<String,Integer> m_stringIds;
+	
+	public void write(File file, final Mappings mappings)
+	throws IOException {
+		Util.writeAtomically(file, new Util.FileContents() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				MappingsBinaryWriter.this.write(out, mappings);
+			}
+		});
+		
+		// the file has everything now
+		for (ClassMapping classMapping : mappings.classes()) {
+			classMapping.clearDirty();
+		}
+	}
+	
+	public void write(OutputStream out, Mappings mappings)
+	throws IOException {
+		
+		m_stringIds = Maps.newLinkedHashMap();
+		
+		// write the class records first, so we know where they all start
+		List<ClassMapping> classes = sorted(mappings.classes());
+		ByteArrayOutputStream recordsBuf = new ByteArrayOutputStream();
+		DataOutputStream records = new DataOutputStream(recordsBuf);
+		int[] recordOffsets = new int[classes.size()];
+		for (int i=0; i<classes.size(); i++) {
+			recordOffsets[i] = records.size();
+			writeClass(records, classes.get(i));
+		}
+		records.flush();
+		
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+		dout.writeInt(Magic);
+		dout.writeInt(Version);
+		
+		// string table
+		List<byte[]> strings = new ArrayList<byte[]>(m_stringIds.size());
+		for (String string : m_stringIds.keySet()) {
+			strings.add(string.getBytes(MappingsBinaryReader.Utf8));
+		}
+		dout.writeInt(strings.size());
+		int offset = 0;
+		for (byte[] string : strings) {
+			dout.writeInt(offset);
+			offset += string.length;
+		}
+		dout.writeInt(offset);
+		for (byte[] string : strings) {
+			dout.write(string);
+		}
+		
+		// class index
+		dout.writeInt(classes.size());
+		for (int i=0; i<classes.size(); i++) {
+			dout.writeInt(getStringId(classes.get(i).getObfFullName()));
+			dout.writeInt(getStringId(classes.get(i).getDeobfName()));
+			dout.writeInt(recordOffsets[i]);
+		}
+		
+		// class records
+		dout.writeInt(recordsBuf.size());
+		recordsBuf.writeTo(dout);
+		dout.flush();
+		
+		m_stringIds = null;
+	}
+	
+	private void writeClass(DataOutputStream out, ClassMapping classMapping)
+	throws IOException {
+		out.writeInt(getStringId(classMapping.getObfFullName()));
+		out.writeInt(getStringId(classMapping.getDeobfName()));
+		
+		List<ClassMapping> innerClasses = sorted(classMapping.innerClasses());
+		out.writeInt(innerClasses.size());
+		for (ClassMapping innerClassMapping : innerClasses) {
+			writeClass(out, innerClassMapping);
+		}
+		
+		List<FieldMapping> fields = sorted(classMapping.fields());
+		out.writeInt(fields.size());
+		for (FieldMapping fieldMapping : fields) {
+			out.writeInt(getStringId(fieldMapping.getObfName()));
+			out.writeInt(getStringId(fieldMapping.getDeobfName()));
+			out.writeInt(getStringId(fieldMapping.getObfType().toString()));
+		}
+		
+		List<MethodMapping> methods = sorted(classMapping.methods());
+		out.writeInt(methods.size());
+		for (MethodMapping methodMapping : methods) {
+			out.writeInt(getStringId(methodMapping.getObfName()));
+			out.writeInt(getStringId(methodMapping.getDeobfName()));
+			out.writeInt(getStringId(methodMapping.getObfSignature().toString()));
+			List<ArgumentMapping> arguments = sorted(methodMapping.arguments());
+			out.writeInt(arguments.size());
+			for (ArgumentMapping argumentMapping : arguments) {
+				out.writeInt(argumentMapping.getIndex());
+				out.writeInt(getStringId(argumentMapping.getName()));
+			}
+		}
+	}
+	
+	private int getStringId(String string) {
+		if (string == null) {
+			return -1;
+		}
+		Integer id = m_stringIds.get(string);
+		if (id == null) {
+			id = m_stringIds.size();
+			m_stringIds.put(string, id);
+		}
+		return id;
+	}
+	
+	private <T extends Comparable<T>> List<T> sorted(Iterable<T> classes) {
+		List<T> out = new ArrayList<T>();
+		for (T t : classes) {
+			out.add(t);
+		}
+		Collections.sort(out);
+		return out;
+	}
+}
@@ -10,7 +10,13 @@
  ******************************************************************************/
 package cuchaz.enigma.mapping;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -21,6 +27,8 @@ import cuchaz.enigma.analysis.RelatedMethodChecker;
 
 public class MappingsChecker {
 	
+	private static final int MinParallelClasses = 256;
+	
 	private JarIndex m_index;
 	private RelatedMethodChecker m_relatedMethodChecker;
 	private Map<ClassEntry,ClassMapping> m_droppedClassMappings;
@@ -58,11 +66,118 @@ public class MappingsChecker {
 	}
 	
 	public void dropBrokenMappings(Mappings mappings) {
-		for (ClassMapping classMapping : Lists.newArrayList(mappings.classes())) {
-			if (!checkClassMapping(classMapping)) {
-				mappings.removeClassMapping(classMapping);
-				m_droppedClassMappings.put(EntryFactory.getObfClassEntry(m_index, classMapping), classMapping);
+		dropBrokenMappings(mappings, getNumThreads(mappings.classes()));
+	}
+	
+	public void dropBrokenMappings(Mappings mappings, int numThreads) {
+		findBrokenMappings(mappings.classes(), numThreads);
+		dropFoundMappings(mappings);
+	}
+	
+	public void findBrokenMappings(Collection<ClassMapping> classMappings) {
+		findBrokenMappings(classMappings, getNumThreads(classMappings));
+	}
+	
+	private int getNumThreads(Collection<ClassMapping> classMappings) {
+		// below this many classes, starting threads costs more than it saves
+		if (classMappings.size() < MinParallelClasses) {
+			return 1;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+	
+	public void findBrokenMappings(Collection<ClassMapping> classMappings, int numThreads) {
+		
+		// this only reads the class mappings, so they can come from a snapshot while the real mappings keep changing
+		List<ClassMapping> in = Lists.newArrayList(classMappings);
+		if (numThreads <= 1) {
+			for (ClassMapping classMapping : in) {
+				checkOuterClassMapping(classMapping);
+			}
+			return;
+		}
+		
+		// each worker checks its own top-level classes against the index, which nothing changes anymore
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			List<Callable<MappingsChecker>> tasks = Lists.newArrayList();
+			int chunkSize = Math.max(1, in.size()/(numThreads*4));
+			for (final List<ClassMapping> chunk : Lists.partition(in, chunkSize)) {
+				tasks.add(new Callable<MappingsChecker>() {
+					@Override
+					public MappingsChecker call() {
+						MappingsChecker partial = new MappingsChecker(m_index);
+						for (ClassMapping classMapping : chunk) {
+							partial.checkOuterClassMapping(classMapping);
+						}
+						return partial;
+					}
+				});
 			}
+			for (Future<MappingsChecker> future : pool.invokeAll(tasks)) {
+				MappingsChecker partial = future.get();
+				m_droppedClassMappings.putAll(partial.m_droppedClassMappings);
+				m_droppedInnerClassMappings.putAll(partial.m_droppedInnerClassMappings);
+				m_droppedFieldMappings.putAll(partial.m_droppedFieldMappings);
+				m_droppedMethodMappings.putAll(partial.m_droppedMethodMappings);
+				m_relatedMethodChecker.addAll(partial.m_relatedMethodChecker);
+			}
+		} catch (InterruptedException ex) {
+			throw new Error(ex);
+		} catch (ExecutionException ex) {
+			throw new Error("Unable to check mappings!", ex.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	public void dropFoundMappings(Mappings mappings) {
+		
+		// look everything up again by obf name, the mappings we found might have been copies
+		for (ClassMapping classMapping : m_droppedClassMappings.values()) {
+			ClassMapping liveClassMapping = mappings.getClassByObf(classMapping.getObfFullName());
+			if (liveClassMapping != null) {
+				mappings.removeClassMapping(liveClassMapping);
+			}
+		}
+		for (ClassMapping classMapping : m_droppedInnerClassMappings.values()) {
+			ClassEntry obfClassEntry = new ClassEntry(classMapping.getObfFullName());
+			ClassMapping outerClassMapping = getClassMapping(mappings, obfClassEntry.getOuterClassEntry());
+			if (outerClassMapping != null) {
+				ClassMapping liveClassMapping = outerClassMapping.getInnerClassByObfSimple(classMapping.getObfSimpleName());
+				if (liveClassMapping != null) {
+					outerClassMapping.removeInnerClassMapping(liveClassMapping);
+				}
+			}
+		}
+		for (Map.Entry<FieldEntry,FieldMapping> mapEntry : m_droppedFieldMappings.entrySet()) {
+			ClassMapping classMapping = getClassMapping(mappings, mapEntry.getKey().getClassEntry());
+			if (classMapping != null) {
+				FieldMapping liveFieldMapping = classMapping.getFieldByObf(mapEntry.getValue().getObfName(), mapEntry.getValue().getObfType());
+				if (liveFieldMapping != null) {
+					classMapping.removeFieldMapping(liveFieldMapping);
+				}
+			}
+		}
+		for (Map.Entry<BehaviorEntry,MethodMapping> mapEntry : m_droppedMethodMappings.entrySet()) {
+			ClassMapping classMapping = getClassMapping(mappings, mapEntry.getKey().getClassEntry());
+			if (classMapping != null) {
+				MethodMapping liveMethodMapping = classMapping.getMethodByObf(mapEntry.getValue().getObfName(), mapEntry.getValue().getObfSignature());
+				if (liveMethodMapping != null) {
+					classMapping.removeMethodMapping(liveMethodMapping);
+				}
+			}
+		}
+	}
+	
+	private ClassMapping getClassMapping(Mappings mappings, ClassEntry obfClassEntry) {
+		List<ClassMapping> mappingChain = mappings.getClassMappingChain(obfClassEntry);
+		return mappingChain.get(mappingChain.size() - 1);
+	}
+	
+	private void checkOuterClassMapping(ClassMapping classMapping) {
+		if (!checkClassMapping(classMapping)) {
+			m_droppedClassMappings.put(EntryFactory.getObfClassEntry(m_index, classMapping), classMapping);
 		}
 	}
 	
@@ -75,29 +190,27 @@ public class MappingsChecker {
 		}
 		
 		// check the fields
-		for (FieldMapping fieldMapping : Lists.newArrayList(classMapping.fields())) {
+		for (FieldMapping fieldMapping : classMapping.fields()) {
 			FieldEntry obfFieldEntry = EntryFactory.getObfFieldEntry(classMapping, fieldMapping);
 			if (!m_index.containsObfField(obfFieldEntry)) {
-				classMapping.removeFieldMapping(fieldMapping);
 				m_droppedFieldMappings.put(obfFieldEntry, fieldMapping);
 			}
 		}
 		
 		// check methods
-		for (MethodMapping methodMapping : Lists.newArrayList(classMapping.methods())) {
+		for (MethodMapping methodMapping : classMapping.methods()) {
 			BehaviorEntry obfBehaviorEntry = EntryFactory.getObfBehaviorEntry(classEntry, methodMapping);
 			if (!m_index.containsObfBehavior(obfBehaviorEntry)) {
-				classMapping.removeMethodMapping(methodMapping);
 				m_droppedMethodMappings.put(obfBehaviorEntry, methodMapping);
+			} else {
+				// dropped methods have nothing related to them in the jar
+				m_relatedMethodChecker.checkMethod(classEntry, methodMapping);
 			}
-			
-			m_relatedMethodChecker.checkMethod(classEntry, methodMapping);
 		}
 		
 		// check inner classes
-		for (ClassMapping innerClassMapping : Lists.newArrayList(classMapping.innerClasses())) {
+		for (ClassMapping innerClassMapping : classMapping.innerClasses()) {
 			if (!checkClassMapping(innerClassMapping)) {
-				classMapping.removeInnerClassMapping(innerClassMapping);
 				m_droppedInnerClassMappings.put(EntryFactory.getObfClassEntry(m_index, innerClassMapping), innerClassMapping);
 			}
 		}
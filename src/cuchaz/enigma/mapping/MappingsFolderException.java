@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.File;
+import java.io.IOException;
+
+public class MappingsFolderException extends IOException {
+	
+	private static final long serialVersionUID = 3361547236427415734L;
+	
+	public MappingsFolderException(File dir, String message) {
+		super(dir + ": " + message);
+	}
+}
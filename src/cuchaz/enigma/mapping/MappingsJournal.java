@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.Util;
+
+public class MappingsJournal {
+	
+	/* file layout, all big-endian:
+		int magic, int version
+		records: int size, payload bytes, int crc32 of the payload
+		a record that's cut short or fails its checksum ends the journal
+	*/
+	private static final int Magic = 0x454a524e; // "EJRN"
+	private static final int Version = 1;
+	private static final int HeaderSize = 8;
+	private static final int MaxRecordSize = 1 << 20;
+	
+	private static final int ClassKind = 0;
+	private static final int FieldKind = 1;
+	private static final int MethodKind = 2;
+	private static final int ConstructorKind = 3;
+	private static final int ArgumentKind = 4;
+	
+	// flushing to the OS happens on every record, but hitting the disk is slow, so do that in batches
+	public static final int SyncBatchSize = 64;
+	public static final long SyncIntervalMillis = 2000;
+	
+	// syncs the last batch when nothing else comes along to do it, shared by all the journals
+	private static final ScheduledExecutorService SyncTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Mappings journal sync");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	public static enum Op {
+		Rename,
+		Remove,
+		Mark;
+	}
+	
+	public static class Record {
+		
+		public final Op op;
+		public final Entry obfEntry;
+		public final String name;
+		
+		public Record(Op op, Entry obfEntry, String name) {
+			this.op = op;
+			this.obfEntry = obfEntry;
+			this.name = name;
+		}
+		
+		@Override
+		public String toString() {
+			return op + " " + obfEntry + (name != null ? " -> " + name : "");
+		}
+	}
+	
+	private File m_file;
+	private RandomAccessFile m_raf;
+	private int m_numUnsynced;
+	private long m_lastSyncTime;
+	private ScheduledFuture<?> m_scheduledSync;
+	private boolean m_isClosed;
+	
+	public static File getFile(File mappingsFile) {
+		return new File(mappingsFile.getPath() + ".journal");
+	}
+	
+	public MappingsJournal(File file) {
+		// the file only gets made when there's a record to put in it
+		m_file = file;
+		m_raf = null;
+		m_numUnsynced = 0;
+		m_lastSyncTime = System.currentTimeMillis();
+		m_scheduledSync = null;
+		m_isClosed = false;
+	}
+	
+	public static List<Record> recover(File file) {
+		// a journal we can't read shouldn't stop the mappings from opening, but keep it in case someone wants it
+		try {
+			return read(file);
+		} catch (IOException | RuntimeException ex) {
+			File badFile = new File(file.getPath() + ".bad");
+			System.err.println("WARNING: Unable to read mappings journal " + file + ", moving it to " + badFile + ": " + ex.getMessage());
+			try {
+				Files.move(file.toPath(), badFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException ex2) {
+				System.err.println("WARNING: Unable to move mappings journal " + file + ": " + ex2.getMessage());
+			}
+			return Lists.newArrayList();
+		}
+	}
+	
+	public static List<Record> read(File file)
+	throws IOException {
+		List<Record> records = Lists.newArrayList();
+		if (!file.exists()) {
+			return records;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			findEnd(raf, records);
+		} finally {
+			Util.closeQuietly(raf);
+		}
+		return records;
+	}
+	
+	public File getFile() {
+		return m_file;
+	}
+	
+	public synchronized void append(Op op, Entry obfEntry, String name)
+	throws IOException {
+		
+		if (m_isClosed) {
+			throw new IOException("Mappings journal is closed: " + m_file);
+		}
+		if (m_raf == null) {
+			open();
+		}
+		
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buf);
+		out.writeByte(op.ordinal());
+		writeEntry(out, obfEntry);
+		writeString(out, name);
+		out.flush();
+		
+		// write the whole record at once, so a crash can only cut off the end of it
+		byte[] payload = buf.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		buf = new ByteArrayOutputStream(payload.length + 8);
+		out = new DataOutputStream(buf);
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.writeInt((int)crc.getValue());
+		out.flush();
+		m_raf.write(buf.toByteArray());
+		
+		m_numUnsynced++;
+		if (m_numUnsynced >= SyncBatchSize || System.currentTimeMillis() - m_lastSyncTime >= SyncIntervalMillis) {
+			sync();
+		} else if (m_scheduledSync == null) {
+			// if the user stops renaming things, the rest of the batch still has to hit the disk eventually
+			m_scheduledSync = SyncTimer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					syncScheduled();
+				}
+			}, SyncIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	private synchronized void syncScheduled() {
+		m_scheduledSync = null;
+		if (m_isClosed || m_raf == null) {
+			return;
+		}
+		try {
+			sync();
+		} catch (IOException ex) {
+			System.err.println("WARNING: Unable to sync mappings journal " + m_file + ": " + ex.getMessage());
+		}
+	}
+	
+	public synchronized void sync()
+	throws IOException {
+		if (m_numUnsynced > 0) {
+			m_raf.getFD().sync();
+			m_numUnsynced = 0;
+		}
+		m_lastSyncTime = System.currentTimeMillis();
+		cancelScheduledSync();
+	}
+	
+	public synchronized int getNumUnsynced() {
+		return m_numUnsynced;
+	}
+	
+	public synchronized void clear()
+	throws IOException {
+		// call this once everything in the journal is in the mappings file, the next record starts a new file
+		cancelScheduledSync();
+		m_numUnsynced = 0;
+		Util.closeQuietly(m_raf);
+		m_raf = null;
+		if (m_file.exists() && !m_file.delete()) {
+			// at least make sure nothing gets replayed
+			try (RandomAccessFile raf = new RandomAccessFile(m_file, "rw")) {
+				raf.setLength(0);
+			}
+		}
+	}
+	
+	public synchronized void close()
+	throws IOException {
+		sync();
+		m_isClosed = true;
+		if (m_raf != null) {
+			m_raf.close();
+			m_raf = null;
+		}
+	}
+	
+	public synchronized void delete() {
+		cancelScheduledSync();
+		m_isClosed = true;
+		Util.closeQuietly(m_raf);
+		m_raf = null;
+		if (m_file.exists() && !m_file.delete()) {
+			System.err.println("WARNING: Unable to delete mappings journal " + m_file);
+		}
+	}
+	
+	private void open()
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+		try {
+			if (raf.length() < HeaderSize) {
+				writeHeader(raf);
+			} else {
+				// anything after the last good record is garbage from a crash
+				raf.setLength(findEnd(raf, null));
+			}
+			raf.seek(raf.length());
+		} catch (IOException ex) {
+			Util.closeQuietly(raf);
+			throw ex;
+		}
+		m_raf = raf;
+	}
+	
+	private void cancelScheduledSync() {
+		if (m_scheduledSync != null) {
+			m_scheduledSync.cancel(false);
+			m_scheduledSync = null;
+		}
+	}
+	
+	private static void writeHeader(RandomAccessFile raf)
+	throws IOException {
+		raf.seek(0);
+		raf.writeInt(Magic);
+		raf.writeInt(Version);
+	}
+	
+	private static long findEnd(RandomAccessFile raf, List<Record> records)
+	throws IOException {
+		
+		raf.seek(0);
+		if (raf.length() < HeaderSize) {
+			return 0;
+		}
+		if (raf.readInt() != Magic) {
+			throw new IOException("Not a mappings journal");
+		}
+		int version = raf.readInt();
+		if (version != Version) {
+			throw new IOException("Unsupported mappings journal version: " + version);
+		}
+		
+		long end = raf.getFilePointer();
+		try {
+			while (true) {
+				int size = raf.readInt();
+				if (size < 0 || size > MaxRecordSize) {
+					break;
+				}
+				byte[] payload = new byte[size];
+				raf.readFully(payload);
+				int checksum = raf.readInt();
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if ((int)crc.getValue() != checksum) {
+					break;
+				}
+				if (records != null) {
+					records.add(readRecord(payload));
+				}
+				end = raf.getFilePointer();
+			}
+		} catch (EOFException ex) {
+			// the last record didn't make it
+		}
+		return end;
+	}
+	
+	private static Record readRecord(byte[] payload)
+	throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		int op = in.readByte();
+		if (op < 0 || op >= Op.values().length) {
+			throw new IOException("Unknown journal op: " + op);
+		}
+		Entry obfEntry = readEntry(in);
+		String name = readString(in);
+		return new Record(Op.values()[op], obfEntry, name);
+	}
+	
+	private static void writeEntry(DataOutputStream out, Entry entry)
+	throws IOException {
+		if (entry instanceof ClassEntry) {
+			out.writeByte(ClassKind);
+			out.writeUTF(entry.getName());
+		} else if (entry instanceof FieldEntry) {
+			FieldEntry fieldEntry = (FieldEntry)entry;
+			out.writeByte(FieldKind);
+			out.writeUTF(fieldEntry.getClassName());
+			out.writeUTF(fieldEntry.getName());
+			out.writeUTF(fieldEntry.getType().toString());
+		} else if (entry instanceof MethodEntry) {
+			MethodEntry methodEntry = (MethodEntry)entry;
+			out.writeByte(MethodKind);
+			out.writeUTF(methodEntry.getClassName());
+			out.writeUTF(methodEntry.getName());
+			out.writeUTF(methodEntry.getSignature().toString());
+		} else if (entry instanceof ConstructorEntry) {
+			ConstructorEntry constructorEntry = (ConstructorEntry)entry;
+			out.writeByte(ConstructorKind);
+			out.writeUTF(constructorEntry.getClassName());
+			writeString(out, constructorEntry.isStatic() ? null : constructorEntry.getSignature().toString());
+		} else if (entry instanceof ArgumentEntry) {
+			ArgumentEntry argumentEntry = (ArgumentEntry)entry;
+			out.writeByte(ArgumentKind);
+			writeEntry(out, argumentEntry.getBehaviorEntry());
+			out.writeInt(argumentEntry.getIndex());
+			out.writeUTF(argumentEntry.getName());
+		} else {
+			throw new IllegalArgumentException("Entry type not supported: " + entry.getClass().getName());
+		}
+	}
+	
+	private static Entry readEntry(DataInputStream in)
+	throws IOException {
+		int kind = in.readByte();
+		switch (kind) {
+			case ClassKind:
+				return new ClassEntry(in.readUTF());
+			case FieldKind:
+				return new FieldEntry(new ClassEntry(in.readUTF()), in.readUTF(), new Type(in.readUTF()));
+			case MethodKind:
+				return new MethodEntry(new ClassEntry(in.readUTF()), in.readUTF(), new Signature(in.readUTF()));
+			case ConstructorKind: {
+				ClassEntry classEntry = new ClassEntry(in.readUTF());
+				String signature = readString(in);
+				if (signature == null) {
+					return new ConstructorEntry(classEntry);
+				}
+				return new ConstructorEntry(classEntry, new Signature(signature));
+			}
+			case ArgumentKind:
+				return new ArgumentEntry((BehaviorEntry)readEntry(in), in.readInt(), in.readUTF());
+			default:
+				throw new IOException("Unknown journal entry kind: " + kind);
+		}
+	}
+	
+	private static void writeString(DataOutputStream out, String val)
+	throws IOException {
+		out.writeBoolean(val != null);
+		if (val != null) {
+			out.writeUTF(val);
+		}
+	}
+	
+	private static String readString(DataInputStream in)
+	throws IOException {
+		if (in.readBoolean()) {
+			return in.readUTF();
+		}
+		return null;
+	}
+}
@@ -11,44 +11,196 @@
 package cuchaz.enigma.mapping;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.Map;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 
 public class MappingsReader {
 	
+	// one line of the mappings file, split into tokens without making any strings
+	protected static class Line {
+		
+		private char[] m_chars;
+		private int m_length;
+		private int[] m_tokenStarts;
+		private int[] m_tokenStops;
+		private int m_numTokens;
+		
+		public Line() {
+			m_chars = new char[256];
+			m_length = 0;
+			m_tokenStarts = new int[8];
+			m_tokenStops = new int[8];
+			m_numTokens = 0;
+		}
+		
+		public int getNumTokens() {
+			return m_numTokens;
+		}
+		
+		public String getToken(int i) {
+			checkToken(i);
+			return new String(m_chars, m_tokenStarts[i], m_tokenStops[i] - m_tokenStarts[i]);
+		}
+		
+		public boolean tokenEqualsIgnoreCase(int i, String val) {
+			checkToken(i);
+			int length = m_tokenStops[i] - m_tokenStarts[i];
+			if (length != val.length()) {
+				return false;
+			}
+			for (int j=0; j<length; j++) {
+				char c = m_chars[m_tokenStarts[i] + j];
+				char v = val.charAt(j);
+				if (c != v && Character.toUpperCase(c) != Character.toUpperCase(v) && Character.toLowerCase(c) != Character.toLowerCase(v)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private void checkToken(int i) {
+			if (i >= m_numTokens) {
+				// same as indexing past the end of the old split() array
+				throw new ArrayIndexOutOfBoundsException(i);
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return new String(m_chars, 0, m_length);
+		}
+		
+		private void append(char c) {
+			if (m_length == m_chars.length) {
+				m_chars = Arrays.copyOf(m_chars, m_chars.length*2);
+			}
+			m_chars[m_length++] = c;
+		}
+		
+		private void addToken(int start, int stop) {
+			if (m_numTokens == m_tokenStarts.length) {
+				m_tokenStarts = Arrays.copyOf(m_tokenStarts, m_numTokens*2);
+				m_tokenStops = Arrays.copyOf(m_tokenStops, m_numTokens*2);
+			}
+			m_tokenStarts[m_numTokens] = start;
+			m_tokenStops[m_numTokens] = stop;
+			m_numTokens++;
+		}
+	}
+	
+	private Reader m_in;
+	private char[] m_buf;
+	private int m_pos;
+	private int m_limit;
+	private boolean m_skipLineFeed;
+	
+	// lots of members share descriptors, so only parse each one once
+	private Map<String,Type> m_types;
+	private Map<String,Signature> m_signatures;
+	
+	public Mappings read(BufferedReader in)
+	throws IOException, MappingParseException {
+		return read((Reader)in);
+	}
+	
 	public Mappings read(Reader in)
 	throws IOException, MappingParseException {
-		return read(new BufferedReader(in));
+		Mappings mappings = new Mappings();
+		read(in, mappings);
+		clearDirty(mappings);
+		return mappings;
 	}
 	
-	public Mappings read(BufferedReader in)
+	public Mappings readDirectory(File dir)
 	throws IOException, MappingParseException {
+		
+		// see MappingsWriter.writeDirectory()
 		Mappings mappings = new Mappings();
+		readDirectory(dir, mappings);
+		clearDirty(mappings);
+		return mappings;
+	}
+	
+	private void readDirectory(File dir, Mappings mappings)
+	throws IOException, MappingParseException {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			throw new IOException("Unable to read mappings folder: " + dir);
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				readDirectory(child, mappings);
+			} else if (child.getName().endsWith(MappingsWriter.ClassFileExtension)) {
+				try (Reader in = new FileReader(child)) {
+					read(in, mappings);
+				} catch (MappingParseException ex) {
+					throw new MappingParseException(child, ex);
+				}
+			}
+		}
+	}
+	
+	private void clearDirty(Mappings mappings) {
+		// freshly read mappings match their files
+		for (ClassMapping classMapping : mappings.classes()) {
+			classMapping.clearDirty();
+		}
+	}
+	
+	private void read(Reader in, Mappings mappings)
+	throws IOException, MappingParseException {
+		
+		m_in = in;
+		m_buf = new char[8192];
+		m_pos = 0;
+		m_limit = 0;
+		m_skipLineFeed = false;
+		if (m_types == null) {
+			m_types = Maps.newHashMap();
+			m_signatures = Maps.newHashMap();
+		}
+		
 		Deque<Object> mappingStack = Queues.newArrayDeque();
 		
 		int lineNumber = 0;
-		String line = null;
-		while ( (line = in.readLine()) != null) {
+		Line line = new Line();
+		while (readLine(line)) {
 			lineNumber++;
 			
 			// strip comments
-			int commentPos = line.indexOf('#');
-			if (commentPos >= 0) {
-				line = line.substring(0, commentPos);
+			for (int i=0; i<line.m_length; i++) {
+				if (line.m_chars[i] == '#') {
+					line.m_length = i;
+					break;
+				}
 			}
 			
-			// skip blank lines
-			if (line.trim().length() <= 0) {
+			// skip blank lines, same as trim()
+			int start = 0;
+			while (start < line.m_length && line.m_chars[start] <= ' ') {
+				start++;
+			}
+			int stop = line.m_length;
+			while (stop > start && line.m_chars[stop - 1] <= ' ') {
+				stop--;
+			}
+			if (start >= stop) {
 				continue;
 			}
 			
 			// get the indent of this line
 			int indent = 0;
-			for (int i = 0; i < line.length(); i++) {
-				if (line.charAt(i) != '\t') {
+			for (int i=0; i<line.m_length; i++) {
+				if (line.m_chars[i] != '\t') {
 					break;
 				}
 				indent++;
@@ -59,16 +211,14 @@ public class MappingsReader {
 				mappingStack.pop();
 			}
 			
-			String[] parts = line.trim().split("\\s");
+			tokenize(line, start, stop);
 			try {
 				// read the first token
-				String token = parts[0];
-				
-				if (token.equalsIgnoreCase("CLASS")) {
+				if (line.tokenEqualsIgnoreCase(0, "CLASS")) {
 					ClassMapping classMapping;
 					if (indent <= 0) {
 						// outer class
-						classMapping = readClass(parts, false);
+						classMapping = readClass(line, false);
 						mappings.addClassMapping(classMapping);
 					} else {
 						
@@ -77,58 +227,128 @@ public class MappingsReader {
 							throw new MappingParseException(lineNumber, "Unexpected CLASS entry here!");
 						}
 						
-						classMapping = readClass(parts, true);
+						classMapping = readClass(line, true);
 						((ClassMapping)mappingStack.peek()).addInnerClassMapping(classMapping);
 					}
 					mappingStack.push(classMapping);
-				} else if (token.equalsIgnoreCase("FIELD")) {
+				} else if (line.tokenEqualsIgnoreCase(0, "FIELD")) {
 					if (mappingStack.isEmpty() || ! (mappingStack.peek() instanceof ClassMapping)) {
 						throw new MappingParseException(lineNumber, "Unexpected FIELD entry here!");
 					}
-					((ClassMapping)mappingStack.peek()).addFieldMapping(readField(parts));
-				} else if (token.equalsIgnoreCase("METHOD")) {
+					((ClassMapping)mappingStack.peek()).addFieldMapping(readField(line));
+				} else if (line.tokenEqualsIgnoreCase(0, "METHOD")) {
 					if (mappingStack.isEmpty() || ! (mappingStack.peek() instanceof ClassMapping)) {
 						throw new MappingParseException(lineNumber, "Unexpected METHOD entry here!");
 					}
-					MethodMapping methodMapping = readMethod(parts);
+					MethodMapping methodMapping = readMethod(line);
 					((ClassMapping)mappingStack.peek()).addMethodMapping(methodMapping);
 					mappingStack.push(methodMapping);
-				} else if (token.equalsIgnoreCase("ARG")) {
+				} else if (line.tokenEqualsIgnoreCase(0, "ARG")) {
 					if (mappingStack.isEmpty() || ! (mappingStack.peek() instanceof MethodMapping)) {
 						throw new MappingParseException(lineNumber, "Unexpected ARG entry here!");
 					}
-					((MethodMapping)mappingStack.peek()).addArgumentMapping(readArgument(parts));
+					((MethodMapping)mappingStack.peek()).addArgumentMapping(readArgument(line));
 				}
 			} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
 				throw new MappingParseException(lineNumber, "Malformed line:\n" + line);
 			}
 		}
 		
-		return mappings;
+		m_in = null;
+		m_buf = null;
 	}
 	
-	private ArgumentMapping readArgument(String[] parts) {
-		return new ArgumentMapping(Integer.parseInt(parts[1]), parts[2]);
+	private boolean readLine(Line line)
+	throws IOException {
+		
+		// same line endings as BufferedReader.readLine(): \n, \r, or \r\n
+		line.m_length = 0;
+		boolean readAnything = false;
+		while (true) {
+			if (m_pos >= m_limit) {
+				m_limit = m_in.read(m_buf, 0, m_buf.length);
+				m_pos = 0;
+				if (m_limit <= 0) {
+					m_limit = 0;
+					return readAnything;
+				}
+			}
+			char c = m_buf[m_pos++];
+			if (m_skipLineFeed) {
+				m_skipLineFeed = false;
+				if (c == '\n') {
+					continue;
+				}
+			}
+			if (c == '\n') {
+				return true;
+			} else if (c == '\r') {
+				m_skipLineFeed = true;
+				return true;
+			}
+			line.append(c);
+			readAnything = true;
+		}
 	}
 	
-	private ClassMapping readClass(String[] parts, boolean makeSimple) {
-		if (parts.length == 2) {
-			return new ClassMapping(parts[1]);
+	private void tokenize(Line line, int start, int stop) {
+		// same as split("\\s") on the trimmed line, so runs of whitespace make empty tokens
+		line.m_numTokens = 0;
+		int tokenStart = start;
+		for (int i=start; i<stop; i++) {
+			if (isWhitespace(line.m_chars[i])) {
+				line.addToken(tokenStart, i);
+				tokenStart = i + 1;
+			}
+		}
+		line.addToken(tokenStart, stop);
+	}
+	
+	private boolean isWhitespace(char c) {
+		// ie, the \s regex character class
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	private ArgumentMapping readArgument(Line line) {
+		return new ArgumentMapping(Integer.parseInt(line.getToken(1)), line.getToken(2));
+	}
+	
+	private ClassMapping readClass(Line line, boolean makeSimple) {
+		if (line.getNumTokens() == 2) {
+			return new ClassMapping(line.getToken(1));
 		} else {
-			return new ClassMapping(parts[1], parts[2]);
+			return new ClassMapping(line.getToken(1), line.getToken(2));
 		}
 	}
 	
 	/* TEMP */
-	protected FieldMapping readField(String[] parts) {
-		return new FieldMapping(parts[1], new Type(parts[3]), parts[2]);
+	protected FieldMapping readField(Line line) {
+		return new FieldMapping(line.getToken(1), getType(line.getToken(3)), line.getToken(2));
 	}
 	
-	private MethodMapping readMethod(String[] parts) {
-		if (parts.length == 3) {
-			return new MethodMapping(parts[1], new Signature(parts[2]));
+	private MethodMapping readMethod(Line line) {
+		if (line.getNumTokens() == 3) {
+			return new MethodMapping(line.getToken(1), getSignature(line.getToken(2)));
 		} else {
-			return new MethodMapping(parts[1], new Signature(parts[3]), parts[2]);
+			return new MethodMapping(line.getToken(1), getSignature(line.getToken(3)), line.getToken(2));
+		}
+	}
+	
+	protected Type getType(String descriptor) {
+		Type type = m_types.get(descriptor);
+		if (type == null) {
+			type = new Type(descriptor);
+			m_types.put(descriptor, type);
+		}
+		return type;
+	}
+	
+	protected Signature getSignature(String descriptor) {
+		Signature signature = m_signatures.get(descriptor);
+		if (signature == null) {
+			signature = new Signature(descriptor);
+			m_signatures.put(descriptor, signature);
 		}
+		return signature;
 	}
 }
@@ -11,11 +11,9 @@
 package cuchaz.enigma.mapping;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
 
 import cuchaz.enigma.analysis.JarIndex;
 
@@ -23,10 +21,18 @@ public class MappingsRenamer {
 	
 	private JarIndex m_index;
 	private Mappings m_mappings;
+	private TranslatorCache m_translatorCache;
 	
 	public MappingsRenamer(JarIndex index, Mappings mappings) {
+		this(index, mappings, null);
+	}
+	
+	public MappingsRenamer(JarIndex index, Mappings mappings, TranslatorCache translatorCache) {
 		m_index = index;
 		m_mappings = mappings;
+		
+		// if the cache shares our class mappings, it gets to copy them before we change them
+		m_translatorCache = translatorCache;
 	}
 	
 	public void setClassName(ClassEntry obf, String deobfName) {
@@ -172,11 +178,13 @@ public class MappingsRenamer {
 	}
 	
 	public boolean moveFieldToObfClass(ClassMapping classMapping, FieldMapping fieldMapping, ClassEntry obfClass) {
-		classMapping.removeFieldMapping(fieldMapping);
+		// the class mapping we were given might be shared, so change the one in the mappings
+		classMapping = getOrCreateClassMapping(new ClassEntry(classMapping.getObfFullName()));
+		classMapping.removeFieldMapping(classMapping.getFieldByObf(fieldMapping.getObfName(), fieldMapping.getObfType()));
 		ClassMapping targetClassMapping = getOrCreateClassMapping(obfClass);
 		if (!targetClassMapping.containsObfField(fieldMapping.getObfName(), fieldMapping.getObfType())) {
 			if (!targetClassMapping.containsDeobfField(fieldMapping.getDeobfName(), fieldMapping.getObfType())) {
-				targetClassMapping.addFieldMapping(fieldMapping);
+				targetClassMapping.addFieldMapping(new FieldMapping(fieldMapping));
 				return true;
 			} else {
 				System.err.println("WARNING: deobf field was already there: " + obfClass + "." + fieldMapping.getDeobfName());
@@ -186,11 +194,13 @@ public class MappingsRenamer {
 	}
 	
 	public boolean moveMethodToObfClass(ClassMapping classMapping, MethodMapping methodMapping, ClassEntry obfClass) {
-		classMapping.removeMethodMapping(methodMapping);
+		// the class mapping we were given might be shared, so change the one in the mappings
+		classMapping = getOrCreateClassMapping(new ClassEntry(classMapping.getObfFullName()));
+		classMapping.removeMethodMapping(classMapping.getMethodByObf(methodMapping.getObfName(), methodMapping.getObfSignature()));
 		ClassMapping targetClassMapping = getOrCreateClassMapping(obfClass);
 		if (!targetClassMapping.containsObfMethod(methodMapping.getObfName(), methodMapping.getObfSignature())) {
 			if (!targetClassMapping.containsDeobfMethod(methodMapping.getDeobfName(), methodMapping.getObfSignature())) {
-				targetClassMapping.addMethodMapping(methodMapping);
+				targetClassMapping.addMethodMapping(new MethodMapping(methodMapping));
 				return true;
 			} else {
 				System.err.println("WARNING: deobf method was already there: " + obfClass + "." + methodMapping.getDeobfName() + methodMapping.getObfSignature());
@@ -200,11 +210,7 @@ public class MappingsRenamer {
 	}
 	
 	public void write(OutputStream out) throws IOException {
-		// TEMP: just use the object output for now. We can find a more efficient storage format later
-		GZIPOutputStream gzipout = new GZIPOutputStream(out);
-		ObjectOutputStream oout = new ObjectOutputStream(gzipout);
-		oout.writeObject(this);
-		gzipout.finish();
+		new MappingsBinaryWriter().write(out, m_mappings);
 	}
 	
 	private ClassMapping getOrCreateClassMapping(ClassEntry obfClassEntry) {
@@ -213,6 +219,9 @@ public class MappingsRenamer {
 	}
 	
 	private List<ClassMapping> getOrCreateClassMappingChain(ClassEntry obfClassEntry) {
+		if (m_translatorCache != null) {
+			m_translatorCache.beforeChange(obfClassEntry);
+		}
 		List<ClassEntry> classChain = obfClassEntry.getClassChain();
 		List<ClassMapping> mappingChain = m_mappings.getClassMappingChain(obfClassEntry);
 		for (int i=0; i<classChain.size(); i++) {
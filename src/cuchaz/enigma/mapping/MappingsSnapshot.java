@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.TranslatedIndex;
+import cuchaz.enigma.analysis.TranslationIndex;
+
+public class MappingsSnapshot {
+	
+	private JarIndex m_index;
+	private Map<String,ClassMapping> m_classesByObf;
+	private volatile Collection<ClassMapping> m_classes;
+	private Translator m_deobfTranslator;
+	private Translator m_obfTranslator;
+	
+	public MappingsSnapshot(Map<String,ClassMapping> classesByObf, Map<String,ClassMapping> classesByDeobf, JarIndex index, final Supplier<TranslatedIndex> deobfIndexSource) {
+		
+		// nothing may change these class mappings anymore, so they can be shared between snapshots
+		// the obfuscating translator wants classes by deobf name, or by obf name if there's no deobf name
+		m_classesByObf = Collections.unmodifiableMap(classesByObf);
+		m_classes = null;
+		
+		// the jar index doesn't change after indexing either, so it's safe to read from any thread
+		m_index = index;
+		
+		final TranslationIndex translationIndex = m_index.getTranslationIndex();
+		m_deobfTranslator = new Translator(TranslationDirection.Deobfuscating, m_classesByObf, translationIndex);
+		m_deobfTranslator.enableCache(TranslatorCache.MaxCachedTranslations);
+		
+		// translating the index is the expensive part, so wait until someone needs it
+		m_obfTranslator = new Translator(TranslationDirection.Obfuscating, Collections.unmodifiableMap(classesByDeobf), new Supplier<TranslationIndex>() {
+			@Override
+			public TranslationIndex get() {
+				// if someone already has a translated index that matches our mappings, share it
+				if (deobfIndexSource != null) {
+					TranslatedIndex deobfIndex = deobfIndexSource.get();
+					if (deobfIndex != null) {
+						return deobfIndex;
+					}
+				}
+				return new TranslatedIndex(translationIndex, m_deobfTranslator);
+			}
+		});
+		m_obfTranslator.enableCache(TranslatorCache.MaxCachedTranslations);
+	}
+	
+	public Collection<ClassMapping> classes() {
+		// walking all the classes means gathering them up first, so only do that once
+		if (m_classes == null) {
+			m_classes = Collections.unmodifiableList(Lists.newArrayList(m_classesByObf.values()));
+		}
+		return m_classes;
+	}
+	
+	public ClassMapping getClassByObf(String obfName) {
+		return m_classesByObf.get(obfName);
+	}
+	
+	public ClassMapping getClassByObf(ClassEntry entry) {
+		return getClassByObf(entry.getName());
+	}
+	
+	public List<ClassMapping> getClassMappingChain(ClassEntry obfClass) {
+		List<ClassMapping> mappingChain = Lists.newArrayList();
+		ClassMapping classMapping = null;
+		for (ClassEntry obfClassEntry : obfClass.getClassChain()) {
+			if (mappingChain.isEmpty()) {
+				classMapping = m_classesByObf.get(obfClassEntry.getName());
+			} else if (classMapping != null) {
+				classMapping = classMapping.getInnerClassByObfSimple(obfClassEntry.getInnermostClassName());
+			}
+			mappingChain.add(classMapping);
+		}
+		return mappingChain;
+	}
+	
+	public Translator getTranslator(TranslationDirection direction) {
+		return direction.choose(m_deobfTranslator, m_obfTranslator);
+	}
+	
+	public <T extends Entry> T deobfuscateEntry(T obfEntry) {
+		if (obfEntry == null) {
+			return null;
+		}
+		return m_deobfTranslator.translateEntry(obfEntry);
+	}
+	
+	public <T extends Entry> T obfuscateEntry(T deobfEntry) {
+		if (deobfEntry == null) {
+			return null;
+		}
+		return m_obfTranslator.translateEntry(deobfEntry);
+	}
+	
+	public boolean isObfuscatedIdentifier(Entry obfEntry) {
+		
+		if (obfEntry instanceof MethodEntry) {
+			
+			// HACKHACK: Object methods are not obfuscated identifiers
+			MethodEntry obfMethodEntry = (MethodEntry)obfEntry;
+			String name = obfMethodEntry.getName();
+			String sig = obfMethodEntry.getSignature().toString();
+			if (name.equals("clone") && sig.equals("()Ljava/lang/Object;")) {
+				return false;
+			} else if (name.equals("equals") && sig.equals("(Ljava/lang/Object;)Z")) {
+				return false;
+			} else if (name.equals("finalize") && sig.equals("()V")) {
+				return false;
+			} else if (name.equals("getClass") && sig.equals("()Ljava/lang/Class;")) {
+				return false;
+			} else if (name.equals("hashCode") && sig.equals("()I")) {
+				return false;
+			} else if (name.equals("notify") && sig.equals("()V")) {
+				return false;
+			} else if (name.equals("notifyAll") && sig.equals("()V")) {
+				return false;
+			} else if (name.equals("toString") && sig.equals("()Ljava/lang/String;")) {
+				return false;
+			} else if (name.equals("wait") && sig.equals("()V")) {
+				return false;
+			} else if (name.equals("wait") && sig.equals("(J)V")) {
+				return false;
+			} else if (name.equals("wait") && sig.equals("(JI)V")) {
+				return false;
+			}
+		}
+		
+		return m_index.containsObfEntry(obfEntry);
+	}
+	
+	public boolean hasDeobfuscatedName(Entry obfEntry) {
+		Translator translator = m_deobfTranslator;
+		if (obfEntry instanceof ClassEntry) {
+			ClassEntry obfClass = (ClassEntry)obfEntry;
+			List<ClassMapping> mappingChain = getClassMappingChain(obfClass);
+			ClassMapping classMapping = mappingChain.get(mappingChain.size() - 1);
+			return classMapping != null && classMapping.getDeobfName() != null;
+		} else if (obfEntry instanceof FieldEntry) {
+			return translator.translate((FieldEntry)obfEntry) != null;
+		} else if (obfEntry instanceof MethodEntry) {
+			return translator.translate((MethodEntry)obfEntry) != null;
+		} else if (obfEntry instanceof ConstructorEntry) {
+			// constructors have no names
+			return false;
+		} else if (obfEntry instanceof ArgumentEntry) {
+			return translator.translate((ArgumentEntry)obfEntry) != null;
+		} else {
+			throw new Error("Unknown entry type: " + obfEntry.getClass().getName());
+		}
+	}
+}
@@ -10,32 +10,142 @@
  ******************************************************************************/
 package cuchaz.enigma.mapping;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+import cuchaz.enigma.Util;
 
 public class MappingsWriter {
 	
+	// in the directory layout, each outer class gets its own file named after its obf name
+	public static final String ClassFileExtension = ".mapping";
+	
+	// and the folder lists the classes it has files for, so we only ever delete files we wrote
+	public static final String ManifestFileName = "enigma.manifest";
+	
 	public void write(Writer out, Mappings mappings) throws IOException {
-		write(new PrintWriter(out), mappings);
+		for (ClassMapping classMapping : sorted(mappings.classes())) {
+			write(out, classMapping, 0);
+		}
+		out.flush();
 	}
 	
 	public void write(PrintWriter out, Mappings mappings) throws IOException {
-		for (ClassMapping classMapping : sorted(mappings.classes())) {
-			write(out, classMapping, 0);
+		write((Writer)out, mappings);
+	}
+	
+	public void write(File file, final Mappings mappings) throws IOException {
+		Util.writeAtomically(file, new Util.FileContents() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+				MappingsWriter.this.write(writer, mappings);
+				writer.flush();
+			}
+		});
+		
+		// the file has everything now
+		for (ClassMapping classMapping : mappings.classes()) {
+			classMapping.clearDirty();
 		}
 	}
 	
-	private void write(PrintWriter out, ClassMapping classMapping, int depth) throws IOException {
-		if (classMapping.getDeobfName() == null) {
-			out.format("%sCLASS %s\n", getIndent(depth), classMapping.getObfFullName());
-		} else {
-			out.format("%sCLASS %s %s\n", getIndent(depth), classMapping.getObfFullName(), classMapping.getDeobfName());
+	public void writeDirectory(File dir, Mappings mappings, boolean changesOnly) throws IOException {
+		
+		// don't write over a folder someone else filled
+		Set<String> oldClassNames = readManifest(dir);
+		
+		Set<String> classNames = Sets.newTreeSet();
+		for (ClassMapping classMapping : mappings.classes()) {
+			classNames.add(classMapping.getObfFullName());
 		}
 		
+		// list the new files before writing them, so a crash part way through can't leave files we don't know about
+		writeManifest(dir, Sets.union(oldClassNames, classNames));
+		
+		for (final ClassMapping classMapping : mappings.classes()) {
+			File file = getClassFile(dir, classMapping.getObfFullName());
+			if (changesOnly && !classMapping.isDirty() && file.exists()) {
+				continue;
+			}
+			
+			Util.writeAtomically(file, new Util.FileContents() {
+				@Override
+				public void write(OutputStream out) throws IOException {
+					Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+					MappingsWriter.this.write(writer, classMapping, 0);
+					writer.flush();
+				}
+			});
+			classMapping.clearDirty();
+		}
+		
+		// classes can lose their mappings too
+		for (String oldClassName : Sets.difference(oldClassNames, classNames)) {
+			File file = getClassFile(dir, oldClassName);
+			if (file.exists() && !file.delete()) {
+				System.err.println("WARNING: Unable to delete stale mappings file " + file);
+			}
+		}
+		writeManifest(dir, classNames);
+	}
+	
+	public static File getClassFile(File dir, String obfClassName) {
+		return new File(dir, obfClassName.replace('/', File.separatorChar) + ClassFileExtension);
+	}
+	
+	private Set<String> readManifest(File dir) throws IOException {
+		File file = new File(dir, ManifestFileName);
+		if (!file.exists()) {
+			String[] children = dir.list();
+			if (children != null && children.length > 0) {
+				throw new MappingsFolderException(dir, "This folder isn't empty and wasn't written by Enigma, pick an empty folder to save mappings into.");
+			}
+			return Sets.newHashSet();
+		}
+		Set<String> classNames = Sets.newHashSet();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!line.isEmpty()) {
+				classNames.add(line);
+			}
+		}
+		return classNames;
+	}
+	
+	private void writeManifest(File dir, final Set<String> classNames) throws IOException {
+		Util.writeAtomically(new File(dir, ManifestFileName), new Util.FileContents() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+				for (String className : classNames) {
+					writer.append(className).append('\n');
+				}
+				writer.flush();
+			}
+		});
+	}
+	
+	private void write(Writer out, ClassMapping classMapping, int depth) throws IOException {
+		writeIndent(out, depth);
+		out.append("CLASS ").append(classMapping.getObfFullName());
+		if (classMapping.getDeobfName() != null) {
+			out.append(' ').append(classMapping.getDeobfName());
+		}
+		out.append('\n');
+		
 		for (ClassMapping innerClassMapping : sorted(classMapping.innerClasses())) {
 			write(out, innerClassMapping, depth + 1);
 		}
@@ -49,24 +159,32 @@ public class MappingsWriter {
 		}
 	}
 	
-	private void write(PrintWriter out, FieldMapping fieldMapping, int depth) throws IOException {
-		out.format("%sFIELD %s %s %s\n", getIndent(depth), fieldMapping.getObfName(), fieldMapping.getDeobfName(), fieldMapping.getObfType().toString());
+	private void write(Writer out, FieldMapping fieldMapping, int depth) throws IOException {
+		writeIndent(out, depth);
+		out.append("FIELD ").append(fieldMapping.getObfName())
+			.append(' ').append(fieldMapping.getDeobfName())
+			.append(' ').append(fieldMapping.getObfType().toString())
+			.append('\n');
 	}
 	
-	private void write(PrintWriter out, MethodMapping methodMapping, int depth) throws IOException {
-		if (methodMapping.getDeobfName() == null) {
-			out.format("%sMETHOD %s %s\n", getIndent(depth), methodMapping.getObfName(), methodMapping.getObfSignature());
-		} else {
-			out.format("%sMETHOD %s %s %s\n", getIndent(depth), methodMapping.getObfName(), methodMapping.getDeobfName(), methodMapping.getObfSignature());
+	private void write(Writer out, MethodMapping methodMapping, int depth) throws IOException {
+		writeIndent(out, depth);
+		out.append("METHOD ").append(methodMapping.getObfName());
+		if (methodMapping.getDeobfName() != null) {
+			out.append(' ').append(methodMapping.getDeobfName());
 		}
+		out.append(' ').append(methodMapping.getObfSignature().toString()).append('\n');
 		
 		for (ArgumentMapping argumentMapping : sorted(methodMapping.arguments())) {
 			write(out, argumentMapping, depth + 1);
 		}
 	}
 	
-	private void write(PrintWriter out, ArgumentMapping argumentMapping, int depth) throws IOException {
-		out.format("%sARG %d %s\n", getIndent(depth), argumentMapping.getIndex(), argumentMapping.getName());
+	private void write(Writer out, ArgumentMapping argumentMapping, int depth) throws IOException {
+		writeIndent(out, depth);
+		out.append("ARG ").append(Integer.toString(argumentMapping.getIndex()))
+			.append(' ').append(argumentMapping.getName())
+			.append('\n');
 	}
 	
 	private <T extends Comparable<T>> List<T> sorted(Iterable<T> classes) {
@@ -74,15 +192,15 @@ public class MappingsWriter {
 		for (T t : classes) {
 			out.add(t);
 		}
-		Collections.sort(out);
+		if (out.size() > 1) {
+			Collections.sort(out);
+		}
 		return out;
 	}
 	
-	private String getIndent(int depth) {
-		StringBuilder buf = new StringBuilder();
+	private void writeIndent(Writer out, int depth) throws IOException {
 		for (int i = 0; i < depth; i++) {
-			buf.append("\t");
+			out.append('\t');
 		}
-		return buf.toString();
 	}
 }
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.io.Serializable;
+
+final class MemberKey implements Serializable {
+	
+	private static final long serialVersionUID = 3385183127545716271L;
+	
+	// points at the name and descriptor the mapping already has instead of copying them into a new string
+	private final String m_name;
+	private final Object m_descriptor;
+	private final int m_hashCode;
+	
+	private MemberKey(String name, Object descriptor) {
+		m_name = name;
+		m_descriptor = descriptor;
+		m_hashCode = name.hashCode() * 31 + descriptor.hashCode();
+	}
+	
+	public static MemberKey forField(String name, Type type) {
+		if (name == null) {
+			throw new IllegalArgumentException("name cannot be null!");
+		}
+		if (type == null) {
+			throw new IllegalArgumentException("type cannot be null!");
+		}
+		return new MemberKey(name, type);
+	}
+	
+	public static MemberKey forMethod(String name, Signature signature) {
+		if (name == null) {
+			throw new IllegalArgumentException("name cannot be null!");
+		}
+		if (signature == null) {
+			throw new IllegalArgumentException("signature cannot be null!");
+		}
+		return new MemberKey(name, signature);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (other instanceof MemberKey) {
+			return equals((MemberKey)other);
+		}
+		return false;
+	}
+	
+	public boolean equals(MemberKey other) {
+		return m_hashCode == other.m_hashCode && m_name.equals(other.m_name) && m_descriptor.equals(other.m_descriptor);
+	}
+	
+	@Override
+	public int hashCode() {
+		return m_hashCode;
+	}
+	
+	@Override
+	public String toString() {
+		if (m_descriptor instanceof Type) {
+			return m_name + ":" + m_descriptor;
+		}
+		return m_name + m_descriptor;
+	}
+}
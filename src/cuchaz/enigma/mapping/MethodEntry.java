@@ -21,6 +21,7 @@ public class MethodEntry implements BehaviorEntry, Serializable {
 	private ClassEntry m_classEntry;
 	private String m_name;
 	private Signature m_signature;
+	private transient int m_hashCode;
 	
 	public MethodEntry(ClassEntry classEntry, String name, Signature signature) {
 		if (classEntry == null) {
@@ -75,12 +76,15 @@ public class MethodEntry implements BehaviorEntry, Serializable {
 	
 	@Override
 	public MethodEntry cloneToNewClass(ClassEntry classEntry) {
-		return new MethodEntry(this, classEntry.getName());
+		return new MethodEntry(classEntry, m_name, m_signature);
 	}
 	
 	@Override
 	public int hashCode() {
-		return Util.combineHashesOrdered(m_classEntry, m_name, m_signature);
+		if (m_hashCode == 0) {
+			m_hashCode = Util.combineHashesOrdered(m_classEntry, m_name, m_signature);
+		}
+		return m_hashCode;
 	}
 	
 	@Override
@@ -42,6 +42,16 @@ public class MethodMapping implements Serializable, Comparable<MethodMapping>, M
 		m_arguments = Maps.newTreeMap();
 	}
 	
+	public MethodMapping(MethodMapping other) {
+		m_obfName = other.m_obfName;
+		m_deobfName = other.m_deobfName;
+		m_obfSignature = other.m_obfSignature;
+		m_arguments = Maps.newTreeMap();
+		for (Entry<Integer,ArgumentMapping> entry : other.m_arguments.entrySet()) {
+			m_arguments.put(entry.getKey(), new ArgumentMapping(entry.getValue()));
+		}
+	}
+	
 	public MethodMapping(MethodMapping other, ClassNameReplacer obfClassNameReplacer) {
 		m_obfName = other.m_obfName;
 		m_deobfName = other.m_deobfName;
@@ -23,6 +23,7 @@ public class Signature implements Serializable {
 	
 	private List<Type> m_argumentTypes;
 	private Type m_returnType;
+	private transient int m_hashCode;
 	
 	public Signature(String signature) {
 		try {
@@ -103,7 +104,10 @@ public class Signature implements Serializable {
 	
 	@Override
 	public int hashCode() {
-		return Util.combineHashesOrdered(m_argumentTypes.hashCode(), m_returnType.hashCode());
+		if (m_hashCode == 0) {
+			m_hashCode = Util.combineHashesOrdered(m_argumentTypes.hashCode(), m_returnType.hashCode());
+		}
+		return m_hashCode;
 	}
 
 	public boolean hasClass(ClassEntry classEntry) {
@@ -10,19 +10,63 @@
  ******************************************************************************/
 package cuchaz.enigma.mapping;
 
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Sets;
 
 import cuchaz.enigma.analysis.TranslationIndex;
 
 public class Translator {
 	
+	// smaller batches aren't worth the trouble of a thread pool
+	public static final int MinParallelBatchSize = 10000;
+	
 	private TranslationDirection m_direction;
 	private Map<String,ClassMapping> m_classes;
-	private TranslationIndex m_index;
+	private volatile Supplier<TranslationIndex> m_index;
+	
+	// a translation result, and the outer classes whose mappings it came from
+	private static class Translation {
+		
+		public Object value;
+		public long generation;
+		public String[] outerClassNames;
+		
+		public Translation(Object value, long generation, Set<String> outerClassNames) {
+			this.value = value;
+			this.generation = generation;
+			this.outerClassNames = outerClassNames.toArray(new String[outerClassNames.size()]);
+		}
+	}
+	
+	// translation results, only if caching is on
+	private Cache<Entry,Translation> m_entryCache;
+	private Cache<Type,Translation> m_typeCache;
+	private Cache<Signature,Translation> m_signatureCache;
+	
+	// the generation each outer class was last invalidated in
+	// results from before then are stale, even if they get cached after the invalidation
+	private AtomicLong m_generation;
+	private ConcurrentMap<String,Long> m_invalidatedGenerations;
 	
 	private ClassNameReplacer m_classNameReplacer = new ClassNameReplacer() {
 		@Override
@@ -34,13 +78,20 @@ public class Translator {
 	public Translator() {
 		m_direction = null;
 		m_classes = Maps.newHashMap();
-		m_index = new TranslationIndex();
+		m_index = Suppliers.ofInstance(new TranslationIndex());
 	}
 	
 	public Translator(TranslationDirection direction, Map<String,ClassMapping> classes, TranslationIndex index) {
 		m_direction = direction;
 		m_classes = classes;
-		m_index = index;
+		m_index = Suppliers.ofInstance(index);
+	}
+	
+	public Translator(TranslationDirection direction, Map<String,ClassMapping> classes, Supplier<TranslationIndex> index) {
+		// the index only gets built if some member actually needs translating
+		m_direction = direction;
+		m_classes = classes;
+		m_index = Suppliers.memoize(index);
 	}
 	
 	public TranslationDirection getDirection() {
@@ -48,7 +99,108 @@ public class Translator {
 	}
 	
 	public TranslationIndex getTranslationIndex() {
-		return m_index;
+		return m_index.get();
+	}
+	
+	public void setTranslationIndex(TranslationIndex val) {
+		// for translators that outlive their index, eg when renames retranslate it
+		m_index = Suppliers.ofInstance(val);
+	}
+	
+	public void enableCache(int maxSize) {
+		m_entryCache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+		m_typeCache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+		m_signatureCache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+		m_generation = new AtomicLong();
+		m_invalidatedGenerations = Maps.newConcurrentMap();
+	}
+	
+	public void clearCache() {
+		// call this whenever the mappings change
+		if (m_entryCache != null) {
+			m_entryCache.invalidateAll();
+			m_typeCache.invalidateAll();
+			m_signatureCache.invalidateAll();
+		}
+	}
+	
+	public void invalidate(Collection<String> outerClassNames) {
+		
+		// call this when only the mappings for these outer classes changed, named the way this translator reads them
+		// results that used them go stale, the rest stay cached
+		if (m_entryCache == null) {
+			return;
+		}
+		long generation = m_generation.get();
+		for (String outerClassName : outerClassNames) {
+			m_invalidatedGenerations.put(outerClassName, generation);
+		}
+		m_generation.incrementAndGet();
+	}
+	
+	private <K> Object getCached(Cache<K,Translation> cache, K key) {
+		Translation translation = cache.getIfPresent(key);
+		if (translation == null) {
+			return null;
+		}
+		for (String outerClassName : translation.outerClassNames) {
+			Long generation = m_invalidatedGenerations.get(outerClassName);
+			if (generation != null && generation >= translation.generation) {
+				cache.invalidate(key);
+				return null;
+			}
+		}
+		return translation.value;
+	}
+	
+	private void addOuterClassNames(Set<String> out, Type type) {
+		if (type.hasClass()) {
+			out.add(type.getClassEntry().getOutermostClassName());
+		}
+	}
+	
+	private void addOuterClassNames(Set<String> out, Signature signature) {
+		for (Type type : signature.types()) {
+			addOuterClassNames(out, type);
+		}
+	}
+	
+	private Set<String> getOuterClassNames(Entry entry) {
+		
+		// every outer class whose mappings could change this entry's translation
+		Set<String> outerClassNames = Sets.newHashSet();
+		outerClassNames.add(entry.getClassEntry().getOutermostClassName());
+		if (entry instanceof FieldEntry || entry instanceof MethodEntry) {
+			ClassEntry resolvedClassEntry = getTranslationIndex().resolveEntryClass(entry);
+			if (resolvedClassEntry != null) {
+				outerClassNames.add(resolvedClassEntry.getOutermostClassName());
+			}
+		}
+		if (entry instanceof FieldEntry) {
+			addOuterClassNames(outerClassNames, ((FieldEntry)entry).getType());
+		} else if (entry instanceof MethodEntry) {
+			addOuterClassNames(outerClassNames, ((MethodEntry)entry).getSignature());
+		}
+		return outerClassNames;
+	}
+	
+	public CacheStats getEntryCacheStats() {
+		return getStats(m_entryCache);
+	}
+	
+	public CacheStats getTypeCacheStats() {
+		return getStats(m_typeCache);
+	}
+	
+	public CacheStats getSignatureCacheStats() {
+		return getStats(m_signatureCache);
+	}
+	
+	private CacheStats getStats(Cache<?,?> cache) {
+		if (cache == null) {
+			return new CacheStats(0, 0, 0, 0, 0, 0);
+		}
+		return cache.stats();
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -68,6 +220,79 @@ public class Translator {
 		}
 	}
 	
+	public <T extends Entry> List<T> translateEntries(Collection<T> entries) {
+		return translateEntries(entries, 1);
+	}
+	
+	public <T extends Entry> List<T> translateEntries(Collection<T> entries, int numThreads) {
+		
+		// without a cache of our own, use a throwaway one so classes shared by the batch only get translated once
+		final Translator translator;
+		if (m_entryCache != null) {
+			translator = this;
+		} else {
+			translator = new Translator(m_direction, m_classes, m_index);
+			translator.enableCache(Math.max(MinParallelBatchSize, entries.size()));
+		}
+		
+		List<T> in = Lists.newArrayList(entries);
+		if (numThreads <= 1 || in.size() < MinParallelBatchSize) {
+			return translator.translateEntries(in, 0, in.size());
+		}
+		
+		// big batches get split across a pool, the caches are safe to share
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			List<Callable<List<T>>> tasks = Lists.newArrayList();
+			int chunkSize = Math.max(1, in.size()/(numThreads*4));
+			for (final List<T> chunk : Lists.partition(in, chunkSize)) {
+				tasks.add(new Callable<List<T>>() {
+					@Override
+					public List<T> call() {
+						return translator.translateEntries(chunk, 0, chunk.size());
+					}
+				});
+			}
+			List<T> out = Lists.newArrayListWithCapacity(in.size());
+			for (Future<List<T>> future : pool.invokeAll(tasks)) {
+				out.addAll(future.get());
+			}
+			return out;
+		} catch (InterruptedException ex) {
+			throw new Error(ex);
+		} catch (ExecutionException ex) {
+			throw new Error("Unable to translate entries!", ex.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private <T extends Entry> List<T> translateEntries(List<T> entries, int start, int stop) {
+		List<T> out = Lists.newArrayListWithCapacity(stop - start);
+		for (int i=start; i<stop; i++) {
+			out.add(translateEntry(entries.get(i)));
+		}
+		return out;
+	}
+	
+	public <T extends Entry> ListMultimap<ClassEntry,T> translateEntriesByOuterClass(Collection<T> entries) {
+		return translateEntriesByOuterClass(entries, 1);
+	}
+	
+	public <T extends Entry> ListMultimap<ClassEntry,T> translateEntriesByOuterClass(Collection<T> entries, int numThreads) {
+		// group the translated entries by their translated outer class, in class name order
+		ListMultimap<ClassEntry,T> out = MultimapBuilder.treeKeys(new Comparator<ClassEntry>() {
+			@Override
+			public int compare(ClassEntry a, ClassEntry b) {
+				return a.getName().compareTo(b.getName());
+			}
+		}).arrayListValues().build();
+		for (T entry : translateEntries(entries, numThreads)) {
+			out.put(entry.getClassEntry().getOutermostClassEntry(), entry);
+		}
+		return out;
+	}
+	
 	public <T extends Entry> String translate(T entry) {
 		if (entry instanceof ClassEntry) {
 			return translate((ClassEntry)entry);
@@ -97,14 +322,27 @@ public class Translator {
 	}
 	
 	public ClassEntry translateEntry(ClassEntry in) {
+		if (m_entryCache == null) {
+			return translateClassEntry(in);
+		}
+		ClassEntry out = (ClassEntry)getCached(m_entryCache, in);
+		if (out == null) {
+			long generation = m_generation.get();
+			out = translateClassEntry(in);
+			m_entryCache.put(in, new Translation(out, generation, getOuterClassNames(in)));
+		}
+		return out;
+	}
+	
+	private ClassEntry translateClassEntry(ClassEntry in) {
 		
 		if (in.isInnerClass()) {
 			
 			// translate as much of the class chain as we can
 			List<ClassMapping> mappingsChain = getClassMappingChain(in);
-			String[] obfClassNames = in.getName().split("\\$");
+			List<String> obfClassNames = in.getClassChainNames();
 			StringBuilder buf = new StringBuilder();
-			for (int i=0; i<obfClassNames.length; i++) {
+			for (int i=0; i<obfClassNames.size(); i++) {
 				boolean isFirstClass = buf.length() == 0;
 				String className = null;
 				ClassMapping classMapping = mappingsChain.get(i);
@@ -115,7 +353,7 @@ public class Translator {
 					);
 				}
 				if (className == null) {
-					className = obfClassNames[i];
+					className = obfClassNames.get(i);
 				}
 				if (!isFirstClass) {
 					buf.append("$");
@@ -141,7 +379,7 @@ public class Translator {
 	public String translate(FieldEntry in) {
 		
 		// resolve the class entry
-		ClassEntry resolvedClassEntry = m_index.resolveEntryClass(in);
+		ClassEntry resolvedClassEntry = getTranslationIndex().resolveEntryClass(in);
 		if (resolvedClassEntry != null) {
 		
 			// look for the class
@@ -162,6 +400,19 @@ public class Translator {
 	}
 	
 	public FieldEntry translateEntry(FieldEntry in) {
+		if (m_entryCache == null) {
+			return translateFieldEntry(in);
+		}
+		FieldEntry out = (FieldEntry)getCached(m_entryCache, in);
+		if (out == null) {
+			long generation = m_generation.get();
+			out = translateFieldEntry(in);
+			m_entryCache.put(in, new Translation(out, generation, getOuterClassNames(in)));
+		}
+		return out;
+	}
+	
+	private FieldEntry translateFieldEntry(FieldEntry in) {
 		String name = translate(in);
 		if (name == null) {
 			name = in.getName();
@@ -172,7 +423,7 @@ public class Translator {
 	public String translate(MethodEntry in) {
 		
 		// resolve the class entry
-		ClassEntry resolvedClassEntry = m_index.resolveEntryClass(in);
+		ClassEntry resolvedClassEntry = getTranslationIndex().resolveEntryClass(in);
 		if (resolvedClassEntry != null) {
 		
 			// look for class
@@ -193,6 +444,19 @@ public class Translator {
 	}
 	
 	public MethodEntry translateEntry(MethodEntry in) {
+		if (m_entryCache == null) {
+			return translateMethodEntry(in);
+		}
+		MethodEntry out = (MethodEntry)getCached(m_entryCache, in);
+		if (out == null) {
+			long generation = m_generation.get();
+			out = translateMethodEntry(in);
+			m_entryCache.put(in, new Translation(out, generation, getOuterClassNames(in)));
+		}
+		return out;
+	}
+	
+	private MethodEntry translateMethodEntry(MethodEntry in) {
 		String name = translate(in);
 		if (name == null) {
 			name = in.getName();
@@ -247,11 +511,33 @@ public class Translator {
 	}
 	
 	public Type translateType(Type type) {
-		return new Type(type, m_classNameReplacer);
+		if (m_typeCache == null) {
+			return new Type(type, m_classNameReplacer);
+		}
+		Type out = (Type)getCached(m_typeCache, type);
+		if (out == null) {
+			long generation = m_generation.get();
+			out = new Type(type, m_classNameReplacer);
+			Set<String> outerClassNames = Sets.newHashSet();
+			addOuterClassNames(outerClassNames, type);
+			m_typeCache.put(type, new Translation(out, generation, outerClassNames));
+		}
+		return out;
 	}
 	
 	public Signature translateSignature(Signature signature) {
-		return new Signature(signature, m_classNameReplacer);
+		if (m_signatureCache == null) {
+			return new Signature(signature, m_classNameReplacer);
+		}
+		Signature out = (Signature)getCached(m_signatureCache, signature);
+		if (out == null) {
+			long generation = m_generation.get();
+			out = new Signature(signature, m_classNameReplacer);
+			Set<String> outerClassNames = Sets.newHashSet();
+			addOuterClassNames(outerClassNames, signature);
+			m_signatureCache.put(signature, new Translation(out, generation, outerClassNames));
+		}
+		return out;
 	}
 	
 	private ClassMapping findClassMapping(ClassEntry in) {
@@ -262,28 +548,28 @@ public class Translator {
 	private List<ClassMapping> getClassMappingChain(ClassEntry in) {
 		
 		// get a list of all the classes in the hierarchy
-		String[] parts = in.getName().split("\\$");
-		List<ClassMapping> mappingsChain = Lists.newArrayList();
+		List<String> parts = in.getClassChainNames();
+		List<ClassMapping> mappingsChain = Lists.newArrayListWithCapacity(parts.size());
 		
 		// get mappings for the outer class
-		ClassMapping outerClassMapping = m_classes.get(parts[0]);
+		ClassMapping outerClassMapping = m_classes.get(parts.get(0));
 		mappingsChain.add(outerClassMapping);
 		
-		for (int i=1; i<parts.length; i++) {
+		for (int i=1; i<parts.size(); i++) {
 			
 			// get mappings for the inner class
 			ClassMapping innerClassMapping = null;
 			if (outerClassMapping != null) {
 				innerClassMapping = m_direction.choose(
-					outerClassMapping.getInnerClassByObfSimple(parts[i]),
-					outerClassMapping.getInnerClassByDeobfThenObfSimple(parts[i])
+					outerClassMapping.getInnerClassByObfSimple(parts.get(i)),
+					outerClassMapping.getInnerClassByDeobfThenObfSimple(parts.get(i))
 				);
 			}
 			mappingsChain.add(innerClassMapping);
 			outerClassMapping = innerClassMapping;
 		}
 		
-		assert(mappingsChain.size() == parts.length);
+		assert(mappingsChain.size() == parts.size());
 		return mappingsChain;
 	}
 }
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma.mapping;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+import cuchaz.enigma.CopyOnWriteMap;
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.TranslatedIndex;
+import cuchaz.enigma.analysis.TranslationIndex;
+
+public class TranslatorCache {
+	
+	// per translator and per kind of thing translated
+	public static final int MaxCachedTranslations = 50000;
+	
+	private Mappings m_mappings;
+	private JarIndex m_index;
+	private Translator m_deobfTranslator;
+	private Translator m_obfTranslator;
+	
+	// the obfuscating translator's state, kept around so renames can patch it
+	private TranslatedIndex m_deobfIndex;
+	private Multimap<ClassEntry,ClassEntry> m_classesByMemberType;
+	
+	// the outer class mappings as of the last update, ie the mappings as we found them plus what changed since
+	// they're shared by all the snapshots, so they never change, the renamer asks us to copy one first
+	private Map<String,ClassMapping> m_classesByObf;
+	private Map<String,ClassMapping> m_classesByDeobf;
+	private CopyOnWriteMap<String,Optional<ClassMapping>> m_changedClassesByObf;
+	private CopyOnWriteMap<String,Optional<ClassMapping>> m_changedClassesByDeobf;
+	private MappingsSnapshot m_snapshot;
+	private long m_version;
+	
+	public TranslatorCache(Mappings mappings, JarIndex index) {
+		m_mappings = mappings;
+		m_index = index;
+		
+		// only the maps get copied, binary mappings still only load the classes someone looks up
+		m_classesByObf = m_mappings.copyClassesByObf();
+		m_classesByDeobf = m_mappings.copyClassesByDeobf();
+		m_changedClassesByObf = new CopyOnWriteMap<String,Optional<ClassMapping>>();
+		m_changedClassesByDeobf = new CopyOnWriteMap<String,Optional<ClassMapping>>();
+		m_snapshot = null;
+		
+		// the deobfuscating translator reads the mappings directly, so it never goes stale
+		m_deobfTranslator = m_mappings.getTranslator(TranslationDirection.Deobfuscating, m_index.getTranslationIndex());
+		m_deobfTranslator.enableCache(MaxCachedTranslations);
+		m_obfTranslator = null;
+	}
+	
+	public synchronized Translator getTranslator(TranslationDirection direction) {
+		switch (direction) {
+			case Deobfuscating:
+				return m_deobfTranslator;
+			case Obfuscating:
+				if (m_obfTranslator == null) {
+					buildObfTranslator();
+				}
+				return m_obfTranslator;
+			default:
+				throw new Error("Invalid translation direction!");
+		}
+	}
+	
+	private void buildObfTranslator() {
+		if (m_deobfIndex == null) {
+			m_deobfIndex = new TranslatedIndex(m_index.getTranslationIndex(), m_deobfTranslator);
+		}
+		
+		// this one reads the mappings directly too
+		Map<String,ClassMapping> classes = new ClassMappingsView(TranslationDirection.Obfuscating, m_mappings.m_classesByObf, m_mappings.m_classesByDeobf);
+		m_obfTranslator = new Translator(TranslationDirection.Obfuscating, classes, m_deobfIndex);
+		m_obfTranslator.enableCache(MaxCachedTranslations);
+	}
+	
+	public synchronized MappingsSnapshot getSnapshot() {
+		if (m_snapshot == null) {
+			// nothing gets copied, the class mappings and the translated index never change once the snapshot sees them
+			Supplier<TranslatedIndex> deobfIndexSource;
+			if (m_deobfIndex != null) {
+				deobfIndexSource = Suppliers.ofInstance(m_deobfIndex);
+			} else {
+				final long version = m_version;
+				deobfIndexSource = new Supplier<TranslatedIndex>() {
+					@Override
+					public TranslatedIndex get() {
+						return getDeobfIndex(version);
+					}
+				};
+			}
+			m_snapshot = new MappingsSnapshot(
+				new ClassMappingsView(TranslationDirection.Deobfuscating, m_classesByObf, m_classesByDeobf, m_changedClassesByObf),
+				new ClassMappingsView(TranslationDirection.Obfuscating, m_classesByObf, m_classesByDeobf, m_changedClassesByDeobf),
+				m_index,
+				deobfIndexSource
+			);
+		}
+		return m_snapshot;
+	}
+	
+	private synchronized TranslatedIndex getDeobfIndex(long version) {
+		if (version != m_version) {
+			// the mappings moved on, we can't help
+			return null;
+		}
+		if (m_deobfIndex == null) {
+			// we're not on the thread that changes the mappings, so translate what the snapshots see
+			Translator deobfTranslator = new Translator(TranslationDirection.Deobfuscating, getClassesByObf(), m_index.getTranslationIndex());
+			deobfTranslator.enableCache(MaxCachedTranslations);
+			m_deobfIndex = new TranslatedIndex(m_index.getTranslationIndex(), deobfTranslator);
+		}
+		return m_deobfIndex;
+	}
+	
+	private Map<String,ClassMapping> getClassesByObf() {
+		return new ClassMappingsView(TranslationDirection.Deobfuscating, m_classesByObf, m_classesByDeobf, m_changedClassesByObf);
+	}
+	
+	public synchronized void beforeChange(ClassEntry obfClassEntry) {
+		
+		// call this before changing the mappings for anything in the class
+		// snapshots share the class mappings that haven't changed, so copy this one before it does
+		String outerClassName = obfClassEntry.getOutermostClassName();
+		ClassMapping classMapping = m_mappings.getClassByObf(outerClassName);
+		if (classMapping != null && classMapping == getClassesByObf().get(outerClassName)) {
+			m_mappings.replaceClassMapping(new ClassMapping(classMapping));
+		}
+	}
+	
+	public synchronized void update(Entry obfEntry) {
+		
+		// call this after the mappings for the entry have changed
+		
+		List<ClassEntry> changedClassEntries = Lists.newArrayList();
+		if (obfEntry instanceof ClassEntry) {
+			// renaming a class renames its inner classes too
+			getClassAndInnerClasses(changedClassEntries, (ClassEntry)obfEntry);
+		} else if (obfEntry instanceof MethodEntry) {
+			for (MethodEntry methodEntry : m_index.getRelatedMethodImplementations((MethodEntry)obfEntry)) {
+				changedClassEntries.add(methodEntry.getClassEntry());
+			}
+		} else if (obfEntry instanceof FieldEntry || obfEntry instanceof ConstructorEntry || obfEntry instanceof ArgumentEntry) {
+			changedClassEntries.add(obfEntry.getClassEntry());
+		} else {
+			throw new Error("Unknown entry type: " + obfEntry.getClass().getName());
+		}
+		
+		// renames can add new class mappings or change their deobf names
+		Set<String> outerClassNames = Sets.newHashSet();
+		for (ClassEntry classEntry : changedClassEntries) {
+			outerClassNames.add(classEntry.getOutermostClassName());
+		}
+		Map<String,ClassMapping> classesByObf = getClassesByObf();
+		Map<String,Optional<ClassMapping>> changesByObf = Maps.newHashMap();
+		Map<String,Optional<ClassMapping>> changesByDeobf = Maps.newHashMap();
+		Set<String> deobfOuterClassNames = Sets.newHashSet();
+		for (String outerClassName : outerClassNames) {
+			ClassMapping oldClassMapping = classesByObf.get(outerClassName);
+			if (oldClassMapping != null) {
+				String oldKey = ClassMappingsView.getKey(TranslationDirection.Obfuscating, oldClassMapping);
+				changesByDeobf.put(oldKey, Optional.<ClassMapping>absent());
+				deobfOuterClassNames.add(oldKey);
+			} else {
+				deobfOuterClassNames.add(outerClassName);
+			}
+		}
+		for (String outerClassName : outerClassNames) {
+			ClassMapping classMapping = m_mappings.getClassByObf(outerClassName);
+			changesByObf.put(outerClassName, Optional.fromNullable(classMapping));
+			if (classMapping != null) {
+				String key = ClassMappingsView.getKey(TranslationDirection.Obfuscating, classMapping);
+				changesByDeobf.put(key, Optional.of(classMapping));
+				deobfOuterClassNames.add(key);
+			} else {
+				deobfOuterClassNames.add(outerClassName);
+			}
+		}
+		m_changedClassesByObf = m_changedClassesByObf.withChanges(changesByObf);
+		m_changedClassesByDeobf = m_changedClassesByDeobf.withChanges(changesByDeobf);
+		m_snapshot = null;
+		m_version++;
+		
+		// cached translations remember which outer classes they read, so only the ones that read these go
+		// the deobfuscating translator's index never changes, so nothing else can move under it
+		m_deobfTranslator.invalidate(outerClassNames);
+		
+		if (m_deobfIndex == null) {
+			// nothing built yet, so nothing to patch
+			return;
+		}
+		
+		Set<ClassEntry> retranslateClassEntries = Sets.newHashSet();
+		if (obfEntry instanceof ClassEntry) {
+			
+			// renamed classes change the classes that mention them
+			TranslationIndex index = m_index.getTranslationIndex();
+			if (m_classesByMemberType == null) {
+				m_classesByMemberType = index.getClassesByMemberType();
+			}
+			for (ClassEntry classEntry : changedClassEntries) {
+				retranslateClassEntries.add(classEntry);
+				retranslateClassEntries.addAll(index.getSubclass(classEntry));
+				retranslateClassEntries.addAll(index.getImplementations(classEntry));
+				retranslateClassEntries.addAll(m_classesByMemberType.get(classEntry));
+			}
+			
+		} else if (obfEntry instanceof FieldEntry || obfEntry instanceof MethodEntry) {
+			retranslateClassEntries.addAll(changedClassEntries);
+		}
+		// the translation index doesn't know about the names of constructors or arguments
+		
+		// snapshots keep the old index, the new one shares all the classes that didn't change
+		m_deobfIndex = m_deobfIndex.retranslate(m_deobfTranslator, retranslateClassEntries);
+		if (m_obfTranslator == null) {
+			return;
+		}
+		m_obfTranslator.setTranslationIndex(m_deobfIndex);
+		
+		// the obfuscating translator reads deobf names, the old ones and the new ones
+		// new or renamed members can also change which class members of subclasses resolve to
+		if (obfEntry instanceof FieldEntry || obfEntry instanceof MethodEntry) {
+			Set<ClassEntry> subclassEntries = Sets.newHashSet();
+			for (ClassEntry classEntry : changedClassEntries) {
+				getSubclassesAndImplementations(subclassEntries, classEntry);
+			}
+			for (ClassEntry subclassEntry : subclassEntries) {
+				deobfOuterClassNames.add(m_deobfTranslator.translateEntry(subclassEntry).getOutermostClassName());
+			}
+		}
+		m_obfTranslator.invalidate(deobfOuterClassNames);
+	}
+	
+	private void getSubclassesAndImplementations(Set<ClassEntry> out, ClassEntry obfClassEntry) {
+		TranslationIndex index = m_index.getTranslationIndex();
+		List<ClassEntry> subclassEntries = Lists.newArrayList(index.getSubclass(obfClassEntry));
+		subclassEntries.addAll(index.getImplementations(obfClassEntry));
+		for (ClassEntry subclassEntry : subclassEntries) {
+			if (out.add(subclassEntry)) {
+				getSubclassesAndImplementations(out, subclassEntry);
+			}
+		}
+	}
+	
+	private void getClassAndInnerClasses(List<ClassEntry> out, ClassEntry obfClassEntry) {
+		out.add(obfClassEntry);
+		for (ClassEntry innerClassEntry : m_index.getInnerClasses(obfClassEntry)) {
+			getClassAndInnerClasses(out, innerClassEntry);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.FieldMapping;
+import cuchaz.enigma.mapping.MethodMapping;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+public class BenchmarkMappingsMemory {
+	
+	// run by hand, eg: java -Xmx2g cuchaz.enigma.BenchmarkMappingsMemory [numClasses]
+	public static void main(String[] args) {
+		int numClasses = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		
+		// use the same shape of mappings for both layouts
+		List<ClassShape> shapes = makeShapes(numClasses, new Random(12345));
+		
+		// warm up so class loading doesn't count against the first layout
+		buildLegacy(makeShapes(100, new Random(1)));
+		buildCompact(makeShapes(100, new Random(1)));
+		
+		long legacyBytes = measure(new Builder() {
+			@Override
+			public Object build(List<ClassShape> shapes) {
+				return buildLegacy(shapes);
+			}
+		}, shapes);
+		long compactBytes = measure(new Builder() {
+			@Override
+			public Object build(List<ClassShape> shapes) {
+				return buildCompact(shapes);
+			}
+		}, shapes);
+		
+		System.out.println(String.format("%d classes", numClasses));
+		System.out.println(String.format("six eager maps, string keys: %8.1f MiB, %6d bytes per class", legacyBytes/1024.0/1024.0, legacyBytes/numClasses));
+		System.out.println(String.format("lazy maps, packed keys:      %8.1f MiB, %6d bytes per class", compactBytes/1024.0/1024.0, compactBytes/numClasses));
+		System.out.println(String.format("saved %.0f%%", 100.0*(legacyBytes - compactBytes)/legacyBytes));
+	}
+	
+	private static interface Builder {
+		Object build(List<ClassShape> shapes);
+	}
+	
+	private static class ClassShape {
+		String name;
+		List<String> innerClassNames = Lists.newArrayList();
+		List<String> fieldNames = Lists.newArrayList();
+		List<Type> fieldTypes = Lists.newArrayList();
+		List<String> methodNames = Lists.newArrayList();
+		List<Signature> methodSignatures = Lists.newArrayList();
+	}
+	
+	private static List<ClassShape> makeShapes(int numClasses, Random rand) {
+		
+		// the mappings readers share descriptors, so do the same here
+		Type[] types = { new Type("I"), new Type("Z"), new Type("J"), new Type("Ljava/lang/String;"), new Type("Lnone/a;"), new Type("[B") };
+		Signature[] signatures = { new Signature("()V"), new Signature("(I)V"), new Signature("()I"), new Signature("(Lnone/a;)Z"), new Signature("(IILjava/lang/String;)Lnone/b;") };
+		
+		List<ClassShape> shapes = Lists.newArrayList();
+		for (int i = 0; i < numClasses; i++) {
+			ClassShape shape = new ClassShape();
+			shape.name = "none/c" + i;
+			
+			// most classes are small, a few are big, and most have no inner classes
+			int numInnerClasses = rand.nextInt(10) == 0 ? 1 + rand.nextInt(3) : 0;
+			for (int j = 0; j < numInnerClasses; j++) {
+				shape.innerClassNames.add(shape.name + "$" + (char)('a' + j));
+			}
+			int numFields = rand.nextInt(10) == 0 ? rand.nextInt(40) : rand.nextInt(4);
+			for (int j = 0; j < numFields; j++) {
+				shape.fieldNames.add("f" + j);
+				shape.fieldTypes.add(types[rand.nextInt(types.length)]);
+			}
+			int numMethods = rand.nextInt(10) == 0 ? rand.nextInt(60) : rand.nextInt(6);
+			for (int j = 0; j < numMethods; j++) {
+				shape.methodNames.add("m" + j);
+				shape.methodSignatures.add(signatures[rand.nextInt(signatures.length)]);
+			}
+			shapes.add(shape);
+		}
+		return shapes;
+	}
+	
+	private static List<ClassMapping> buildCompact(List<ClassShape> shapes) {
+		List<ClassMapping> classMappings = Lists.newArrayList();
+		for (ClassShape shape : shapes) {
+			ClassMapping classMapping = new ClassMapping(shape.name, "deobf/C" + shape.name.substring(6));
+			for (String innerClassName : shape.innerClassNames) {
+				classMapping.addInnerClassMapping(new ClassMapping(innerClassName));
+			}
+			for (int i = 0; i < shape.fieldNames.size(); i++) {
+				classMapping.addFieldMapping(new FieldMapping(shape.fieldNames.get(i), shape.fieldTypes.get(i), "field" + i));
+			}
+			for (int i = 0; i < shape.methodNames.size(); i++) {
+				classMapping.addMethodMapping(new MethodMapping(shape.methodNames.get(i), shape.methodSignatures.get(i), "method" + i));
+			}
+			classMappings.add(classMapping);
+		}
+		return classMappings;
+	}
+	
+	private static List<LegacyClassMapping> buildLegacy(List<ClassShape> shapes) {
+		List<LegacyClassMapping> classMappings = Lists.newArrayList();
+		for (ClassShape shape : shapes) {
+			LegacyClassMapping classMapping = new LegacyClassMapping(shape.name, "deobf/C" + shape.name.substring(6));
+			for (String innerClassName : shape.innerClassNames) {
+				LegacyClassMapping innerClassMapping = new LegacyClassMapping(innerClassName, null);
+				classMapping.m_innerClassesByObfSimple.put(innerClassMapping.m_obfSimpleName, innerClassMapping);
+			}
+			for (int i = 0; i < shape.fieldNames.size(); i++) {
+				FieldMapping fieldMapping = new FieldMapping(shape.fieldNames.get(i), shape.fieldTypes.get(i), "field" + i);
+				classMapping.m_fieldsByObf.put(fieldMapping.getObfName() + ":" + fieldMapping.getObfType(), fieldMapping);
+				classMapping.m_fieldsByDeobf.put(fieldMapping.getDeobfName() + ":" + fieldMapping.getObfType(), fieldMapping);
+			}
+			for (int i = 0; i < shape.methodNames.size(); i++) {
+				MethodMapping methodMapping = new MethodMapping(shape.methodNames.get(i), shape.methodSignatures.get(i), "method" + i);
+				classMapping.m_methodsByObf.put(methodMapping.getObfName() + methodMapping.getObfSignature(), methodMapping);
+				classMapping.m_methodsByDeobf.put(methodMapping.getDeobfName() + methodMapping.getObfSignature(), methodMapping);
+			}
+			classMappings.add(classMapping);
+		}
+		return classMappings;
+	}
+	
+	private static long measure(Builder builder, List<ClassShape> shapes) {
+		long before = usedMemory();
+		Object mappings = builder.build(shapes);
+		long after = usedMemory();
+		
+		// keep the mappings reachable until after the measurement
+		if (mappings.hashCode() == 0) {
+			System.out.println();
+		}
+		return after - before;
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	// the ClassMapping layout before the maps were made lazy and the member keys were packed
+	private static class LegacyClassMapping {
+		
+		String m_obfFullName;
+		String m_obfSimpleName;
+		String m_deobfName;
+		Map<String,LegacyClassMapping> m_innerClassesByObfSimple = Maps.newHashMap();
+		Map<String,LegacyClassMapping> m_innerClassesByDeobf = Maps.newHashMap();
+		Map<String,FieldMapping> m_fieldsByObf = Maps.newHashMap();
+		Map<String,FieldMapping> m_fieldsByDeobf = Maps.newHashMap();
+		Map<String,MethodMapping> m_methodsByObf = Maps.newHashMap();
+		Map<String,MethodMapping> m_methodsByDeobf = Maps.newHashMap();
+		
+		public LegacyClassMapping(String obfFullName, String deobfName) {
+			m_obfFullName = obfFullName;
+			m_obfSimpleName = obfFullName.substring(obfFullName.lastIndexOf('/') + 1);
+			m_deobfName = deobfName;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+
+import com.strobel.assembler.metadata.Buffer;
+
+import cuchaz.enigma.analysis.JarClassStore;
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.mapping.Translator;
+
+public class TestClassBytesCache {
+	
+	@Test
+	public void hitsAndMisses() {
+		ClassBytesCache cache = new ClassBytesCache(1024*1024, false);
+		byte[] data = new byte[100];
+		assertThat(cache.get("none/a"), is(nullValue()));
+		cache.put("none/a", data);
+		assertThat(cache.get("none/a"), is(sameInstance(data)));
+		assertThat(cache.getNumHits(), is(1L));
+		assertThat(cache.getNumMisses(), is(1L));
+		assertThat(cache.getNumEntries(), is(1));
+	}
+	
+	@Test
+	public void notFound() {
+		ClassBytesCache cache = new ClassBytesCache(1024*1024, false);
+		cache.put("java/lang/Missing", null);
+		assertThat(cache.get("java/lang/Missing"), is(sameInstance(ClassBytesCache.NotFound)));
+		assertThat(cache.getNumHits(), is(1L));
+	}
+	
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		// room for two of these, but not three
+		ClassBytesCache cache = new ClassBytesCache(2500, false);
+		cache.put("none/a", new byte[1000]);
+		cache.put("none/b", new byte[1000]);
+		cache.get("none/a");
+		cache.put("none/c", new byte[1000]);
+		
+		assertThat(cache.get("none/b"), is(nullValue()));
+		assertThat(cache.get("none/a"), is(notNullValue()));
+		assertThat(cache.get("none/c"), is(notNullValue()));
+		assertThat(cache.getNumEvictions(), is(1L));
+		assertThat(cache.getNumBytes(), is(lessThanOrEqualTo(2500L)));
+	}
+	
+	@Test
+	public void tooBig() {
+		ClassBytesCache cache = new ClassBytesCache(500, false);
+		cache.put("none/a", new byte[1000]);
+		assertThat(cache.get("none/a"), is(nullValue()));
+		assertThat(cache.getNumBytes(), is(0L));
+	}
+	
+	@Test
+	public void softReferences() {
+		ClassBytesCache cache = new ClassBytesCache(1024*1024, true);
+		byte[] data = new byte[100];
+		cache.put("none/a", data);
+		
+		// the data is still strongly reachable here, so the GC can't take it
+		assertThat(cache.get("none/a"), is(sameInstance(data)));
+		cache.put("none/a", null);
+		assertThat(cache.get("none/a"), is(sameInstance(ClassBytesCache.NotFound)));
+		assertThat(cache.getNumEntries(), is(1));
+	}
+	
+	@Test
+	public void sharedByLoaders()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/loneClass.jar");
+		JarClassStore classStore = new JarClassStore(jar);
+		JarIndex index = new JarIndex();
+		index.indexJar(classStore, true);
+		ClassBytesCache cache = new ClassBytesCache(1024*1024, false);
+		TranslatingTypeLoader loader1 = new TranslatingTypeLoader(classStore, index, new Translator(), new Translator(), cache);
+		TranslatingTypeLoader loader2 = new TranslatingTypeLoader(classStore, index, new Translator(), new Translator(), cache);
+		
+		assertThat(loader1.tryLoadType("none/a", new Buffer()), is(true));
+		assertThat(loader2.tryLoadType("none/a", new Buffer()), is(true));
+		assertThat(cache.getNumMisses(), is(1L));
+		assertThat(cache.getNumHits(), is(1L));
+		
+		// classes the jar doesn't have go to the default loader, but we only look in the jar once
+		assertThat(loader1.tryLoadType("java/lang/Object", new Buffer()), is(true));
+		assertThat(loader2.tryLoadType("java/lang/Object", new Buffer()), is(true));
+		assertThat(cache.get("java/lang/Object"), is(sameInstance(ClassBytesCache.NotFound)));
+	}
+}
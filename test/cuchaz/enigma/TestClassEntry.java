@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Test;
+
+public class TestClassEntry {
+	
+	@Test
+	public void classChain() {
+		assertThat(newClass("none/a").getClassChainNames(), contains("none/a"));
+		assertThat(newClass("none/a$b$c").getClassChainNames(), contains("none/a", "b", "c"));
+		assertThat(newClass("none/a$b$c").getClassChain(), contains(newClass("none/a"), newClass("none/a$b"), newClass("none/a$b$c")));
+		assertThat(newClass("none/a$$b").getClassChain(), contains(newClass("none/a"), newClass("none/a$"), newClass("none/a$$b")));
+	}
+	
+	@Test
+	public void classChainTrailingDollar() {
+		// eg Scala objects, the trailing $ isn't an inner class
+		assertThat(newClass("scala/Foo$").getClassChainNames(), contains("scala/Foo"));
+		assertThat(newClass("scala/Foo$").getClassChain(), contains(newClass("scala/Foo")));
+		assertThat(newClass("scala/Foo$Bar$").getClassChainNames(), contains("scala/Foo", "Bar"));
+		assertThat(newClass("scala/Foo$Bar$").getClassChain(), contains(newClass("scala/Foo"), newClass("scala/Foo$Bar")));
+	}
+}
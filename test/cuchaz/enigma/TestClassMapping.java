@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.FieldMapping;
+import cuchaz.enigma.mapping.MethodMapping;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+public class TestClassMapping {
+	
+	@Test
+	public void empty() {
+		ClassMapping classMapping = new ClassMapping("none/a", "deobf/A");
+		assertThat(classMapping.fields(), is(emptyIterable()));
+		assertThat(classMapping.methods(), is(emptyIterable()));
+		assertThat(classMapping.innerClasses(), is(emptyIterable()));
+		assertThat(classMapping.getFieldByObf("a", new Type("I")), is(nullValue()));
+		assertThat(classMapping.getMethodByDeobf("b", new Signature("()V")), is(nullValue()));
+		assertThat(classMapping.getInnerClassByObfSimple("a"), is(nullValue()));
+		assertThat(classMapping.containsArgument(newMethod("none/a", "a", "()V"), "x"), is(false));
+	}
+	
+	@Test
+	public void members() {
+		ClassMapping classMapping = new ClassMapping("none/a", "deobf/A");
+		classMapping.setFieldName("a", new Type("I"), "intField");
+		classMapping.setFieldName("a", new Type("J"), "longField");
+		classMapping.setMethodName("a", new Signature("()V"), "run");
+		classMapping.setArgumentName("a", new Signature("(I)V"), 0, "arg");
+		
+		// keys are by name and descriptor, so these are all different members
+		assertThat(classMapping.getDeobfFieldName("a", new Type("I")), is("intField"));
+		assertThat(classMapping.getDeobfFieldName("a", new Type("J")), is("longField"));
+		assertThat(classMapping.getObfFieldName("longField", new Type("J")), is("a"));
+		assertThat(classMapping.getObfFieldName("longField", new Type("I")), is(nullValue()));
+		assertThat(classMapping.getMethodByDeobf("run", new Signature("()V")).getObfName(), is("a"));
+		assertThat(classMapping.containsArgument(newMethod("none/a", "a", "(I)V"), "arg"), is(true));
+		
+		classMapping.setFieldName("a", new Type("I"), "renamed");
+		assertThat(classMapping.containsDeobfField("intField", new Type("I")), is(false));
+		assertThat(classMapping.containsDeobfField("renamed", new Type("I")), is(true));
+		
+		classMapping.removeFieldMapping(classMapping.getFieldByObf("a", new Type("J")));
+		assertThat(classMapping.containsObfField("a", new Type("J")), is(false));
+		
+		classMapping.setMethodObfNameAndSignature("a", new Signature("()V"), "b", new Signature("()I"));
+		assertThat(classMapping.containsObfMethod("a", new Signature("()V")), is(false));
+		assertThat(classMapping.getMethodByObf("b", new Signature("()I")).getDeobfName(), is("run"));
+	}
+	
+	@Test
+	public void duplicateMember() {
+		ClassMapping classMapping = new ClassMapping("none/a");
+		classMapping.addFieldMapping(new FieldMapping("a", new Type("I"), "field"));
+		classMapping.addMethodMapping(new MethodMapping("a", new Signature("()V")));
+		assertThat(addAgain(classMapping, new FieldMapping("a", new Type("I"), "other")), is("Already have mapping for none/a.a:I"));
+		assertThat(addAgain(classMapping, new MethodMapping("a", new Signature("()V"))), is("Already have mapping for none/a.a()V"));
+	}
+	
+	@Test
+	public void copyAndSerialize()
+	throws Exception {
+		ClassMapping classMapping = new ClassMapping("none/a", "deobf/A");
+		classMapping.setFieldName("a", new Type("I"), "field");
+		ClassMapping emptyMapping = new ClassMapping("none/b");
+		
+		// copies and deserialized mappings of either kind must still take new members
+		for (ClassMapping original : new ClassMapping[] { classMapping, emptyMapping }) {
+			for (ClassMapping other : new ClassMapping[] { new ClassMapping(original), roundTrip(original) }) {
+				other.setFieldName("b", new Type("Z"), "flag");
+				other.setMethodName("c", new Signature("()V"), "method");
+				other.setInnerClassName(newClass(original.getObfFullName() + "$a"), "Inner");
+				assertThat(other.getDeobfFieldName("b", new Type("Z")), is("flag"));
+				assertThat(other.getInnerClassByDeobf("Inner").getObfFullName(), is(original.getObfFullName() + "$a"));
+				assertThat(other.getDeobfFieldName("a", new Type("I")), is(original.getDeobfFieldName("a", new Type("I"))));
+				assertThat(original.getDeobfFieldName("b", new Type("Z")), is(nullValue()));
+			}
+		}
+	}
+	
+	private String addAgain(ClassMapping classMapping, Object memberMapping) {
+		try {
+			if (memberMapping instanceof FieldMapping) {
+				classMapping.addFieldMapping((FieldMapping)memberMapping);
+			} else {
+				classMapping.addMethodMapping((MethodMapping)memberMapping);
+			}
+		} catch (Error err) {
+			return err.getMessage();
+		}
+		return null;
+	}
+	
+	private ClassMapping roundTrip(ClassMapping classMapping)
+	throws Exception {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+			out.writeObject(classMapping);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+			return (ClassMapping)in.readObject();
+		}
+	}
+}
@@ -21,6 +21,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarClassStore;
 
 
 public class TestDeobfed {
@@ -33,7 +34,7 @@ public class TestDeobfed {
 	throws Exception {
 		m_jar = new JarFile("build/test-deobf/translation.jar");
 		m_index = new JarIndex();
-		m_index.indexJar(m_jar, true);
+		m_index.indexJar(new JarClassStore(m_jar), true);
 	}
 	
 	@Test
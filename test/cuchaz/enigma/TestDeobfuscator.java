@@ -12,18 +12,27 @@ package cuchaz.enigma;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarFile;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import cuchaz.enigma.mapping.ClassEntry;
 
 public class TestDeobfuscator {
 	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
 	private Deobfuscator getDeobfuscator()
 	throws IOException {
 		return new Deobfuscator(new JarFile("build/test-obf/loneClass.jar"));
@@ -54,4 +63,40 @@ public class TestDeobfuscator {
 		Deobfuscator deobfuscator = getDeobfuscator();
 		deobfuscator.getSource(deobfuscator.getSourceTree("none/a"));
 	}
+	
+	@Test
+	public void decompileClassAgain()
+	throws Exception {
+		Deobfuscator deobfuscator = getDeobfuscator();
+		String source = deobfuscator.getSource(deobfuscator.getSourceTree("none/a"));
+		assertEquals(source, deobfuscator.getSource(deobfuscator.getSourceTree("none/a")));
+		
+		// renames have to show up in the next decompile
+		deobfuscator.rename(new ClassEntry("none/a"), "deobf/Renamed");
+		String renamedSource = deobfuscator.getSource(deobfuscator.getSourceTree("none/a"));
+		assertTrue(renamedSource.contains("class Renamed"));
+		assertFalse(source.contains("class Renamed"));
+	}
+	
+	@Test
+	public void writeSourcesInParallel()
+	throws Exception {
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/innerClasses.jar"));
+		File sequentialDir = m_tempFolder.newFolder();
+		File parallelDir = m_tempFolder.newFolder();
+		deobfuscator.writeSources(sequentialDir, null);
+		deobfuscator.writeSources(parallelDir, null, 4);
+		Map<String,String> sequential = readSources(sequentialDir);
+		assertEquals(7, sequential.size());
+		assertEquals(sequential, readSources(parallelDir));
+	}
+	
+	private Map<String,String> readSources(File dir)
+	throws IOException {
+		Map<String,String> sources = Maps.newHashMap();
+		for (File file : Files.walk(dir.toPath()).map(path -> path.toFile()).filter(file -> file.getName().endsWith(".java")).toArray(File[]::new)) {
+			sources.put(dir.toPath().relativize(file.toPath()).toString(), new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+		}
+		return sources;
+	}
 }
@@ -20,6 +20,7 @@ import org.junit.Test;
 import static cuchaz.enigma.TestEntryFactory.*;
 
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.mapping.ClassEntry;
 
 public class TestInnerClasses {
@@ -46,7 +47,7 @@ public class TestInnerClasses {
 	throws Exception {
 		m_index = new JarIndex();
 		JarFile jar = new JarFile("build/test-obf/innerClasses.jar");
-		m_index.indexJar(jar, true);
+		m_index.indexJar(new JarClassStore(jar), true);
 		m_deobfuscator = new Deobfuscator(jar);
 	}
 	
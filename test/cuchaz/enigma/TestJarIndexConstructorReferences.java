@@ -21,6 +21,7 @@ import java.util.jar.JarFile;
 import org.junit.Test;
 
 import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
@@ -39,7 +40,7 @@ public class TestJarIndexConstructorReferences {
 	throws Exception {
 		File jarFile = new File("build/test-obf/constructors.jar");
 		m_index = new JarIndex();
-		m_index.indexJar(new JarFile(jarFile), false);
+		m_index.indexJar(new JarClassStore(new JarFile(jarFile)), false);
 	}
 	
 	@Test
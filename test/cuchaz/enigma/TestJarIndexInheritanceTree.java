@@ -22,22 +22,35 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarFile;
 
+import javassist.ClassPool;
+import javassist.CtClass;
+
 import org.junit.Test;
 
+import com.google.common.collect.Maps;
+
 import cuchaz.enigma.analysis.Access;
 import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.RelatedMethodChecker;
 import cuchaz.enigma.analysis.TranslationIndex;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.MethodEntry;
+import cuchaz.enigma.mapping.MethodMapping;
+import cuchaz.enigma.mapping.Signature;
 
 public class TestJarIndexInheritanceTree {
 	
@@ -54,7 +67,7 @@ public class TestJarIndexInheritanceTree {
 	public TestJarIndexInheritanceTree()
 	throws Exception {
 		m_index = new JarIndex();
-		m_index.indexJar(new JarFile("build/test-obf/inheritanceTree.jar"), false);
+		m_index.indexJar(new JarClassStore(new JarFile("build/test-obf/inheritanceTree.jar")), false);
 	}
 	
 	@Test
@@ -97,6 +110,77 @@ public class TestJarIndexInheritanceTree {
 		assertThat(index.getSubclass(m_subClassB), is(empty()));
 	}
 	
+	@Test
+	public void translationIndexRenamed() {
+		
+		TranslationIndex index = m_index.getTranslationIndex();
+		Map<String,String> renames = Maps.newHashMap();
+		renames.put(m_baseClass.getName(), "none/z");
+		index.renameClasses(renames);
+		
+		ClassEntry renamedBaseClass = newClass("none/z");
+		assertThat(index.getSuperclass(renamedBaseClass), is(m_objectClass));
+		assertThat(index.getSubclass(renamedBaseClass), containsInAnyOrder(
+			m_subClassA,
+			m_subClassB
+		));
+		assertThat(index.getSubclass(m_baseClass), is(empty()));
+		assertThat(index.getSuperclass(m_subClassA), is(renamedBaseClass));
+		assertThat(index.getSubclass(m_objectClass), hasItem(renamedBaseClass));
+		assertThat(index.getSubclass(m_objectClass), not(hasItem(m_baseClass)));
+	}
+	
+	@Test
+	public void translationIndexRenamedInterface()
+	throws Exception {
+		
+		// this jar doesn't have any interfaces, so make some
+		ClassPool pool = new ClassPool(true);
+		CtClass interfaceClass = pool.makeInterface("none.y");
+		CtClass implementingClass = pool.makeClass("none.x");
+		implementingClass.addInterface(interfaceClass);
+		TranslationIndex index = new TranslationIndex();
+		index.indexClass(interfaceClass);
+		index.indexClass(implementingClass);
+		
+		Map<String,String> renames = Maps.newHashMap();
+		renames.put("none/y", "none/w");
+		renames.put("none/x", "none/v");
+		index.renameClasses(renames);
+		
+		assertThat(index.getInterfaces(newClass("none/v")), contains(newClass("none/w")));
+		assertThat(index.getImplementations(newClass("none/w")), contains(newClass("none/v")));
+		assertThat(index.getInterfaces(newClass("none/x")), is(empty()));
+		assertThat(index.getImplementations(newClass("none/y")), is(empty()));
+		assertThat(index.isInterface(newClass("none/w")), is(true));
+		assertThat(index.isInterface(newClass("none/y")), is(false));
+	}
+	
+	@Test
+	public void resolveEntryClass() {
+		
+		TranslationIndex index = m_index.getTranslationIndex();
+		MethodEntry inherited = newMethod(m_subClassB, "a", "()Ljava/lang/String;");
+		MethodEntry missing = newMethod(m_subClassB, "z", "()V");
+		assertThat(index.resolveEntryClass(inherited), is(m_baseClass));
+		assertThat(index.resolveEntryClass(missing), is(nullValue()));
+		
+		// both answers should come from the cache now
+		long hits = index.getResolveCacheHits();
+		long misses = index.getResolveCacheMisses();
+		assertThat(index.resolveEntryClass(inherited), is(m_baseClass));
+		assertThat(index.resolveEntryClass(missing), is(nullValue()));
+		assertThat(index.getResolveCacheHits(), is(hits + 2));
+		assertThat(index.getResolveCacheMisses(), is(misses));
+		
+		// changing the hierarchy should throw the cache away
+		Map<String,String> renames = Maps.newHashMap();
+		renames.put(m_baseClass.getName(), "none/z");
+		index.renameClasses(renames);
+		assertThat(index.resolveEntryClass(inherited), is(newClass("none/z")));
+		assertThat(index.getResolveCacheMisses(), is(misses + 1));
+	}
+	
 	@Test
 	public void access() {
 		assertThat(m_index.getAccess(m_nameField), is(Access.Private));
@@ -145,6 +229,20 @@ public class TestJarIndexInheritanceTree {
 		assertThat(entries, containsInAnyOrder(newMethod(m_subClassB, "b", "()V")));
 	}
 	
+	@Test
+	public void relatedMethodChecker() {
+		
+		// doBaseThings() has the same name everywhere
+		RelatedMethodChecker checker = new RelatedMethodChecker(m_index);
+		checker.checkMethod(m_baseClass, new MethodMapping("a", new Signature("()V"), "doBaseThings"));
+		checker.checkMethod(m_subClassB, new MethodMapping("a", new Signature("()V"), "doBaseThings"));
+		assertThat(checker.hasProblems(), is(false));
+		
+		// but not anymore
+		checker.checkMethod(m_subClassAA, new MethodMapping("a", new Signature("()V"), "doOtherThings"));
+		assertThat(checker.hasProblems(), is(true));
+	}
+	
 	@Test
 	@SuppressWarnings("unchecked")
 	public void fieldReferences() {
@@ -203,6 +301,33 @@ public class TestJarIndexInheritanceTree {
 		));
 	}
 	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void referencesFromBehaviors() {
+		
+		// subClassB constructor
+		BehaviorEntry source = newConstructor(m_subClassB, "()V");
+		assertThat(m_index.getReferencedFields(source), contains(m_numThingsField));
+		assertThat(m_index.getReferencedBehaviors(source), contains((BehaviorEntry)newConstructor(m_baseClass, "(Ljava/lang/String;)V")));
+		assertThat(m_index.getFieldReferencesFrom(source), contains(
+			newFieldReferenceByConstructor(m_numThingsField, m_subClassB.getName(), "()V")
+		));
+		
+		// subClassB.doBThings()
+		source = newMethod(m_subClassB, "b", "()V");
+		assertThat(m_index.getReferencedFields(source), hasItem(m_numThingsField));
+		
+		// subClassB.doBaseThings()
+		source = newMethod(m_subClassB, "a", "()V");
+		assertThat(m_index.getReferencedFields(source), hasItem(newField(newClass("java/lang/System"), "out", "Ljava/io/PrintStream;")));
+		assertThat(m_index.getReferencedBehaviors(source), hasItem((BehaviorEntry)newMethod(m_baseClass, "a", "()Ljava/lang/String;")));
+		
+		// baseClass.doBaseThings() is abstract
+		source = newMethod(m_baseClass, "a", "()V");
+		assertThat(m_index.getReferencedFields(source), is(empty()));
+		assertThat(m_index.getBehaviorReferencesFrom(source), is(empty()));
+	}
+	
 	@Test
 	public void containsEntries() {
 		
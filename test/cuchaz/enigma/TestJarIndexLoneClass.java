@@ -24,10 +24,13 @@ import cuchaz.enigma.analysis.Access;
 import cuchaz.enigma.analysis.ClassImplementationsTreeNode;
 import cuchaz.enigma.analysis.ClassInheritanceTreeNode;
 import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.EntryTable;
+import cuchaz.enigma.analysis.JarClassStore;
 import cuchaz.enigma.analysis.JarIndex;
 import cuchaz.enigma.analysis.MethodInheritanceTreeNode;
 import cuchaz.enigma.mapping.BehaviorEntry;
 import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.FieldEntry;
 import cuchaz.enigma.mapping.MethodEntry;
 import cuchaz.enigma.mapping.Translator;
@@ -39,7 +42,7 @@ public class TestJarIndexLoneClass {
 	public TestJarIndexLoneClass()
 	throws Exception {
 		m_index = new JarIndex();
-		m_index.indexJar(new JarFile("build/test-obf/loneClass.jar"), false);
+		m_index.indexJar(new JarClassStore(new JarFile("build/test-obf/loneClass.jar")), false);
 	}
 	
 	@Test
@@ -50,6 +53,26 @@ public class TestJarIndexLoneClass {
 		));
 	}
 	
+	@Test
+	public void entryTable() {
+		EntryTable table = m_index.getEntryTable();
+		
+		// lookups should hand back the very entries the index holds
+		ClassEntry classEntry = table.intern(newClass("none/a"));
+		FieldEntry fieldEntry = table.intern(newField("none/a", "a", "Ljava/lang/String;"));
+		assertThat(m_index.getObfClassEntries(), hasItem(sameInstance(classEntry)));
+		assertThat(m_index.getObfFieldEntries(classEntry), hasItem(sameInstance(fieldEntry)));
+		assertThat(fieldEntry.getClassEntry(), is(sameInstance(classEntry)));
+		
+		// ids are dense and round trip
+		assertThat(table.getId(classEntry), is(not(EntryTable.NoId)));
+		assertThat(table.getEntry(table.getId(fieldEntry)), is(sameInstance((Entry)fieldEntry)));
+		assertThat(table.getId(newField("none/a", "b", "Ljava/lang/String;")), is(EntryTable.NoId));
+		for (int i=0; i<table.size(); i++) {
+			assertThat(table.getId(table.getEntry(i)), is(i));
+		}
+	}
+	
 	@Test
 	public void translationIndex() {
 		assertThat(m_index.getTranslationIndex().getSuperclass(new ClassEntry("none/a")), is(new ClassEntry("java/lang/Object")));
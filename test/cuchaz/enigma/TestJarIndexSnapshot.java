@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarClassStore;
+import cuchaz.enigma.analysis.TranslationIndex;
+import cuchaz.enigma.mapping.BehaviorEntry;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.FieldEntry;
+import cuchaz.enigma.mapping.MethodEntry;
+
+public class TestJarIndexSnapshot {
+	
+	private JarIndex m_index;
+	private JarIndex m_snapshot;
+	
+	public TestJarIndexSnapshot()
+	throws Exception {
+		m_index = new JarIndex();
+		m_index.indexJar(new JarClassStore(new JarFile("build/test-obf/innerClasses.jar")), true);
+		m_snapshot = copy(m_index);
+	}
+	
+	private static JarIndex copy(JarIndex index)
+	throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		index.write(out);
+		JarIndex copy = new JarIndex();
+		copy.read(new ByteArrayInputStream(out.toByteArray()));
+		return copy;
+	}
+	
+	@Test
+	public void obfEntries() {
+		assertThat(m_snapshot.getObfClassEntries(), is(m_index.getObfClassEntries()));
+		assertThat(m_snapshot.getObfFieldEntries(), containsInAnyOrder(m_index.getObfFieldEntries().toArray()));
+		assertThat(m_snapshot.getObfBehaviorEntries(), containsInAnyOrder(m_index.getObfBehaviorEntries().toArray()));
+		for (FieldEntry fieldEntry : m_index.getObfFieldEntries()) {
+			assertThat(m_snapshot.getAccess(fieldEntry), is(m_index.getAccess(fieldEntry)));
+		}
+	}
+	
+	@Test
+	public void innerClasses() {
+		for (ClassEntry classEntry : m_index.getObfClassEntries()) {
+			assertThat(m_snapshot.getOuterClass(classEntry), is(m_index.getOuterClass(classEntry)));
+			assertThat(m_snapshot.getInnerClasses(classEntry), containsInAnyOrder(m_index.getInnerClasses(classEntry).toArray()));
+			assertThat(m_snapshot.isAnonymousClass(classEntry), is(m_index.isAnonymousClass(classEntry)));
+			assertThat(m_snapshot.getAnonymousClassCaller(classEntry), is(m_index.getAnonymousClassCaller(classEntry)));
+		}
+	}
+	
+	@Test
+	public void references() {
+		for (BehaviorEntry behaviorEntry : m_index.getObfBehaviorEntries()) {
+			assertThat(m_snapshot.getBehaviorReferences(behaviorEntry), containsInAnyOrder(m_index.getBehaviorReferences(behaviorEntry).toArray()));
+			assertThat(m_snapshot.getBehaviorReferencesFrom(behaviorEntry), containsInAnyOrder(m_index.getBehaviorReferencesFrom(behaviorEntry).toArray()));
+			if (behaviorEntry instanceof MethodEntry) {
+				MethodEntry methodEntry = (MethodEntry)behaviorEntry;
+				assertThat(m_snapshot.getRelatedMethodImplementations(methodEntry), containsInAnyOrder(m_index.getRelatedMethodImplementations(methodEntry).toArray()));
+			}
+			assertThat(m_snapshot.getFieldReferencesFrom(behaviorEntry), containsInAnyOrder(m_index.getFieldReferencesFrom(behaviorEntry).toArray()));
+		}
+		for (FieldEntry fieldEntry : m_index.getObfFieldEntries()) {
+			assertThat(m_snapshot.getFieldReferences(fieldEntry), containsInAnyOrder(m_index.getFieldReferences(fieldEntry).toArray()));
+		}
+	}
+	
+	@Test
+	public void translationIndex() {
+		TranslationIndex index = m_index.getTranslationIndex();
+		TranslationIndex snapshot = m_snapshot.getTranslationIndex();
+		for (ClassEntry classEntry : m_index.getObfClassEntries()) {
+			assertThat(snapshot.getSuperclass(classEntry), is(index.getSuperclass(classEntry)));
+			assertThat(snapshot.getInterfaces(classEntry), containsInAnyOrder(index.getInterfaces(classEntry).toArray()));
+		}
+		assertThat(snapshot.getClassInterfaces(), containsInAnyOrder(index.getClassInterfaces().toArray()));
+	}
+	
+	@Test
+	public void corruptSnapshot()
+	throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		m_index.write(out);
+		byte[] bytes = out.toByteArray();
+		
+		// corrupt the gzip stream
+		bytes[bytes.length/2] ^= 0xff;
+		try {
+			new JarIndex().read(new ByteArrayInputStream(bytes));
+		} catch (Exception ex) {
+			return;
+		}
+		throw new AssertionError("Corrupt snapshot was read without complaint");
+	}
+}
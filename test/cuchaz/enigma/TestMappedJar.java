@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import cuchaz.enigma.analysis.JarClassIterator;
+import cuchaz.enigma.analysis.JarClassStore;
+import cuchaz.enigma.analysis.MappedJar;
+
+public class TestMappedJar {
+	
+	@Test
+	public void sameBytesAsJarFile()
+	throws Exception {
+		checkJar(new File("build/test-obf/translation.jar"));
+		checkJar(new File("build/test-obf/innerClasses.jar"));
+	}
+	
+	@Test
+	public void storedEntries()
+	throws Exception {
+		File file = File.createTempFile("stored", ".jar");
+		file.deleteOnExit();
+		byte[] data = "not compressed".getBytes("UTF-8");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+		try {
+			JarEntry entry = new JarEntry("a/b.class");
+			entry.setMethod(JarEntry.STORED);
+			entry.setSize(data.length);
+			entry.setCompressedSize(data.length);
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			entry.setCrc(crc.getValue());
+			out.putNextEntry(entry);
+			out.write(data);
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+		
+		MappedJar jar = new MappedJar(file);
+		assertThat(jar.getBytes("a/b.class"), is(data));
+		assertThat(jar.getBytes("a/c.class"), is(nullValue()));
+	}
+	
+	@Test
+	public void classStore()
+	throws Exception {
+		JarFile jar = new JarFile("build/test-obf/translation.jar");
+		try {
+			// the store lists and looks up classes from the mapped jar, so it should see what the JarFile sees
+			JarClassStore store = new JarClassStore(jar);
+			List<String> names = Lists.newArrayList();
+			for (JarEntry entry : store.getClassJarEntries()) {
+				names.add(entry.getName());
+			}
+			List<String> expectedNames = Lists.newArrayList();
+			for (JarEntry entry : JarClassIterator.getClassJarEntries(jar)) {
+				expectedNames.add(entry.getName());
+			}
+			assertThat(names, is(expectedNames));
+			assertThat(store.containsClass("a"), is(true));
+			assertThat(store.getBytes("a"), is(ByteStreams.toByteArray(jar.getInputStream(jar.getJarEntry("a.class")))));
+			assertThat(store.containsClass("zz"), is(false));
+			assertThat(store.getBytes("zz"), is(nullValue()));
+		} finally {
+			jar.close();
+		}
+	}
+	
+	private void checkJar(File file)
+	throws Exception {
+		MappedJar mappedJar = new MappedJar(file);
+		JarFile jar = new JarFile(file);
+		try {
+			int numEntries = 0;
+			for (JarEntry entry : Collections.list(jar.entries())) {
+				assertThat(mappedJar.containsEntry(entry.getName()), is(true));
+				assertThat(mappedJar.getBytes(entry.getName()), is(ByteStreams.toByteArray(jar.getInputStream(entry))));
+				numEntries++;
+			}
+			assertThat(mappedJar.getEntryNames().size(), is(numEntries));
+		} finally {
+			jar.close();
+		}
+	}
+}
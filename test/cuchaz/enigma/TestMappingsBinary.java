@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsBinaryReader;
+import cuchaz.enigma.mapping.MappingsBinaryWriter;
+
+public class TestMappingsBinary {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	private Mappings m_textMappings;
+	private File m_file;
+	
+	@Before
+	public void before()
+	throws Exception {
+		m_textMappings = readMappings();
+		m_file = m_tempFolder.newFile("enigma.mappings");
+		try (OutputStream out = new FileOutputStream(m_file)) {
+			new MappingsBinaryWriter().write(out, m_textMappings);
+		}
+	}
+	
+	@Test
+	public void roundTrip()
+	throws Exception {
+		assertThat(MappingsBinaryReader.isBinary(m_file), is(true));
+		assertThat(write(new MappingsBinaryReader().read(m_file)), is(write(m_textMappings)));
+	}
+	
+	@Test
+	public void lookups()
+	throws Exception {
+		Mappings mappings = new MappingsBinaryReader().read(m_file);
+		ClassMapping classMapping = mappings.getClassByObf("none/g");
+		assertThat(classMapping.getDeobfName(), is("deobf/G_OuterClass"));
+		assertThat(mappings.getClassByObf("none/g"), is(sameInstance(classMapping)));
+		assertThat(mappings.getClassByDeobf("deobf/G_OuterClass"), is(sameInstance(classMapping)));
+		assertThat(mappings.getClassByDeobf("deobf/A_Basic"), is(sameInstance(mappings.getClassByObf("none/a"))));
+		assertThat(classMapping.getInnerClassByObfSimple("a").getDeobfName(), is("A_InnerClass"));
+		assertThat(mappings.getClassByObf("none/nope"), is(nullValue()));
+		assertThat(mappings.containsDeobfClass("deobf/B_BaseClass"), is(true));
+		assertThat(mappings.classes().size(), is(m_textMappings.classes().size()));
+	}
+	
+	@Test
+	public void changes()
+	throws Exception {
+		Mappings mappings = new MappingsBinaryReader().read(m_file);
+		mappings.setClassDeobfName(mappings.getClassByObf("none/b"), "deobf/B_Renamed");
+		mappings.removeClassMapping(mappings.getClassByObf("none/a"));
+		mappings.addClassMapping(new ClassMapping("none/zz", "deobf/ZZ"));
+		assertThat(mappings.getClassByDeobf("deobf/B_BaseClass"), is(nullValue()));
+		assertThat(mappings.getClassByDeobf("deobf/B_Renamed"), is(sameInstance(mappings.getClassByObf("none/b"))));
+		assertThat(mappings.getClassByObf("none/a"), is(nullValue()));
+		assertThat(mappings.getClassByDeobf("deobf/A_Basic"), is(nullValue()));
+		assertThat(mappings.getClassByDeobf("deobf/ZZ").getObfFullName(), is("none/zz"));
+		assertThat(mappings.classes().size(), is(m_textMappings.classes().size()));
+	}
+	
+	@Test
+	public void saveOverSelf()
+	throws Exception {
+		// saving over the file we're still reading from has to keep it binary
+		Mappings mappings = new MappingsBinaryReader().read(m_file);
+		mappings.setClassDeobfName(mappings.getClassByObf("none/b"), "deobf/B_Renamed");
+		new MappingsBinaryWriter().write(m_file, mappings);
+		assertThat(MappingsBinaryReader.isBinary(m_file), is(true));
+		assertThat(write(new MappingsBinaryReader().read(m_file)), is(write(mappings)));
+		assertThat(mappings.getClassByObf("none/b").isDirty(), is(false));
+	}
+	
+	@Test(expected = IOException.class)
+	public void notBinary()
+	throws Exception {
+		try (OutputStream out = new FileOutputStream(m_file)) {
+			out.write("CLASS none/a\n".getBytes("UTF-8"));
+		}
+		assertThat(MappingsBinaryReader.isBinary(m_file), is(false));
+		new MappingsBinaryReader().read(m_file);
+	}
+}
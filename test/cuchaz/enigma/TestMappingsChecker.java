@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.analysis.JarClassStore;
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsChecker;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.Signature;
+import cuchaz.enigma.mapping.Type;
+
+public class TestMappingsChecker {
+	
+	private static JarIndex m_index;
+	
+	@BeforeClass
+	public static void beforeClass()
+	throws Exception {
+		m_index = new JarIndex();
+		m_index.indexJar(new JarClassStore(new JarFile("build/test-obf/translation.jar")), true);
+	}
+	
+	@Test
+	public void dropsBrokenMappings()
+	throws Exception {
+		Mappings mappings = readBrokenMappings();
+		MappingsChecker checker = new MappingsChecker(m_index);
+		checker.dropBrokenMappings(mappings, 1);
+		
+		assertThat(checker.getDroppedClassMappings().keySet(), contains(newClass("none/zz")));
+		assertThat(checker.getDroppedInnerClassMappings().keySet(), contains(newClass("none/g$zz")));
+		assertThat(checker.getDroppedFieldMappings().keySet(), contains(newField("none/a", "zz", "I")));
+		assertThat(checker.getDroppedMethodMappings().keySet(), contains(newMethod("none/b", "zz", "()V")));
+		assertThat(write(mappings), is(write(readMappings())));
+		assertThat(checker.getRelatedMethodChecker().hasProblems(), is(false));
+	}
+	
+	@Test
+	public void parallel()
+	throws Exception {
+		Mappings expected = readBrokenMappings();
+		MappingsChecker expectedChecker = new MappingsChecker(m_index);
+		expectedChecker.dropBrokenMappings(expected, 1);
+		
+		Mappings mappings = readBrokenMappings();
+		MappingsChecker checker = new MappingsChecker(m_index);
+		checker.dropBrokenMappings(mappings, 4);
+		
+		assertThat(write(mappings), is(write(expected)));
+		assertDroppedSame(checker, expectedChecker);
+	}
+	
+	@Test
+	public void checkCopiesDropLive()
+	throws Exception {
+		Mappings expected = readBrokenMappings();
+		MappingsChecker expectedChecker = new MappingsChecker(m_index);
+		expectedChecker.dropBrokenMappings(expected, 1);
+		
+		// like checking a snapshot in the background, then dropping from the live mappings
+		Mappings mappings = readBrokenMappings();
+		List<ClassMapping> copies = Lists.newArrayList();
+		for (ClassMapping classMapping : mappings.classes()) {
+			copies.add(new ClassMapping(classMapping));
+		}
+		MappingsChecker checker = new MappingsChecker(m_index);
+		checker.findBrokenMappings(copies, 4);
+		assertThat(write(mappings), is(not(write(expected))));
+		checker.dropFoundMappings(mappings);
+		
+		assertThat(write(mappings), is(write(expected)));
+		assertDroppedSame(checker, expectedChecker);
+	}
+	
+	@Test
+	public void inconsistentRelatedMethods()
+	throws Exception {
+		// C_SubClass overrides a method from B_BaseClass, give them different names
+		for (int numThreads : new int[] { 1, 4 }) {
+			Mappings mappings = readMappings();
+			mappings.getClassByObf("none/b").setMethodName("a", new Signature("()I"), "baseName");
+			mappings.getClassByObf("none/c").setMethodName("a", new Signature("()I"), "subName");
+			MappingsChecker checker = new MappingsChecker(m_index);
+			checker.dropBrokenMappings(mappings, numThreads);
+			assertThat(checker.getRelatedMethodChecker().hasProblems(), is(true));
+		}
+	}
+	
+	@Test
+	public void unnamedOverride()
+	throws Exception {
+		// C_SubClass overrides a method from B_BaseClass, but only gives it argument names
+		String text = "CLASS none/b deobf/B_BaseClass\n"
+			+ "\tMETHOD a m1 ()I\n"
+			+ "CLASS none/c deobf/C_SubClass\n"
+			+ "\tMETHOD a ()I\n"
+			+ "\t\tARG 0 unused\n";
+		for (int numThreads : new int[] { 1, 4 }) {
+			Mappings mappings = new MappingsReader().read(new StringReader(text));
+			MappingsChecker checker = new MappingsChecker(m_index);
+			checker.dropBrokenMappings(mappings, numThreads);
+			assertThat(checker.getRelatedMethodChecker().hasProblems(), is(false));
+		}
+		
+		// and loading mappings with problems only warns about them
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/translation.jar"), null);
+		deobfuscator.setMappings(new MappingsReader().read(new StringReader(text)));
+		Mappings mappings = readMappings();
+		mappings.getClassByObf("none/c").setMethodName("a", new Signature("()I"), "subName");
+		deobfuscator.setMappings(mappings);
+		assertThat(deobfuscator.getMappings(), is(sameInstance(mappings)));
+	}
+	
+	private void assertDroppedSame(MappingsChecker observed, MappingsChecker expected) {
+		assertThat(observed.getDroppedClassMappings().keySet(), is(expected.getDroppedClassMappings().keySet()));
+		assertThat(observed.getDroppedInnerClassMappings().keySet(), is(expected.getDroppedInnerClassMappings().keySet()));
+		assertThat(observed.getDroppedFieldMappings().keySet(), is(expected.getDroppedFieldMappings().keySet()));
+		assertThat(observed.getDroppedMethodMappings().keySet(), is(expected.getDroppedMethodMappings().keySet()));
+	}
+	
+	private Mappings readBrokenMappings()
+	throws Exception {
+		Mappings mappings = readMappings();
+		mappings.addClassMapping(new ClassMapping("none/zz", "deobf/Missing"));
+		mappings.getClassByObf("none/a").setFieldName("zz", new Type("I"), "missingField");
+		mappings.getClassByObf("none/b").setMethodName("zz", new Signature("()V"), "missingMethod");
+		mappings.getClassByObf("none/g").setInnerClassName(newClass("none/g$zz"), "MissingInner");
+		return mappings;
+	}
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsFolderException;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsWriter;
+import cuchaz.enigma.mapping.Type;
+
+public class TestMappingsDirectory {
+	
+	private static final String Marker = "# not rewritten\n";
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	private Mappings m_mappings;
+	private File m_dir;
+	
+	@Before
+	public void before()
+	throws Exception {
+		m_mappings = readMappings();
+		m_dir = m_tempFolder.newFolder();
+	}
+	
+	@Test
+	public void dirtyTracking() {
+		ClassMapping classMapping = m_mappings.getClassByObf("none/g");
+		assertThat(classMapping.isDirty(), is(false));
+		classMapping.getInnerClassByObfSimple("a").setFieldName("a", new Type("I"), "renamed");
+		assertThat(classMapping.isDirty(), is(true));
+		classMapping.clearDirty();
+		assertThat(classMapping.isDirty(), is(false));
+		assertThat(new ClassMapping("none/zz").isDirty(), is(true));
+	}
+	
+	@Test
+	public void roundTrip()
+	throws Exception {
+		new MappingsWriter().writeDirectory(m_dir, m_mappings, false);
+		assertThat(MappingsWriter.getClassFile(m_dir, "none/a").exists(), is(true));
+		assertThat(write(new MappingsReader().readDirectory(m_dir)), is(write(m_mappings)));
+	}
+	
+	@Test
+	public void onlyChanges()
+	throws Exception {
+		new MappingsWriter().writeDirectory(m_dir, m_mappings, false);
+		appendMarker("none/a");
+		appendMarker("none/b");
+		
+		m_mappings.getClassByObf("none/b").setFieldName("a", new Type("I"), "renamed");
+		m_mappings.removeClassMapping(m_mappings.getClassByObf("none/c"));
+		new MappingsWriter().writeDirectory(m_dir, m_mappings, true);
+		
+		assertThat(read("none/a"), endsWith(Marker));
+		assertThat(read("none/b"), not(containsString(Marker)));
+		assertThat(read("none/b"), containsString("FIELD a renamed I"));
+		assertThat(MappingsWriter.getClassFile(m_dir, "none/c").exists(), is(false));
+		assertThat(m_mappings.getClassByObf("none/b").isDirty(), is(false));
+		assertThat(new File(m_dir, "none").list(), not(hasItemInArray(endsWith(".tmp"))));
+	}
+	
+	@Test
+	public void keepsForeignFiles()
+	throws Exception {
+		new MappingsWriter().writeDirectory(m_dir, m_mappings, false);
+		File foreignFile = new File(m_dir, "none/zz.mapping");
+		Files.write(foreignFile.toPath(), Marker.getBytes("UTF-8"));
+		
+		// only files the writer listed can go stale
+		m_mappings.removeClassMapping(m_mappings.getClassByObf("none/c"));
+		new MappingsWriter().writeDirectory(m_dir, m_mappings, true);
+		assertThat(MappingsWriter.getClassFile(m_dir, "none/c").exists(), is(false));
+		assertThat(new String(Files.readAllBytes(foreignFile.toPath()), "UTF-8"), is(Marker));
+	}
+	
+	@Test
+	public void refusesForeignFolders()
+	throws Exception {
+		File foreignFile = new File(m_dir, "zz.mapping");
+		Files.write(foreignFile.toPath(), Marker.getBytes("UTF-8"));
+		try {
+			new MappingsWriter().writeDirectory(m_dir, m_mappings, false);
+			fail("Wrote into a folder it didn't make");
+		} catch (MappingsFolderException ex) {
+			// expected
+		}
+		assertThat(m_dir.list(), is(new String[] { "zz.mapping" }));
+	}
+	
+	@Test
+	public void singleFile()
+	throws Exception {
+		File file = new File(m_dir, "all.mappings");
+		m_mappings.getClassByObf("none/b").setFieldName("a", new Type("I"), "renamed");
+		new MappingsWriter().write(file, m_mappings);
+		assertThat(m_mappings.getClassByObf("none/b").isDirty(), is(false));
+		assertThat(new String(Files.readAllBytes(file.toPath()), "UTF-8"), is(write(m_mappings)));
+		assertThat(m_dir.list(), is(new String[] { "all.mappings" }));
+	}
+	
+	private void appendMarker(String obfClassName)
+	throws Exception {
+		try (Writer out = new FileWriter(MappingsWriter.getClassFile(m_dir, obfClassName), true)) {
+			out.write(Marker);
+		}
+	}
+	
+	private String read(String obfClassName)
+	throws Exception {
+		return new String(Files.readAllBytes(MappingsWriter.getClassFile(m_dir, obfClassName).toPath()), "UTF-8");
+	}
+}
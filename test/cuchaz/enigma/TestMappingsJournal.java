@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.mapping.ArgumentEntry;
+import cuchaz.enigma.mapping.MappingsJournal;
+
+public class TestMappingsJournal {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	private File m_file;
+	
+	@Before
+	public void before() {
+		// the journal doesn't exist until something gets appended
+		m_file = new File(m_tempFolder.getRoot(), "enigma.journal");
+	}
+	
+	@Test
+	public void replay()
+	throws Exception {
+		
+		Deobfuscator deobfuscator = newDeobfuscator();
+		MappingsJournal journal = new MappingsJournal(m_file);
+		deobfuscator.setJournal(journal);
+		deobfuscator.rename(newClass("none/b"), "deobf/B_Renamed");
+		deobfuscator.rename(newClass("none/g$a"), "A_Renamed");
+		deobfuscator.rename(newField("none/a", "a", "I"), "f1Renamed");
+		deobfuscator.rename(newMethod("none/b", "a", "()I"), "m1Renamed");
+		deobfuscator.rename(new ArgumentEntry(newMethod("none/a", "a", "(I)V"), 0, "a"), "arg0");
+		deobfuscator.rename(new ArgumentEntry(newConstructor("none/a", "(I)V"), 0, "a"), "ctorArg");
+		deobfuscator.removeMapping(newClass("none/a"));
+		deobfuscator.markAsDeobfuscated(newField("none/c", "b", "I"));
+		journal.close();
+		
+		List<MappingsJournal.Record> records = MappingsJournal.read(m_file);
+		assertThat(records.size(), is(8));
+		assertThat(records.get(0).op, is(MappingsJournal.Op.Rename));
+		assertThat(records.get(6).op, is(MappingsJournal.Op.Remove));
+		assertThat(records.get(7).op, is(MappingsJournal.Op.Mark));
+		
+		// a crash before saving loses nothing
+		Deobfuscator recovered = newDeobfuscator();
+		assertThat(recovered.replayJournal(records), is(8));
+		assertThat(write(recovered.getMappings()), is(write(deobfuscator.getMappings())));
+	}
+	
+	@Test
+	public void tornRecord()
+	throws Exception {
+		MappingsJournal journal = new MappingsJournal(m_file);
+		journal.append(MappingsJournal.Op.Rename, newClass("none/a"), "deobf/A1");
+		journal.append(MappingsJournal.Op.Rename, newClass("none/a"), "deobf/A2");
+		journal.close();
+		
+		// cut the last record short, like a crash in the middle of a write
+		try (RandomAccessFile raf = new RandomAccessFile(m_file, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+		List<MappingsJournal.Record> records = MappingsJournal.read(m_file);
+		assertThat(records.size(), is(1));
+		assertThat(records.get(0).name, is("deobf/A1"));
+		
+		// new records go after the last good one
+		journal = new MappingsJournal(m_file);
+		journal.append(MappingsJournal.Op.Remove, newClass("none/a"), null);
+		journal.close();
+		records = MappingsJournal.read(m_file);
+		assertThat(records.size(), is(2));
+		assertThat(records.get(1).op, is(MappingsJournal.Op.Remove));
+		assertThat(records.get(1).name, is(nullValue()));
+	}
+	
+	@Test
+	public void clear()
+	throws Exception {
+		MappingsJournal journal = new MappingsJournal(m_file);
+		journal.append(MappingsJournal.Op.Mark, newMethod("none/a", "a", "()V"), null);
+		journal.clear();
+		journal.append(MappingsJournal.Op.Mark, newMethod("none/a", "b", "()V"), null);
+		journal.close();
+		List<MappingsJournal.Record> records = MappingsJournal.read(m_file);
+		assertThat(records.size(), is(1));
+		assertThat(records.get(0).obfEntry, is((Object)newMethod("none/a", "b", "()V")));
+	}
+	
+	@Test
+	public void onlyMakesFilesWhenNeeded()
+	throws Exception {
+		MappingsJournal journal = new MappingsJournal(m_file);
+		assertThat(m_file.exists(), is(false));
+		journal.append(MappingsJournal.Op.Rename, newClass("none/a"), "deobf/A1");
+		assertThat(m_file.exists(), is(true));
+		
+		// saving the mappings makes the journal useless
+		journal.clear();
+		assertThat(m_file.exists(), is(false));
+		journal.close();
+		assertThat(m_file.exists(), is(false));
+	}
+	
+	@Test
+	public void corruptHeader()
+	throws Exception {
+		try (RandomAccessFile raf = new RandomAccessFile(m_file, "rw")) {
+			raf.writeInt(0x12345678);
+			raf.writeInt(1);
+		}
+		
+		// a broken journal doesn't stop the mappings from opening, and doesn't get in the way of the next one
+		assertThat(MappingsJournal.recover(m_file).isEmpty(), is(true));
+		assertThat(m_file.exists(), is(false));
+		assertThat(new File(m_file.getPath() + ".bad").exists(), is(true));
+		MappingsJournal journal = new MappingsJournal(m_file);
+		journal.append(MappingsJournal.Op.Rename, newClass("none/a"), "deobf/A1");
+		journal.close();
+		assertThat(MappingsJournal.read(m_file).size(), is(1));
+	}
+	
+	@Test
+	public void idleSync()
+	throws Exception {
+		MappingsJournal journal = new MappingsJournal(m_file);
+		journal.append(MappingsJournal.Op.Rename, newClass("none/a"), "deobf/A1");
+		assertThat(journal.getNumUnsynced(), is(1));
+		
+		// nothing else gets appended, but the record still gets synced
+		Thread.sleep(MappingsJournal.SyncIntervalMillis + 500);
+		assertThat(journal.getNumUnsynced(), is(0));
+		journal.close();
+	}
+	
+	private Deobfuscator newDeobfuscator()
+	throws Exception {
+		Deobfuscator deobfuscator = TestUtil.newDeobfuscator("build/test-obf/translation.jar");
+		deobfuscator.setMappings(readMappings());
+		return deobfuscator;
+	}
+}
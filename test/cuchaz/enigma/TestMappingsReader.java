@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.google.common.io.CharStreams;
+
+import cuchaz.enigma.mapping.ClassMapping;
+import cuchaz.enigma.mapping.MappingParseException;
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MethodMapping;
+import cuchaz.enigma.mapping.Signature;
+
+public class TestMappingsReader {
+	
+	@Test
+	public void lineEndings()
+	throws Exception {
+		String text;
+		try (InputStream in = TestMappingsReader.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			text = CharStreams.toString(new InputStreamReader(in));
+		}
+		String expected = write(read(text));
+		assertThat(write(read(text.replace("\n", "\r\n"))), is(expected));
+		assertThat(write(read(text.replace("\n", "\r"))), is(expected));
+	}
+	
+	@Test
+	public void tokens()
+	throws Exception {
+		Mappings mappings = read(
+			"CLASS none/a deobf/A # a comment\n"
+			+ "\tMETHOD a b ()V\n"
+			+ "\t\tARG 0 x\n"
+			+ "\tmethod c ()V\n"
+			+ "\n"
+			+ "class none/b"
+		);
+		ClassMapping a = mappings.getClassByObf("none/a");
+		assertThat(a.getDeobfName(), is("deobf/A"));
+		assertThat(a.getMethodByObf("a", new Signature("()V")).getDeobfName(), is("b"));
+		assertThat(a.getMethodByObf("a", new Signature("()V")).getDeobfArgumentName(0), is("x"));
+		assertThat(a.getMethodByObf("c", new Signature("()V")).getDeobfName(), is(nullValue()));
+		assertThat(mappings.getClassByObf("none/b").getDeobfName(), is(nullValue()));
+		
+		// repeated descriptors only get parsed once
+		MethodMapping m1 = a.getMethodByObf("a", new Signature("()V"));
+		MethodMapping m2 = a.getMethodByObf("c", new Signature("()V"));
+		assertThat(m1.getObfSignature(), is(sameInstance(m2.getObfSignature())));
+	}
+	
+	@Test
+	public void errors() {
+		assertError("CLASS none/a\n\n\tFIELD a b\n", "Line 3: Malformed line:\n\tFIELD a b");
+		assertError("CLASS none/a\n\tMETHOD a b ()V # c\n\t\tARG x y\n", "Line 3: Malformed line:\n\t\tARG x y");
+		assertError("CLASS\n", "Line 1: Malformed line:\nCLASS");
+		assertError("CLASS none/a\r\n\tMETHOD a ()V\r\n\t\tCLASS b", "Line 3: Unexpected CLASS entry here!");
+		assertError("FIELD a b I\n", "Line 1: Unexpected FIELD entry here!");
+		assertError("CLASS none/a\n\tARG 0 a\n", "Line 2: Unexpected ARG entry here!");
+		assertError("METHOD a ()V", "Line 1: Unexpected METHOD entry here!");
+	}
+	
+	private void assertError(String text, String message) {
+		try {
+			read(text);
+		} catch (MappingParseException ex) {
+			assertThat(ex.getMessage(), is(message));
+			return;
+		} catch (Exception ex) {
+			throw new Error(ex);
+		}
+		throw new AssertionError("Expected a parse error: " + message);
+	}
+	
+	private Mappings read(String text)
+	throws Exception {
+		return new MappingsReader().read(new StringReader(text));
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.analysis.JarIndexCache;
+import cuchaz.enigma.analysis.SourceCache;
+import cuchaz.enigma.analysis.SourceIndex;
+import cuchaz.enigma.analysis.Token;
+import cuchaz.enigma.mapping.Entry;
+
+public class TestSourceCache {
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	private File m_dir;
+	
+	@Before
+	public void before()
+	throws Exception {
+		m_dir = m_tempFolder.newFolder();
+	}
+	
+	@Test
+	public void cachedUntilNamesChange()
+	throws Exception {
+		Deobfuscator deobfuscator = newDeobfuscator("build/test-obf/constructors.jar");
+		SourceIndex index = deobfuscator.getSourceIndex("none/d", null, deobfuscator.getSnapshot());
+		assertThat(deobfuscator.getSourceIndex("none/d", null, deobfuscator.getSnapshot()), is(sameInstance(index)));
+		
+		// none/d doesn't use anything from none/b
+		deobfuscator.rename(newMethod("none/b", "e", "()V"), "renamed");
+		assertThat(deobfuscator.getSourceIndex("none/d", null, deobfuscator.getSnapshot()), is(sameInstance(index)));
+		
+		// but it does extend none/a
+		deobfuscator.rename(newClass("none/a"), "deobf/Renamed");
+		SourceIndex renamedIndex = deobfuscator.getSourceIndex("none/d", null, deobfuscator.getSnapshot());
+		assertThat(renamedIndex, is(not(sameInstance(index))));
+		assertThat(renamedIndex.getSource(), containsString("extends Renamed"));
+		assertThat(deobfuscator.getSourceCache().getNumHits(), is(2L));
+		assertThat(deobfuscator.getSourceCache().getNumMisses(), is(2L));
+	}
+	
+	@Test
+	public void readsFromDisk()
+	throws Exception {
+		Deobfuscator deobfuscator = new Deobfuscator(new JarFile("build/test-obf/constructors.jar"), new JarIndexCache(m_dir));
+		SourceIndex index = deobfuscator.getSourceIndex("none/b", null, deobfuscator.getSnapshot());
+		
+		// like restarting the tool
+		Deobfuscator otherDeobfuscator = new Deobfuscator(new JarFile("build/test-obf/constructors.jar"), new JarIndexCache(m_dir));
+		SourceIndex readIndex = otherDeobfuscator.getSourceIndex("none/b", null, otherDeobfuscator.getSnapshot());
+		assertThat(otherDeobfuscator.getSourceCache().getNumDiskHits(), is(1L));
+		assertThat(readIndex.getSource(), is(index.getSource()));
+		List<Token> tokens = Lists.newArrayList(index.referenceTokens());
+		assertThat(Lists.newArrayList(readIndex.referenceTokens()), is(tokens));
+		for (Token token : tokens) {
+			assertThat(readIndex.getDeobfReference(token), is(index.getDeobfReference(token)));
+			assertThat(readIndex.getDeobfReference(token).isNamed(), is(index.getDeobfReference(token).isNamed()));
+		}
+		assertThat(readIndex.getDeclarationToken(newClass("none/b")), is(index.getDeclarationToken(newClass("none/b"))));
+		
+		// with different mappings, the one on disk is no good
+		otherDeobfuscator.rename(newClass("none/a"), "deobf/Renamed");
+		otherDeobfuscator.getSourceCache().clear();
+		assertThat(otherDeobfuscator.getSourceIndex("none/b", null, otherDeobfuscator.getSnapshot()).getSource(), containsString("new Renamed("));
+		assertThat(otherDeobfuscator.getSourceCache().getNumDiskHits(), is(1L));
+	}
+	
+	@Test
+	public void boundedOnDisk()
+	throws Exception {
+		
+		// snapshots from other versions go away when the cache opens
+		File oldFile = new File(m_dir, "none/a.0.10-beta.procyon-0.5.27.v1.source".replace('/', File.separatorChar));
+		oldFile.getParentFile().mkdirs();
+		Files.write(oldFile.toPath(), new byte[] { 1, 2, 3 });
+		new SourceCache(m_dir, 1, 8);
+		assertThat(oldFile.exists(), is(false));
+		
+		// and there are never many more than the limit
+		SourceCache cache = new SourceCache(m_dir, 1, 8);
+		for (int i=0; i<20; i++) {
+			cache.put("none/c" + i, true, new SourceIndex("class c" + i + " {}"), Lists.<Entry>newArrayList(), "");
+		}
+		assertThat(cache.getNumDiskClasses(), is(lessThanOrEqualTo(8)));
+		assertThat(new File(m_dir, "none").list().length, is(cache.getNumDiskClasses()));
+	}
+}
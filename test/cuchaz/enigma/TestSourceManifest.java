@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static cuchaz.enigma.TestUtil.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cuchaz.enigma.analysis.SourceManifest;
+
+public class TestSourceManifest {
+	
+	// well before any file we write
+	private static final long OldTime = 1000000000000L;
+	
+	@Rule
+	public TemporaryFolder m_tempFolder = new TemporaryFolder();
+	
+	private File m_dir;
+	
+	@Before
+	public void before()
+	throws Exception {
+		m_dir = m_tempFolder.newFolder();
+	}
+	
+	@Test
+	public void writesNothingIfNothingChanged()
+	throws Exception {
+		newDeobfuscator().writeSources(m_dir, null);
+		assertThat(new File(m_dir, SourceManifest.FileName).isFile(), is(true));
+		touch("none/a.java", "none/b.java", "none/c.java", "none/d.java");
+		
+		// like running the export again later
+		newDeobfuscator().writeSources(m_dir, null);
+		assertUntouched("none/a.java", "none/b.java", "none/c.java", "none/d.java");
+	}
+	
+	@Test
+	public void writesOnlyWhatChanged()
+	throws Exception {
+		newDeobfuscator().writeSources(m_dir, null);
+		touch("none/a.java", "none/b.java", "none/c.java", "none/d.java");
+		
+		// none/d extends none/a and none/b makes them, but none/c has nothing to do with it
+		Deobfuscator deobfuscator = newDeobfuscator();
+		deobfuscator.rename(newClass("none/a"), "deobf/Renamed");
+		deobfuscator.writeSources(m_dir, null, 2);
+		assertThat(new File(m_dir, "none/a.java").exists(), is(false));
+		assertThat(read("deobf/Renamed.java"), containsString("class Renamed"));
+		assertThat(read("none/d.java"), containsString("extends Renamed"));
+		assertThat(read("none/b.java"), containsString("new Renamed("));
+		assertUntouched("none/c.java");
+		
+		// and the next export starts from there
+		touch("deobf/Renamed.java", "none/b.java", "none/d.java");
+		deobfuscator.writeSources(m_dir, null);
+		assertUntouched("deobf/Renamed.java", "none/b.java", "none/c.java", "none/d.java");
+	}
+	
+	private Deobfuscator newDeobfuscator()
+	throws Exception {
+		return TestUtil.newDeobfuscator("build/test-obf/constructors.jar");
+	}
+	
+	private void touch(String ... paths) {
+		for (String path : paths) {
+			assertThat(new File(m_dir, path).setLastModified(OldTime), is(true));
+		}
+	}
+	
+	private void assertUntouched(String ... paths) {
+		for (String path : paths) {
+			assertThat(path, new File(m_dir, path).lastModified(), is(OldTime));
+		}
+	}
+	
+	private String read(String path)
+	throws Exception {
+		return new String(Files.readAllBytes(new File(m_dir, path).toPath()), StandardCharsets.UTF_8);
+	}
+}
@@ -16,11 +16,16 @@ import static org.hamcrest.Matchers.*;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
 import java.util.jar.JarFile;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.mapping.ClassEntry;
 import cuchaz.enigma.mapping.Entry;
 import cuchaz.enigma.mapping.Mappings;
 import cuchaz.enigma.mapping.MappingsReader;
@@ -153,6 +158,41 @@ public class TestTranslator {
 		assertMapping(newMethod("none/i$b", "a", "()Ljava/lang/Object;"), newMethod("deobf/I_Generics$B_Generic", "m1", "()Ljava/lang/Object;"));
 	}
 	
+	@Test
+	public void batches() {
+		
+		List<Entry> obfEntries = Lists.newArrayList();
+		obfEntries.addAll(m_deobfuscator.getJarIndex().getObfClassEntries());
+		obfEntries.addAll(m_deobfuscator.getJarIndex().getObfFieldEntries());
+		obfEntries.addAll(m_deobfuscator.getJarIndex().getObfBehaviorEntries());
+		List<Entry> deobfEntries = Lists.newArrayList();
+		for (Entry obfEntry : obfEntries) {
+			deobfEntries.add(m_deobfTranslator.translateEntry(obfEntry));
+		}
+		
+		// uncached translators too
+		Translator uncachedTranslator = m_mappings.getTranslator(TranslationDirection.Deobfuscating, m_deobfuscator.getJarIndex().getTranslationIndex());
+		assertThat(uncachedTranslator.translateEntries(obfEntries), is(deobfEntries));
+		assertThat(m_deobfTranslator.translateEntries(obfEntries), is(deobfEntries));
+		assertThat(m_obfTranslator.translateEntries(deobfEntries), is(obfEntries));
+		
+		// big enough to go parallel
+		List<Entry> manyObfEntries = Lists.newArrayList();
+		List<Entry> manyDeobfEntries = Lists.newArrayList();
+		while (manyObfEntries.size() < Translator.MinParallelBatchSize) {
+			manyObfEntries.addAll(obfEntries);
+			manyDeobfEntries.addAll(deobfEntries);
+		}
+		assertThat(m_deobfTranslator.translateEntries(manyObfEntries, 4), is(manyDeobfEntries));
+		
+		ListMultimap<ClassEntry,Entry> byOuterClass = m_deobfTranslator.translateEntriesByOuterClass(obfEntries);
+		assertThat(byOuterClass.get(newClass("deobf/G_OuterClass")), hasItems(
+			(Entry)newClass("deobf/G_OuterClass$A_InnerClass"),
+			newField("deobf/G_OuterClass$A_InnerClass", "f1", "I")
+		));
+		assertThat(byOuterClass.keySet().iterator().next(), is(newClass("cuchaz/enigma/inputs/Keep")));
+	}
+	
 	private void assertMapping(Entry obf, Entry deobf) {
 		assertThat(m_deobfTranslator.translateEntry(obf), is(deobf));
 		assertThat(m_obfTranslator.translateEntry(deobf), is(obf));
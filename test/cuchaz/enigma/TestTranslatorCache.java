@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import static cuchaz.enigma.TestEntryFactory.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import cuchaz.enigma.analysis.JarIndex;
+import cuchaz.enigma.mapping.ClassEntry;
+import cuchaz.enigma.mapping.Entry;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsSnapshot;
+import cuchaz.enigma.mapping.TranslationDirection;
+import cuchaz.enigma.mapping.Translator;
+
+public class TestTranslatorCache {
+	
+	private Deobfuscator m_deobfuscator;
+	
+	@Before
+	public void before()
+	throws Exception {
+		m_deobfuscator = new Deobfuscator(new JarFile("build/test-obf/translation.jar"));
+		try (InputStream in = TestTranslatorCache.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			m_deobfuscator.setMappings(new MappingsReader().read(new InputStreamReader(in)));
+		}
+		
+		// build the translators and fill their caches before renaming, so they get patched instead of rebuilt
+		translateAll();
+	}
+	
+	@Test
+	public void renameClasses() {
+		m_deobfuscator.rename(newClass("none/b"), "deobf/B_Renamed");
+		m_deobfuscator.rename(newClass("none/g"), "deobf/G_Renamed");
+		m_deobfuscator.rename(newClass("none/i$b"), "B_Renamed");
+		m_deobfuscator.rename(newClass("none/d"), "deobf/D_New");
+		assertSameAsRebuilt();
+	}
+	
+	@Test
+	public void renameMembers() {
+		m_deobfuscator.rename(newField("none/c", "b", "I"), "f3Renamed");
+		m_deobfuscator.rename(newMethod("none/b", "a", "()I"), "m1Renamed");
+		m_deobfuscator.rename(newField("none/e", "a", "I"), "fNew");
+		assertSameAsRebuilt();
+	}
+	
+	@Test
+	public void removeAndMark() {
+		m_deobfuscator.removeMapping(newClass("none/a"));
+		m_deobfuscator.removeMapping(newField("none/b", "a", "I"));
+		m_deobfuscator.markAsDeobfuscated(newClass("none/h"));
+		m_deobfuscator.markAsDeobfuscated(newMethod("none/c", "c", "()I"));
+		assertSameAsRebuilt();
+	}
+	
+	@Test
+	public void snapshots() {
+		MappingsSnapshot before = m_deobfuscator.getSnapshot();
+		assertThat(m_deobfuscator.getSnapshot(), is(sameInstance(before)));
+		
+		// the translated index is shared, not copied
+		assertThat(
+			before.getTranslator(TranslationDirection.Obfuscating).getTranslationIndex(),
+			is(sameInstance(m_deobfuscator.getTranslator(TranslationDirection.Obfuscating).getTranslationIndex()))
+		);
+		
+		m_deobfuscator.rename(newClass("none/b"), "deobf/B_Renamed");
+		m_deobfuscator.rename(newField("none/a", "a", "I"), "f1Renamed");
+		MappingsSnapshot after = m_deobfuscator.getSnapshot();
+		
+		// old snapshots don't see the renames
+		assertThat(before.deobfuscateEntry(newClass("none/b")), is(newClass("deobf/B_BaseClass")));
+		assertThat(before.deobfuscateEntry(newField("none/a", "a", "I")), is(newField("deobf/A_Basic", "f1", "I")));
+		assertThat(before.obfuscateEntry(newField("deobf/A_Basic", "f1", "I")), is(newField("none/a", "a", "I")));
+		assertThat(after.deobfuscateEntry(newClass("none/b")), is(newClass("deobf/B_Renamed")));
+		assertThat(after.deobfuscateEntry(newField("none/a", "a", "I")), is(newField("deobf/A_Basic", "f1Renamed", "I")));
+		assertThat(after.obfuscateEntry(newField("deobf/A_Basic", "f1Renamed", "I")), is(newField("none/a", "a", "I")));
+		assertThat(after.obfuscateEntry(newField("deobf/C_SubClass", "f1", "I")), is(newField("none/c", "a", "I")));
+		
+		// classes that didn't change are shared, even with the mappings
+		assertThat(after.getClassByObf("none/c"), is(sameInstance(before.getClassByObf("none/c"))));
+		assertThat(after.getClassByObf("none/c"), is(sameInstance(m_deobfuscator.getMappings().getClassByObf("none/c"))));
+		assertThat(after.getClassByObf("none/a"), is(not(sameInstance(before.getClassByObf("none/a")))));
+		assertThat(after.classes(), containsInAnyOrder(m_deobfuscator.getMappings().classes().toArray()));
+		
+		// renaming again doesn't change the class mappings the last snapshot has
+		m_deobfuscator.rename(newField("none/a", "a", "I"), "f1RenamedAgain");
+		assertThat(after.deobfuscateEntry(newField("none/a", "a", "I")), is(newField("deobf/A_Basic", "f1Renamed", "I")));
+		assertThat(m_deobfuscator.getSnapshot().deobfuscateEntry(newField("none/a", "a", "I")), is(newField("deobf/A_Basic", "f1RenamedAgain", "I")));
+	}
+	
+	@Test
+	public void snapshotNames() {
+		MappingsSnapshot before = m_deobfuscator.getSnapshot();
+		m_deobfuscator.removeMapping(newField("none/a", "a", "I"));
+		MappingsSnapshot after = m_deobfuscator.getSnapshot();
+		
+		assertThat(before.hasDeobfuscatedName(newField("none/a", "a", "I")), is(true));
+		assertThat(after.hasDeobfuscatedName(newField("none/a", "a", "I")), is(false));
+		assertThat(after.hasDeobfuscatedName(newClass("none/a")), is(true));
+		assertThat(after.isObfuscatedIdentifier(newField("none/a", "a", "I")), is(true));
+		assertThat(after.isObfuscatedIdentifier(newMethod("none/a", "hashCode", "()I")), is(false));
+	}
+	
+	@Test
+	public void cacheHits() {
+		Translator deobfTranslator = m_deobfuscator.getTranslator(TranslationDirection.Deobfuscating);
+		long numHits = deobfTranslator.getEntryCacheStats().hitCount();
+		translateAll();
+		assertThat(deobfTranslator.getEntryCacheStats().hitCount(), greaterThan(numHits));
+		assertThat(deobfTranslator.getSignatureCacheStats().hitCount(), greaterThan(0L));
+	}
+	
+	@Test
+	public void renamesKeepUnrelatedTranslations() {
+		Translator deobfTranslator = m_deobfuscator.getTranslator(TranslationDirection.Deobfuscating);
+		Translator obfTranslator = m_deobfuscator.getTranslator(TranslationDirection.Obfuscating);
+		m_deobfuscator.rename(newField("none/a", "a", "I"), "f1Renamed");
+		
+		// the rename shouldn't throw out translations from other classes
+		long numHits = deobfTranslator.getEntryCacheStats().hitCount();
+		long numMisses = deobfTranslator.getEntryCacheStats().missCount();
+		assertThat(m_deobfuscator.deobfuscateEntry(newClass("none/c")), is(newClass("deobf/C_SubClass")));
+		assertThat(deobfTranslator.getEntryCacheStats().hitCount(), is(numHits + 1));
+		assertThat(deobfTranslator.getEntryCacheStats().missCount(), is(numMisses));
+		numHits = obfTranslator.getEntryCacheStats().hitCount();
+		assertThat(m_deobfuscator.obfuscateEntry(newClass("deobf/C_SubClass")), is(newClass("none/c")));
+		assertThat(obfTranslator.getEntryCacheStats().hitCount(), is(numHits + 1));
+		
+		// but the renamed field translates the new way
+		assertThat(m_deobfuscator.deobfuscateEntry(newField("none/a", "a", "I")), is(newField("deobf/A_Basic", "f1Renamed", "I")));
+		assertThat(m_deobfuscator.obfuscateEntry(newField("deobf/A_Basic", "f1Renamed", "I")), is(newField("none/a", "a", "I")));
+		assertSameAsRebuilt();
+	}
+	
+	private void translateAll() {
+		JarIndex index = m_deobfuscator.getJarIndex();
+		List<Entry> obfEntries = Lists.newArrayList();
+		obfEntries.addAll(index.getObfClassEntries());
+		obfEntries.addAll(index.getObfFieldEntries());
+		obfEntries.addAll(index.getObfBehaviorEntries());
+		for (Entry obfEntry : obfEntries) {
+			m_deobfuscator.obfuscateEntry(m_deobfuscator.deobfuscateEntry(obfEntry));
+		}
+	}
+	
+	private void assertSameAsRebuilt() {
+		
+		JarIndex index = m_deobfuscator.getJarIndex();
+		Translator deobfTranslator = m_deobfuscator.getTranslator(TranslationDirection.Deobfuscating);
+		Translator obfTranslator = m_deobfuscator.getTranslator(TranslationDirection.Obfuscating);
+		Translator rebuiltTranslator = m_deobfuscator.getMappings().getTranslator(TranslationDirection.Obfuscating, index.getTranslationIndex());
+		
+		List<Entry> obfEntries = Lists.newArrayList();
+		obfEntries.addAll(index.getObfClassEntries());
+		obfEntries.addAll(index.getObfFieldEntries());
+		obfEntries.addAll(index.getObfBehaviorEntries());
+		for (Entry obfEntry : obfEntries) {
+			Entry deobfEntry = deobfTranslator.translateEntry(obfEntry);
+			assertThat(obfTranslator.translateEntry(deobfEntry), is(rebuiltTranslator.translateEntry(deobfEntry)));
+			assertThat(obfTranslator.translateEntry(deobfEntry), is(obfEntry));
+		}
+		for (ClassEntry obfClassEntry : index.getObfClassEntries()) {
+			ClassEntry deobfClassEntry = deobfTranslator.translateEntry(obfClassEntry);
+			assertThat(
+				obfTranslator.getTranslationIndex().getSuperclass(deobfClassEntry),
+				is(rebuiltTranslator.getTranslationIndex().getSuperclass(deobfClassEntry))
+			);
+			assertThat(
+				obfTranslator.getTranslationIndex().getSubclass(deobfClassEntry),
+				containsInAnyOrder(rebuiltTranslator.getTranslationIndex().getSubclass(deobfClassEntry).toArray())
+			);
+			assertThat(
+				obfTranslator.getTranslationIndex().getInterfaces(deobfClassEntry),
+				containsInAnyOrder(rebuiltTranslator.getTranslationIndex().getInterfaces(deobfClassEntry).toArray())
+			);
+			assertThat(
+				obfTranslator.getTranslationIndex().getImplementations(deobfClassEntry),
+				containsInAnyOrder(rebuiltTranslator.getTranslationIndex().getImplementations(deobfClassEntry).toArray())
+			);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeff Martin.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public
+ * License v3.0 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ * 
+ * Contributors:
+ *     Jeff Martin - initial API and implementation
+ ******************************************************************************/
+package cuchaz.enigma;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.jar.JarFile;
+
+import cuchaz.enigma.mapping.Mappings;
+import cuchaz.enigma.mapping.MappingsReader;
+import cuchaz.enigma.mapping.MappingsWriter;
+
+public class TestUtil {
+	
+	public static Mappings readMappings()
+	throws Exception {
+		// the mappings that go with translation.jar
+		try (InputStream in = TestUtil.class.getResourceAsStream("/cuchaz/enigma/resources/translation.mappings")) {
+			return new MappingsReader().read(new InputStreamReader(in));
+		}
+	}
+	
+	public static String write(Mappings mappings)
+	throws Exception {
+		// mappings are easiest to compare as text
+		StringWriter out = new StringWriter();
+		new MappingsWriter().write(out, mappings);
+		return out.toString();
+	}
+	
+	public static Deobfuscator newDeobfuscator(String jarPath)
+	throws Exception {
+		// tests shouldn't share a jar index cache with anything else
+		return new Deobfuscator(new JarFile(jarPath), null);
+	}
+}